@@ -0,0 +1,90 @@
+package producer.kafka.patient_card.cache;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import producer.kafka.patient_card.dto.IcdCodeDTO;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Загрузка справочника (время старта; с -prof gc — байты, выделенные на загрузку) и обращения к нему.
+ * full — синтетический справочник размера полной МКБ-10 (~14 тыс. кодов, ~10 слов в названии).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IcdCatalogBenchmark {
+    private static final String[] WORDS = {"острый", "хронический", "инфекция", "перелом", "болезнь", "синдром",
+            "неуточнённый", "вирусный", "бактериальный", "поражение", "сустава", "почки", "печени", "кожи",
+            "лёгкого", "сердца", "головного", "мозга", "другие", "уточнённые"};
+
+    @Param({"bundled", "full"})
+    private String catalog;
+    private Resource resource;
+    private IcdCatalog icd;
+    private String[] codes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        resource = catalog.equals("bundled") ? new ClassPathResource("icd/icd10.tsv") : fullSizeCatalog();
+        icd = new IcdCatalog(resource, true, "category", 0);
+        codes = new String[]{"J06.9", "A01", "K86.1", "Z99.9", "J06.8", "Q99"};
+        System.out.println("\nкодов: " + icd.size() + ", оценка памяти: " + icd.estimatedBytes() / 1024 + " КБ");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public IcdCatalog load() {
+        return new IcdCatalog(resource, true, "category", 0);
+    }
+
+    @Benchmark
+    public boolean validate() {
+        return icd.isKnown(codes[next++ % codes.length]);
+    }
+
+    @Benchmark
+    public boolean validateWithNormalize() {
+        return icd.isKnown(IcdCatalog.normalize(" j06.9"));
+    }
+
+    @Benchmark
+    public List<IcdCodeDTO> suggestByCode() {
+        return icd.suggest("J0", 20);
+    }
+
+    @Benchmark
+    public List<IcdCodeDTO> suggestByTitle() {
+        return icd.suggest("остр инф", 20);
+    }
+
+    private static Resource fullSizeCatalog() {
+        StringBuilder tsv = new StringBuilder();
+        int seed = 1;
+        for (char letter = 'A'; letter <= 'Z'; letter++) {
+            for (int category = 0; category < 100; category += 2) {
+                for (int detail = -1; detail < 10; detail++) {
+                    tsv.append(letter).append(category < 10 ? "0" : "").append(category);
+                    if (detail >= 0) {
+                        tsv.append('.').append(detail);
+                    }
+                    tsv.append('\t');
+                    for (int w = 0; w < 10; w++) {
+                        seed = seed * 1103515245 + 12345;
+                        tsv.append(WORDS[(seed >>> 16) % WORDS.length]).append(' ');
+                    }
+                    tsv.append('\n');
+                }
+            }
+        }
+        return new ByteArrayResource(tsv.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
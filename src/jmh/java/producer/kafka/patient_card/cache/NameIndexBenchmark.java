@@ -0,0 +1,56 @@
+package producer.kafka.patient_card.cache;
+
+import org.openjdk.jmh.annotations.*;
+import producer.kafka.patient_card.dto.PatientSearchHit;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NameIndexBenchmark {
+    private static final String[] LAST_NAMES = {"Иванов", "Петров", "Сидоров", "Смирнов", "Кузнецов", "Попов",
+            "Васильев", "Соколов", "Михайлов", "Новиков", "Фёдоров", "Морозов", "Волков", "Алексеев", "Лебедев"};
+    private static final String[] FIRST_NAMES = {"Александр", "Мария", "Дмитрий", "Анна", "Сергей", "Елена",
+            "Андрей", "Ольга", "Алексей", "Татьяна", "Иван", "Наталья"};
+
+    @Param({"1000000"})
+    private int patients;
+    private PatientNameIndex index;
+    private String[] queries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        index = new PatientNameIndex(null, null, 10_000, 50_000);
+        // Суффикс делает фамилии различными, как в реальном реестре
+        index.load(LongStream.rangeClosed(1, patients).mapToObj(id -> new PatientSearchHit(id,
+                LAST_NAMES[random.nextInt(LAST_NAMES.length)] + suffix(random),
+                FIRST_NAMES[random.nextInt(FIRST_NAMES.length)],
+                LocalDate.ofEpochDay(random.nextInt(30_000)))));
+        for (long id = patients + 1; id <= patients + 5_000; id++) {
+            index.put(id, LAST_NAMES[random.nextInt(LAST_NAMES.length)] + suffix(random), "Павел", null);
+        }
+        queries = new String[]{"и", "ив", "иван", "фед", "смирнов", "кузнецов а", "лебедевк"};
+    }
+
+    @Benchmark
+    public List<PatientSearchHit> typeahead() {
+        String query = queries[next++ % queries.length];
+        return index.search(query, null, 20);
+    }
+
+    @Benchmark
+    public List<PatientSearchHit> typeaheadWithBirthDate() {
+        return index.search("ив", LocalDate.ofEpochDay(12_345), 20);
+    }
+
+    private static String suffix(SplittableRandom random) {
+        return String.valueOf((char) ('а' + random.nextInt(32))) + (char) ('а' + random.nextInt(32));
+    }
+}
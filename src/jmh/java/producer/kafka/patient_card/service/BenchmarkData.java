@@ -0,0 +1,73 @@
+package producer.kafka.patient_card.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import producer.kafka.patient_card.dto.DiseaseDTO;
+import producer.kafka.patient_card.dto.PatientDTO;
+import producer.kafka.patient_card.model.Disease;
+import producer.kafka.patient_card.model.Patient;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+final class BenchmarkData {
+    private static final String PRESCRIPTION = "Парацетамол 500 мг 3 раза в день после еды, обильное питьё, "
+            .repeat(8);
+
+    private BenchmarkData() {
+    }
+
+    static Patient patient(int diseases) {
+        Patient patient = Patient.builder()
+                .id(42L)
+                .lastName("Иванов")
+                .firstName("Иван")
+                .middleName("Иванович")
+                .gender("man")
+                .birthDate(LocalDate.of(1980, 3, 15))
+                .omsNumber("1234567891234567")
+                .build();
+        List<Disease> list = new ArrayList<>(diseases);
+        for (int i = 0; i < diseases; i++) {
+            list.add(Disease.builder()
+                    .id((long) i)
+                    .icdCode("J0" + (i % 10) + "." + (i % 7))
+                    .startDate(LocalDate.of(2000, 1, 1).plusDays(i))
+                    .endDate(i % 3 == 0 ? null : LocalDate.of(2000, 1, 15).plusDays(i))
+                    .prescription(PRESCRIPTION)
+                    .patient(patient)
+                    .build());
+        }
+        patient.setDisease(list);
+        return patient;
+    }
+
+    static DiseaseDTO disease() {
+        return DiseaseDTO.builder()
+                .icdCode("J06.9")
+                .startDate(LocalDate.of(2020, 2, 1))
+                .endDate(LocalDate.of(2020, 2, 10))
+                .prescription(PRESCRIPTION)
+                .build();
+    }
+
+    // те же настройки, что у ObjectMapper из JacksonAutoConfiguration
+    static ObjectMapper objectMapper() {
+        return objectMapper("json");
+    }
+
+    static ObjectMapper objectMapper(String format) {
+        Jackson2ObjectMapperBuilder builder = switch (format) {
+            case "cbor" -> Jackson2ObjectMapperBuilder.cbor();
+            case "smile" -> Jackson2ObjectMapperBuilder.smile();
+            default -> Jackson2ObjectMapperBuilder.json();
+        };
+        return builder.featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+    }
+
+    static PatientDTO patientDTO(int diseases) {
+        return PatientService.mapToDTO(patient(diseases));
+    }
+}
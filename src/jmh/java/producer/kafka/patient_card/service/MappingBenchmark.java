@@ -0,0 +1,34 @@
+package producer.kafka.patient_card.service;
+
+import org.openjdk.jmh.annotations.*;
+import producer.kafka.patient_card.dto.DiseaseDTO;
+import producer.kafka.patient_card.dto.PatientDTO;
+import producer.kafka.patient_card.model.Patient;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MappingBenchmark {
+    @Param({"0", "10", "1000"})
+    private int diseases;
+
+    private Patient patient;
+
+    @Setup
+    public void setUp() {
+        patient = BenchmarkData.patient(diseases);
+    }
+
+    @Benchmark
+    public PatientDTO patientMapToDTO() {
+        return PatientService.mapToDTO(patient);
+    }
+
+    @Benchmark
+    public List<DiseaseDTO> patientMapToListDTO() {
+        return PatientService.mapToListDTO(patient.getDisease());
+    }
+}
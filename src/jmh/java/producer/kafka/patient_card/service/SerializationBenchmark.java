@@ -0,0 +1,54 @@
+package producer.kafka.patient_card.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import producer.kafka.patient_card.dto.PatientDTO;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+    @Param({"0", "10", "1000"})
+    private int diseases;
+
+    // json, cbor, smile — как их настраивает BinaryFormatsConfig
+    @Param({"json", "cbor", "smile"})
+    private String format;
+
+    private ObjectMapper objectMapper;
+    private PatientDTO patient;
+    private byte[] patientBytes;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = BenchmarkData.objectMapper(format);
+        patient = BenchmarkData.patientDTO(diseases);
+        patientBytes = objectMapper.writeValueAsBytes(patient);
+        // Размер тела ответа: попадает в вывод JMH рядом с результатами
+        System.out.printf("%nPAYLOAD format=%s diseases=%d bytes=%d gzip=%d%n",
+                format, diseases, patientBytes.length, gzip(patientBytes).length);
+    }
+
+    @Benchmark
+    public byte[] writePatient() throws Exception {
+        return objectMapper.writeValueAsBytes(patient);
+    }
+
+    @Benchmark
+    public PatientDTO readPatient() throws Exception {
+        return objectMapper.readValue(patientBytes, PatientDTO.class);
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,58 @@
+package producer.kafka.patient_card.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import producer.kafka.patient_card.dto.DiseaseDTO;
+import producer.kafka.patient_card.dto.PatientDTO;
+import producer.kafka.patient_card.model.Disease;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SingleRecordBenchmark {
+    private PatientValidator patientValidator;
+    private ObjectMapper objectMapper;
+    private Disease disease;
+    private DiseaseDTO diseaseDTO;
+    private byte[] diseaseJson;
+    private PatientDTO patientDTO;
+
+    @Setup
+    public void setUp() throws Exception {
+        patientValidator = new PatientValidator();
+        objectMapper = BenchmarkData.objectMapper();
+        disease = BenchmarkData.patient(1).getDisease().get(0);
+        diseaseDTO = BenchmarkData.disease();
+        diseaseJson = objectMapper.writeValueAsBytes(diseaseDTO);
+        patientDTO = BenchmarkData.patientDTO(0);
+    }
+
+    @Benchmark
+    public DiseaseDTO diseaseMapToDto() {
+        return DiseaseServiceImpl.mapToDto(disease);
+    }
+
+    @Benchmark
+    public DiseaseDTO validateDisease() {
+        DiseaseServiceImpl.validateDiseaseDate(diseaseDTO);
+        return diseaseDTO;
+    }
+
+    @Benchmark
+    public PatientDTO validatePatient() {
+        patientValidator.validate(patientDTO);
+        return patientDTO;
+    }
+
+    @Benchmark
+    public byte[] writeDisease() throws Exception {
+        return objectMapper.writeValueAsBytes(diseaseDTO);
+    }
+
+    @Benchmark
+    public DiseaseDTO readDisease() throws Exception {
+        return objectMapper.readValue(diseaseJson, DiseaseDTO.class);
+    }
+}
@@ -0,0 +1,69 @@
+package producer.kafka.patient_card.admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ограничение числа одновременных запросов, подстраиваемое по AIMD: пока запросы укладываются
+ * в целевую задержку и лимит реально выбирается, он растёт примерно на 1 за каждый "круг"
+ * из limit запросов; запрос дольше цели уменьшает лимит в backoffRatio раз, но не чаще
+ * одного раза за целевую задержку — иначе пачка медленных ответов обвалила бы лимит до минимума.
+ * Запрос сверх лимита не ждёт, а сразу получает отказ.
+ */
+public class AdaptiveLimiter {
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetNanos;
+    private final double backoffRatio;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private volatile double limit;
+    private long lastDecrease;
+
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, long targetNanos, double backoffRatio) {
+        if (minLimit < 1 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Нужно 1 <= min-limit <= initial-limit <= max-limit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetNanos = targetNanos;
+        this.backoffRatio = backoffRatio;
+        this.limit = initialLimit;
+        this.lastDecrease = System.nanoTime() - targetNanos;
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /** Завершение запроса, пропущенного {@link #tryAcquire}; latencyNanos — его длительность. */
+    public void release(long latencyNanos) {
+        int before = inflight.getAndDecrement();
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (latencyNanos > targetNanos) {
+                if (now - lastDecrease >= targetNanos) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecrease = now;
+                }
+            } else if (before * 2 >= limit) {
+                // Растём, только когда лимит используется хотя бы наполовину: простой не доказывает запаса
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    public int inflight() {
+        return inflight.get();
+    }
+}
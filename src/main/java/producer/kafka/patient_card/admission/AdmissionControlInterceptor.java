@@ -0,0 +1,103 @@
+package producer.kafka.patient_card.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import producer.kafka.patient_card.exception.ServiceUnavailableException;
+
+import java.time.Duration;
+
+/**
+ * Допуск запросов к карточкам: чтения (GET, HEAD) и изменения ограничиваются отдельными
+ * {@link AdaptiveLimiter}. Когда БД замедляется, задержка растёт, лимит падает и лишние запросы
+ * сразу получают 503 с Retry-After, а не копятся в потоках Tomcat в ожидании соединения из пула.
+ */
+@Component
+@ConditionalOnProperty(name = "patient-card.admission.enabled", havingValue = "true", matchIfMissing = true)
+public class AdmissionControlInterceptor implements HandlerInterceptor, MeterBinder {
+    private static final String ADMITTED = AdmissionControlInterceptor.class.getName() + ".admitted";
+
+    private final AdaptiveLimiter reads;
+    private final AdaptiveLimiter writes;
+    private final Duration retryAfter;
+    private Counter readsRejected;
+    private Counter writesRejected;
+
+    public AdmissionControlInterceptor(@Value("${patient-card.admission.read.initial-limit:100}") int readInitial,
+                                       @Value("${patient-card.admission.read.min-limit:10}") int readMin,
+                                       @Value("${patient-card.admission.read.max-limit:400}") int readMax,
+                                       @Value("${patient-card.admission.read.target-latency:200ms}") Duration readTarget,
+                                       @Value("${patient-card.admission.write.initial-limit:20}") int writeInitial,
+                                       @Value("${patient-card.admission.write.min-limit:4}") int writeMin,
+                                       @Value("${patient-card.admission.write.max-limit:100}") int writeMax,
+                                       @Value("${patient-card.admission.write.target-latency:500ms}") Duration writeTarget,
+                                       @Value("${patient-card.admission.backoff-ratio:0.9}") double backoffRatio,
+                                       @Value("${patient-card.admission.retry-after:1s}") Duration retryAfter) {
+        this.reads = new AdaptiveLimiter(readInitial, readMin, readMax, readTarget.toNanos(), backoffRatio);
+        this.writes = new AdaptiveLimiter(writeInitial, writeMin, writeMax, writeTarget.toNanos(), backoffRatio);
+        this.retryAfter = retryAfter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getAttribute(ADMITTED) != null) {
+            return true;
+        }
+        boolean read = isRead(request.getMethod());
+        if (!(read ? reads : writes).tryAcquire()) {
+            Counter rejected = read ? readsRejected : writesRejected;
+            if (rejected != null) {
+                rejected.increment();
+            }
+            throw new ServiceUnavailableException("Сервис перегружен, повторите запрос позже", retryAfter);
+        }
+        request.setAttribute(ADMITTED, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object started = request.getAttribute(ADMITTED);
+        if (started instanceof Long startedNanos) {
+            request.removeAttribute(ADMITTED);
+            (isRead(request.getMethod()) ? reads : writes).release(System.nanoTime() - startedNanos);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        readsRejected = rejected(registry, "read");
+        writesRejected = rejected(registry, "write");
+        gauges(registry, "read", reads);
+        gauges(registry, "write", writes);
+    }
+
+    private static Counter rejected(MeterRegistry registry, String kind) {
+        return Counter.builder("patient.admission.rejected")
+                .description("Запросы, отклонённые с 503 из-за перегрузки")
+                .tag("kind", kind)
+                .register(registry);
+    }
+
+    private static void gauges(MeterRegistry registry, String kind, AdaptiveLimiter limiter) {
+        Gauge.builder("patient.admission.inflight", limiter, AdaptiveLimiter::inflight)
+                .description("Запросы, выполняющиеся сейчас")
+                .tag("kind", kind)
+                .register(registry);
+        Gauge.builder("patient.admission.limit", limiter, AdaptiveLimiter::limit)
+                .description("Текущий лимит одновременных запросов")
+                .tag("kind", kind)
+                .register(registry);
+    }
+
+    private static boolean isRead(String method) {
+        return "GET".equals(method) || "HEAD".equals(method);
+    }
+}
@@ -0,0 +1,102 @@
+package producer.kafka.patient_card.audit;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import producer.kafka.patient_card.dto.DiseaseDTO;
+import producer.kafka.patient_card.dto.PatientCard;
+import producer.kafka.patient_card.dto.PatientDTO;
+
+/**
+ * Пишет в {@link AuditLog} каждый вызов PatientService и DiseaseService. Аспект внешний
+ * по отношению к транзакции, поэтому исход учитывает и коммит. Вложенные вызовы (обёртка
+ * группового коммита передаёт вызов DiseaseServiceImpl) записываются один раз — внешним.
+ * Вызовы вне HTTP-запроса (расписание, фоновые потоки) записываются от имени system.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "patient-card.audit.enabled", havingValue = "true", matchIfMissing = true)
+public class AuditAspect {
+    private static final String SYSTEM = "system";
+    private static final ThreadLocal<Boolean> INSIDE = new ThreadLocal<>();
+
+    private final AuditLog auditLog;
+    private final String actorHeader;
+
+    public AuditAspect(AuditLog auditLog,
+                       @Value("${patient-card.audit.actor-header:X-User}") String actorHeader) {
+        this.auditLog = auditLog;
+        this.actorHeader = actorHeader;
+    }
+
+    @Around("execution(public * producer.kafka.patient_card.service.PatientService.*(..))")
+    public Object auditPatient(ProceedingJoinPoint call) throws Throwable {
+        return audit(call, "patient");
+    }
+
+    @Around("execution(* producer.kafka.patient_card.service.DiseaseService.*(..))")
+    public Object auditDisease(ProceedingJoinPoint call) throws Throwable {
+        return audit(call, "disease");
+    }
+
+    private Object audit(ProceedingJoinPoint call, String resource) throws Throwable {
+        if (INSIDE.get() != null) {
+            return call.proceed();
+        }
+        // Журнал не примет событие — обращение не выполняем: после него 503 был бы ложным,
+        // изменение уже зафиксировано, и повтор клиента создал бы дубль
+        auditLog.checkAvailable();
+        INSIDE.set(Boolean.TRUE);
+        Object result = null;
+        boolean success = false;
+        try {
+            result = call.proceed();
+            success = true;
+            return result;
+        } finally {
+            INSIDE.remove();
+            String actor = SYSTEM;
+            String address = "";
+            RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+            if (attributes instanceof ServletRequestAttributes servlet) {
+                HttpServletRequest request = servlet.getRequest();
+                String user = request.getHeader(actorHeader);
+                actor = user == null || user.isBlank() ? "" : user;
+                address = request.getRemoteAddr();
+            }
+            auditLog.record(actor, address, resource, call.getSignature().getName(),
+                    targetId(call.getArgs(), result), success);
+        }
+    }
+
+    // id сущности из результата, иначе первый id среди аргументов (для getAllDiseases это id пациента)
+    private static long targetId(Object[] args, Object result) {
+        Long id = null;
+        if (result instanceof PatientDTO patient) {
+            id = patient.getId();
+        } else if (result instanceof DiseaseDTO disease) {
+            id = disease.getId();
+        } else if (result instanceof PatientCard card) {
+            id = card.id();
+        }
+        if (id == null) {
+            for (Object arg : args) {
+                if (arg instanceof Long value) {
+                    id = value;
+                    break;
+                }
+            }
+        }
+        return id == null ? -1 : id;
+    }
+}
@@ -0,0 +1,233 @@
+package producer.kafka.patient_card.audit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал только на дозапись: сегменты audit-NNNNNNNNNN.log фиксированного размера, заранее
+ * заполненные нулями и отображённые в память. Запись — [длина тела][CRC32 тела][тело], длина пишется
+ * последней, так что запись без длины (или с неверной суммой) считается концом сегмента.
+ * Не потокобезопасен: пишет один поток.
+ */
+class AuditJournal implements AutoCloseable {
+    static final int HEADER_SIZE = 8;
+    private static final String PREFIX = "audit-";
+    private static final String SUFFIX = ".log";
+    private static final int MAX_ACTOR_LENGTH = 256;
+    private static final int PREALLOCATE_CHUNK = 1 << 20;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final CRC32 crc = new CRC32();
+    private int segmentIndex;
+    private MappedByteBuffer segment;
+    private boolean dirty;
+
+    AuditJournal(Path directory, int segmentSize) {
+        if (segmentSize < 4096) {
+            throw new IllegalArgumentException("Сегмент журнала аудита меньше 4 КБ: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        try {
+            Files.createDirectories(directory);
+            List<Path> existing = segments(directory);
+            if (existing.isEmpty()) {
+                open(1);
+            } else {
+                Path last = existing.get(existing.size() - 1);
+                open(indexOf(last));
+                int end = validEnd(segment);
+                if (end + Integer.BYTES <= segment.capacity() && segment.getInt(end) != 0) {
+                    // Оборванная при сбое запись: дописываем в новый сегмент, старый не трогаем
+                    open(segmentIndex + 1);
+                } else {
+                    segment.position(end);
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Не удалось открыть журнал аудита в " + directory, ex);
+        }
+    }
+
+    void append(long time, String actor, String address, String resource, String action,
+                long targetId, boolean success) {
+        byte[] actorBytes = bytes(actor, MAX_ACTOR_LENGTH);
+        byte[] addressBytes = bytes(address, MAX_ACTOR_LENGTH);
+        byte[] resourceBytes = bytes(resource, MAX_ACTOR_LENGTH);
+        byte[] actionBytes = bytes(action, MAX_ACTOR_LENGTH);
+        int bodyLength = Long.BYTES * 2 + 1 + 2 * 4
+                + actorBytes.length + addressBytes.length + resourceBytes.length + actionBytes.length;
+        if (segment.remaining() < HEADER_SIZE + bodyLength) {
+            rotate();
+        }
+        int start = segment.position();
+        segment.position(start + HEADER_SIZE);
+        segment.putLong(time);
+        segment.putLong(targetId);
+        segment.put((byte) (success ? 1 : 0));
+        putString(actorBytes);
+        putString(addressBytes);
+        putString(resourceBytes);
+        putString(actionBytes);
+        crc.reset();
+        crc.update(segment.slice(start + HEADER_SIZE, bodyLength));
+        segment.putInt(start + Integer.BYTES, (int) crc.getValue());
+        segment.putInt(start, bodyLength);
+        dirty = true;
+    }
+
+    /** Сбрасывает изменённые страницы текущего сегмента на диск. */
+    void force() {
+        if (dirty) {
+            segment.force();
+            dirty = false;
+        }
+    }
+
+    int segmentIndex() {
+        return segmentIndex;
+    }
+
+    @Override
+    public void close() {
+        force();
+        segment = null;
+    }
+
+    private void rotate() {
+        force();
+        try {
+            open(segmentIndex + 1);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Не удалось создать сегмент журнала аудита " + (segmentIndex + 1), ex);
+        }
+    }
+
+    private void open(int index) throws IOException {
+        Path file = directory.resolve(String.format("%s%010d%s", PREFIX, index, SUFFIX));
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            preallocate(channel);
+            // Отображение переживает закрытие канала
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentSize, channel.size()));
+        }
+        segmentIndex = index;
+        dirty = false;
+    }
+
+    // Место под сегмент занимается настоящей записью нулей, а не разреженным отображением:
+    // нехватка диска проявится здесь как IOException, а не как InternalError при записи в память
+    private void preallocate(FileChannel channel) throws IOException {
+        long position = channel.size();
+        if (position >= segmentSize) {
+            return;
+        }
+        ByteBuffer zeros = ByteBuffer.allocate(PREALLOCATE_CHUNK);
+        while (position < segmentSize) {
+            zeros.clear().limit((int) Math.min(zeros.capacity(), segmentSize - position));
+            while (zeros.hasRemaining()) {
+                position += channel.write(zeros, position);
+            }
+        }
+        channel.force(true);
+    }
+
+    private void putString(byte[] value) {
+        segment.putShort((short) value.length);
+        segment.put(value);
+    }
+
+    private static byte[] bytes(String value, int maxLength) {
+        if (value == null) {
+            return new byte[0];
+        }
+        return (value.length() > maxLength ? value.substring(0, maxLength) : value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static int indexOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /** Позиция сразу за последней целой записью сегмента. */
+    static int validEnd(ByteBuffer segment) {
+        return forEachRecord(segment, position -> true);
+    }
+
+    /**
+     * Передаёт visitor позиции целых записей сегмента по порядку, пока он возвращает true;
+     * возвращает позицию за последней пройденной записью.
+     */
+    static int forEachRecord(ByteBuffer segment, IntPredicate visitor) {
+        int position = 0;
+        CRC32 check = new CRC32();
+        while (position + HEADER_SIZE <= segment.capacity()) {
+            int length = segment.getInt(position);
+            if (length <= 0 || length > segment.capacity() - position - HEADER_SIZE) {
+                break;
+            }
+            check.reset();
+            check.update(segment.slice(position + HEADER_SIZE, length));
+            if ((int) check.getValue() != segment.getInt(position + Integer.BYTES)) {
+                break;
+            }
+            boolean more = visitor.test(position);
+            position += HEADER_SIZE + length;
+            if (!more) {
+                break;
+            }
+        }
+        return position;
+    }
+
+    /** Запись, начинающаяся с позиции position сегмента. */
+    static AuditRecord decodeAt(ByteBuffer segment, int position) {
+        return decode(segment.slice(position + HEADER_SIZE, segment.getInt(position)));
+    }
+
+    /** Разбирает тело записи, начинающееся с текущей позиции buffer. */
+    static AuditRecord decode(ByteBuffer buffer) {
+        long time = buffer.getLong();
+        long targetId = buffer.getLong();
+        boolean success = buffer.get() == 1;
+        String actor = getString(buffer);
+        String address = getString(buffer);
+        String resource = getString(buffer);
+        String action = getString(buffer);
+        return new AuditRecord(Instant.ofEpochMilli(time), actor, address, resource, action,
+                targetId < 0 ? null : targetId, success);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.getShort()];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
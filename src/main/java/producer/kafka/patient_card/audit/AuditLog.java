@@ -0,0 +1,196 @@
+package producer.kafka.patient_card.audit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import producer.kafka.patient_card.exception.ServiceUnavailableException;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Журнал доступа к карточкам пациентов. Вызывающий поток только кладёт событие в кольцевой
+ * буфер; поток audit-writer переносит события в сегменты {@link AuditJournal} и раз в
+ * fsync-interval сбрасывает их на диск — при сбое теряется не больше последнего интервала.
+ * Если поток записи упал или не успевает освободить место за publish-timeout, обращение получает
+ * 503 ещё до выполнения, а компонент auditLog в /actuator/health — DOWN: запрос не повисает
+ * в ожидании навсегда, и уже выполненное изменение не превращается в ошибку.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "patient-card.audit.enabled", havingValue = "true", matchIfMissing = true)
+public class AuditLog implements MeterBinder, HealthIndicator {
+    private static final int DRAIN_BATCH = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final Path directory;
+    private final AuditRingBuffer buffer;
+    private final int segmentSize;
+    private final long fsyncIntervalNanos;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final Duration publishTimeout;
+    private AuditJournal journal;
+    private volatile boolean running;
+    // причина остановки потока записи; после неё события не принимаются
+    private volatile Throwable writerFailure;
+    private Thread writer;
+
+    public AuditLog(@Value("${patient-card.audit.directory:audit}") Path directory,
+                    @Value("${patient-card.audit.buffer-size:65536}") int bufferSize,
+                    @Value("${patient-card.audit.segment-size:64MB}") DataSize segmentSize,
+                    @Value("${patient-card.audit.fsync-interval:1s}") Duration fsyncInterval,
+                    @Value("${patient-card.audit.publish-timeout:1s}") Duration publishTimeout) {
+        this.directory = directory;
+        this.buffer = new AuditRingBuffer(bufferSize, publishTimeout.toNanos());
+        this.publishTimeout = publishTimeout;
+        this.segmentSize = Math.toIntExact(segmentSize.toBytes());
+        this.fsyncIntervalNanos = fsyncInterval.toNanos();
+    }
+
+    @PostConstruct
+    public void start() {
+        journal = new AuditJournal(directory, segmentSize);
+        running = true;
+        writer = new Thread(this::writeLoop, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Журнал аудита пишется в {}, сегмент {}", directory.toAbsolutePath(), journal.segmentIndex());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    /**
+     * Кладёт событие в буфер. Вызывается после выполнения обращения, когда транзакция уже
+     * зафиксирована, поэтому не бросает: непринятое событие логируется и учитывается в
+     * patient.audit.rejected, а отказ до начала работы даёт {@link #checkAvailable()}.
+     */
+    public void record(String actor, String address, String resource, String action, long targetId, boolean success) {
+        if (!buffer.publish(System.currentTimeMillis(), actor, address, resource, action, targetId, success)) {
+            rejected.incrementAndGet();
+            log.error("Событие аудита {} {} {} пользователя '{}' с адреса {} (успех: {}) не записано: {}",
+                    action, resource, targetId, actor, address, success, unavailableReason());
+        }
+    }
+
+    /**
+     * Проверка перед обращением: бросает 503, если поток записи остановился или буфер не
+     * освободился за publish-timeout. Обращение, которое нельзя записать, не выполняется.
+     */
+    public void checkAvailable() {
+        if (writerFailure == null && buffer.awaitCapacity()) {
+            return;
+        }
+        if (writerFailure != null) {
+            throw new ServiceUnavailableException("Журнал аудита недоступен");
+        }
+        throw new ServiceUnavailableException("Журнал аудита не успевает записывать события", publishTimeout);
+    }
+
+    @Override
+    public Health health() {
+        Throwable failure = writerFailure;
+        if (failure != null) {
+            return Health.down().withDetail("error", String.valueOf(failure)).build();
+        }
+        return Health.up()
+                .withDetail("backlog", buffer.backlog())
+                .withDetail("rejected", rejected.get())
+                .build();
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    private void writeLoop() {
+        try {
+            long nextForce = System.nanoTime() + fsyncIntervalNanos;
+            while (running || buffer.backlog() > 0) {
+                int drained = buffer.drain(this::write, DRAIN_BATCH);
+                long now = System.nanoTime();
+                if (now - nextForce >= 0) {
+                    force();
+                    nextForce = now + fsyncIntervalNanos;
+                }
+                if (drained == 0 && running) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+            force();
+            journal.close();
+            log.info("Журнал аудита закрыт, записано событий: {}", written.get());
+        } catch (Throwable ex) {
+            // Ошибка доступа к отображённой памяти (InternalError) и прочие Error тоже сюда:
+            // без этого поток тихо умирает, а писатели ждут места в заполненном кольце
+            writerFailure = ex;
+            buffer.close();
+            log.error("Поток записи журнала аудита остановлен, в буфере осталось событий: {}",
+                    buffer.backlog(), ex);
+        }
+    }
+
+    private String unavailableReason() {
+        Throwable failure = writerFailure;
+        return failure != null ? "поток записи остановлен (" + failure + ")"
+                : "буфер заполнен дольше " + publishTimeout;
+    }
+
+    private void write(AuditRingBuffer.Slot slot) {
+        try {
+            journal.append(slot.time, slot.actor, slot.address, slot.resource, slot.action, slot.targetId, slot.success);
+            written.incrementAndGet();
+        } catch (RuntimeException ex) {
+            failed.incrementAndGet();
+            log.error("Событие аудита {} {} {} не записано", slot.action, slot.resource, slot.targetId, ex);
+        }
+    }
+
+    private void force() {
+        try {
+            journal.force();
+        } catch (RuntimeException ex) {
+            log.error("Не удалось сбросить журнал аудита на диск", ex);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("patient.audit.events", written, AtomicLong::get)
+                .description("События аудита, записанные в журнал")
+                .register(registry);
+        FunctionCounter.builder("patient.audit.failed", failed, AtomicLong::get)
+                .description("События аудита, которые не удалось записать")
+                .register(registry);
+        FunctionCounter.builder("patient.audit.rejected", rejected, AtomicLong::get)
+                .description("События аудита, не принятые в буфер: поток записи остановлен или не успевает")
+                .register(registry);
+        FunctionCounter.builder("patient.audit.waits", buffer, AuditRingBuffer::waits)
+                .description("Запросы, ждавшие места в заполненном буфере аудита")
+                .register(registry);
+        Gauge.builder("patient.audit.backlog", buffer, AuditRingBuffer::backlog)
+                .description("События в буфере, ещё не перенесённые в журнал")
+                .register(registry);
+    }
+}
@@ -0,0 +1,134 @@
+package producer.kafka.patient_card.audit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Чтение журнала аудита. Можно читать и во время работы сервиса:
+ * недописанная запись активного сегмента не проходит проверку суммы и просто не видна.
+ * Из командной строки — задача ./gradlew auditReplay (см. build.gradle).
+ */
+public final class AuditLogReader {
+    private static final Duration MTIME_SLACK = Duration.ofSeconds(2);
+
+    private AuditLogReader() {
+    }
+
+    public static void replay(Path directory, Consumer<AuditRecord> consumer) {
+        try {
+            for (Path file : AuditJournal.segments(directory)) {
+                ByteBuffer segment = map(file);
+                AuditJournal.forEachRecord(segment, position -> {
+                    consumer.accept(AuditJournal.decodeAt(segment, position));
+                    return true;
+                });
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Не удалось прочитать журнал аудита в " + directory, ex);
+        }
+    }
+
+    /**
+     * До limit записей, подходящих под фильтр: в порядке записи или, при newestFirst, начиная
+     * с последних. Чтение останавливается, как только набрано limit записей. Сегмент, изменённый
+     * в последний раз раньше from, не читается: все его записи старше.
+     */
+    public static List<AuditRecord> query(Path directory, Instant from, Predicate<AuditRecord> filter,
+                                          int limit, boolean newestFirst) {
+        List<AuditRecord> found = new ArrayList<>();
+        try {
+            List<Path> segments = AuditJournal.segments(directory);
+            for (int i = 0; i < segments.size() && found.size() < limit; i++) {
+                int index = newestFirst ? segments.size() - 1 - i : i;
+                // Последний сегмент ещё дописывается, его время изменения не показательно
+                if (from != null && index < segments.size() - 1 && modifiedBefore(segments.get(index), from)) {
+                    if (newestFirst) {
+                        break;
+                    }
+                    continue;
+                }
+                ByteBuffer segment = map(segments.get(index));
+                if (newestFirst) {
+                    IntStream.Builder positions = IntStream.builder();
+                    AuditJournal.forEachRecord(segment, position -> {
+                        positions.add(position);
+                        return true;
+                    });
+                    int[] all = positions.build().toArray();
+                    for (int j = all.length - 1; j >= 0 && found.size() < limit; j--) {
+                        collect(segment, all[j], filter, found);
+                    }
+                } else {
+                    AuditJournal.forEachRecord(segment, position -> {
+                        collect(segment, position, filter, found);
+                        return found.size() < limit;
+                    });
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Не удалось прочитать журнал аудита в " + directory, ex);
+        }
+        return found;
+    }
+
+    public static Predicate<AuditRecord> filter(Instant from, Instant to, String actor, String resource, Long targetId) {
+        return record -> (from == null || !record.time().isBefore(from))
+                && (to == null || record.time().isBefore(to))
+                && (actor == null || actor.equals(record.actor()))
+                && (resource == null || resource.equals(record.resource()))
+                && (targetId == null || targetId.equals(record.targetId()));
+    }
+
+    private static void collect(ByteBuffer segment, int position, Predicate<AuditRecord> filter,
+                                List<AuditRecord> found) {
+        AuditRecord record = AuditJournal.decodeAt(segment, position);
+        if (filter.test(record)) {
+            found.add(record);
+        }
+    }
+
+    // Время записи берётся до её попадания в файл, поэтому все записи сегмента не новее его mtime;
+    // запас — на грубые отметки времени файловой системы
+    private static boolean modifiedBefore(Path file, Instant from) throws IOException {
+        return Files.getLastModifiedTime(file).toInstant().plus(MTIME_SLACK).isBefore(from);
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // Выводит записи строками через табуляцию: время, пользователь, адрес, ресурс, действие, id, исход
+    public static void main(String[] args) {
+        Path directory = Path.of(System.getProperty("auditDir", "audit"));
+        String from = System.getProperty("from");
+        String to = System.getProperty("to");
+        String targetId = System.getProperty("targetId");
+        Predicate<AuditRecord> filter = filter(
+                from == null ? null : Instant.parse(from),
+                to == null ? null : Instant.parse(to),
+                System.getProperty("actor"),
+                System.getProperty("resource"),
+                targetId == null ? null : Long.valueOf(targetId));
+        replay(directory, record -> {
+            if (filter.test(record)) {
+                System.out.println(String.join("\t", record.time().toString(), record.actor(), record.address(),
+                        record.resource(), record.action(), String.valueOf(record.targetId()),
+                        record.success() ? "OK" : "ERROR"));
+            }
+        });
+    }
+}
@@ -0,0 +1,11 @@
+package producer.kafka.patient_card.audit;
+
+import java.time.Instant;
+
+/**
+ * Запись журнала доступа: кто (actor из заголовка шлюза и адрес клиента), что (resource и action —
+ * имя метода сервиса, targetId — id возвращённой сущности или первый id-аргумент), когда и с каким исходом.
+ */
+public record AuditRecord(Instant time, String actor, String address, String resource, String action,
+                          Long targetId, boolean success) {
+}
@@ -0,0 +1,135 @@
+package producer.kafka.patient_card.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Кольцо заранее созданных ячеек: много писателей, один читатель, без блокировок и без
+ * выделения памяти на событие. Писатель занимает номер через compareAndSet, только если ячейка
+ * под ним свободна, заполняет её и публикует записью номера в volatile-поле; читатель забирает
+ * ячейки строго по порядку номеров. Если кольцо заполнено, писатель ждёт освобождения ячейки
+ * не дольше publishTimeout и не занимает номер, поэтому отказ не оставляет дыры в очереди.
+ * После close() (поток записи упал) события больше не принимаются.
+ */
+class AuditRingBuffer {
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final LongAdder waits = new LongAdder();
+    private final long publishTimeoutNanos;
+    // следующий номер для читателя; пишет только поток записи
+    private volatile long consumed;
+    private volatile boolean closed;
+
+    AuditRingBuffer(int capacity, long publishTimeoutNanos) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Размер буфера аудита должен быть степенью двойки: " + capacity);
+        }
+        slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+        mask = capacity - 1;
+        this.publishTimeoutNanos = publishTimeoutNanos;
+    }
+
+    /** false — кольцо закрыто или за publishTimeout не освободилось ни одной ячейки. */
+    boolean publish(long time, String actor, String address, String resource, String action,
+                    long targetId, boolean success) {
+        boolean waiting = false;
+        long deadline = 0;
+        long sequence;
+        while (true) {
+            if (closed) {
+                return false;
+            }
+            sequence = claimed.get();
+            if (sequence - slots.length >= consumed) {
+                if (!waiting) {
+                    waiting = true;
+                    waits.increment();
+                    deadline = System.nanoTime() + publishTimeoutNanos;
+                } else if (System.nanoTime() - deadline >= 0) {
+                    return false;
+                }
+                LockSupport.parkNanos(10_000);
+            } else if (claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        Slot slot = slots[(int) (sequence & mask)];
+        slot.time = time;
+        slot.actor = actor;
+        slot.address = address;
+        slot.resource = resource;
+        slot.action = action;
+        slot.targetId = targetId;
+        slot.success = success;
+        slot.sequence = sequence;
+        return true;
+    }
+
+    /**
+     * Ждёт свободную ячейку не дольше publishTimeout, ничего не занимая; false — кольцо закрыто
+     * или так и не освободилось. Ячейку потом может занять другой писатель: это проверка перед
+     * работой, а не резерв.
+     */
+    boolean awaitCapacity() {
+        long deadline = System.nanoTime() + publishTimeoutNanos;
+        while (!closed) {
+            if (claimed.get() - consumed < slots.length) {
+                return true;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(10_000);
+        }
+        return false;
+    }
+
+    void close() {
+        closed = true;
+    }
+
+    /** Передаёт handler до max опубликованных подряд ячеек; вызывается только потоком записи. */
+    int drain(SlotHandler handler, int max) {
+        long next = consumed;
+        int drained = 0;
+        while (drained < max) {
+            Slot slot = slots[(int) (next & mask)];
+            if (slot.sequence != next) {
+                break;
+            }
+            handler.handle(slot);
+            next++;
+            drained++;
+        }
+        consumed = next;
+        return drained;
+    }
+
+    long backlog() {
+        return claimed.get() - consumed;
+    }
+
+    long waits() {
+        return waits.sum();
+    }
+
+    interface SlotHandler {
+        void handle(Slot slot);
+    }
+
+    static final class Slot {
+        long time;
+        String actor;
+        String address;
+        String resource;
+        String action;
+        long targetId;
+        boolean success;
+        volatile long sequence = -1;
+    }
+}
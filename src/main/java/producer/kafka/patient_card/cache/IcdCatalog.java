@@ -0,0 +1,301 @@
+package producer.kafka.patient_card.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import producer.kafka.patient_card.dto.IcdCodeDTO;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Справочник МКБ-10 в памяти, только для чтения. Коды лежат в отсортированном массиве —
+ * проверка кода это бинарный поиск без аллокаций, подсказка по началу кода — диапазон в нём же.
+ * Для подсказки по названию строится второй отсортированный массив: слова названий
+ * (в нижнем регистре, ё→е) со ссылкой на запись.
+ * В режиме category принимаются и уточнённые коды (J06.8), если в справочнике есть рубрика (J06).
+ * Проверка кодов включается только с полным справочником: в репозитории лежит сокращённый, и с ним
+ * верные коды отклонялись бы, поэтому при validate и файле меньше min-codes приложение не стартует.
+ */
+@Component
+@Slf4j
+public class IcdCatalog implements MeterBinder {
+    private final String[] codes;
+    private final String[] titles;
+    private final String[] words;
+    private final int[] wordEntries;
+    private final boolean validate;
+    private final boolean categoryMatch;
+    private final long estimatedBytes;
+
+    public IcdCatalog(@Value("${patient-card.icd.location:classpath:icd/icd10.tsv}") Resource location,
+                      @Value("${patient-card.icd.validate:false}") boolean validate,
+                      @Value("${patient-card.icd.match:category}") String match,
+                      @Value("${patient-card.icd.min-codes:2000}") int minCodes) {
+        long started = System.nanoTime();
+        TreeMap<String, String> entries = read(location);
+        if (validate && entries.size() < minCodes) {
+            throw new IllegalStateException("Справочник МКБ-10 " + location.getDescription() + " содержит "
+                    + entries.size() + " кодов, для проверки кодов нужен полный (не меньше " + minCodes
+                    + "): укажите его в patient-card.icd.location или выключите patient-card.icd.validate");
+        }
+        this.codes = entries.keySet().toArray(String[]::new);
+        this.titles = entries.values().toArray(String[]::new);
+        this.validate = validate;
+        this.categoryMatch = !"exact".equalsIgnoreCase(match);
+
+        // Пара (слово, запись) упакована в long: номер слова в старших битах, запись в младших —
+        // сортировка массива long сразу упорядочивает пары по слову, без объектов на каждую пару
+        HashMap<String, Integer> wordIds = new HashMap<>();
+        List<String> distinctWords = new ArrayList<>();
+        long[] postings = new long[titles.length * 4];
+        int count = 0;
+        for (int i = 0; i < titles.length; i++) {
+            for (String word : tokens(titles[i])) {
+                if (word.length() < 2) {
+                    continue;
+                }
+                Integer id = wordIds.putIfAbsent(word, distinctWords.size());
+                if (id == null) {
+                    id = distinctWords.size();
+                    distinctWords.add(word);
+                }
+                if (count == postings.length) {
+                    postings = Arrays.copyOf(postings, count * 2);
+                }
+                postings[count++] = (long) id << 32 | i;
+            }
+        }
+        String[] sortedWords = distinctWords.toArray(String[]::new);
+        Arrays.sort(sortedWords);
+        int[] rank = new int[sortedWords.length];
+        for (int r = 0; r < sortedWords.length; r++) {
+            rank[wordIds.get(sortedWords[r])] = r;
+        }
+        for (int p = 0; p < count; p++) {
+            postings[p] = (long) rank[(int) (postings[p] >>> 32)] << 32 | (int) postings[p];
+        }
+        Arrays.sort(postings, 0, count);
+        this.words = new String[count];
+        this.wordEntries = new int[count];
+        for (int p = 0; p < count; p++) {
+            words[p] = sortedWords[(int) (postings[p] >>> 32)];
+            wordEntries[p] = (int) postings[p];
+        }
+        this.estimatedBytes = estimateBytes();
+        log.info("Справочник МКБ-10 загружен из {}: {} кодов, {} слов за {} мс, ~{} КБ",
+                location.getDescription(), codes.length, sortedWords.length,
+                (System.nanoTime() - started) / 1_000_000, estimatedBytes / 1024);
+    }
+
+    /**
+     * Приводит код к виду справочника: без пробелов, в верхнем регистре, кириллические буквы,
+     * похожие на латинские (частая ошибка ввода), заменены латинскими.
+     */
+    public static String normalize(String code) {
+        if (code == null) {
+            return null;
+        }
+        String trimmed = code.strip();
+        char[] chars = new char[trimmed.length()];
+        for (int i = 0; i < chars.length; i++) {
+            char c = Character.toUpperCase(trimmed.charAt(i));
+            chars[i] = switch (c) {
+                case 'А' -> 'A';
+                case 'В' -> 'B';
+                case 'Е' -> 'E';
+                case 'К' -> 'K';
+                case 'М' -> 'M';
+                case 'Н' -> 'H';
+                case 'О' -> 'O';
+                case 'Р' -> 'P';
+                case 'С' -> 'C';
+                case 'Т' -> 'T';
+                case 'Х' -> 'X';
+                default -> c;
+            };
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Принимает код, уже приведённый {@link #normalize}. При выключенной проверке принимает любой код.
+     */
+    public boolean isKnown(String code) {
+        if (!validate) {
+            return true;
+        }
+        if (Arrays.binarySearch(codes, code) >= 0) {
+            return true;
+        }
+        return categoryMatch && isWellFormed(code) && Arrays.binarySearch(codes, code.substring(0, 3)) >= 0;
+    }
+
+    public String title(String code) {
+        int i = Arrays.binarySearch(codes, code);
+        return i >= 0 ? titles[i] : null;
+    }
+
+    /**
+     * Подсказка для ввода: если запрос похож на начало кода — коды с этим началом,
+     * иначе записи, в названии которых каждое слово запроса начинает какое-нибудь слово.
+     */
+    public List<IcdCodeDTO> suggest(String query, int limit) {
+        List<IcdCodeDTO> result = new ArrayList<>(Math.min(limit, 32));
+        String code = normalize(query);
+        if (looksLikeCode(code)) {
+            for (int i = lowerBound(codes, code); i < codes.length && result.size() < limit && codes[i].startsWith(code); i++) {
+                result.add(new IcdCodeDTO(codes[i], titles[i]));
+            }
+            return result;
+        }
+        BitSet matched = null;
+        for (String prefix : tokens(query)) {
+            BitSet entries = new BitSet(codes.length);
+            for (int i = lowerBound(words, prefix); i < words.length && words[i].startsWith(prefix); i++) {
+                entries.set(wordEntries[i]);
+            }
+            if (matched == null) {
+                matched = entries;
+            } else {
+                matched.and(entries);
+            }
+        }
+        if (matched == null) {
+            return result;
+        }
+        for (int i = matched.nextSetBit(0); i >= 0 && result.size() < limit; i = matched.nextSetBit(i + 1)) {
+            result.add(new IcdCodeDTO(codes[i], titles[i]));
+        }
+        return result;
+    }
+
+    public int size() {
+        return codes.length;
+    }
+
+    public long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        registry.gauge("patient.icd.codes", codes, array -> array.length);
+        registry.gauge("patient.icd.memory.bytes", this, IcdCatalog::estimatedBytes);
+    }
+
+    // A00, J06.9, M54.16 — буква, две цифры и до двух цифр уточнения
+    private static boolean isWellFormed(String code) {
+        int length = code.length();
+        if (length != 3 && (length < 5 || length > 6)) {
+            return false;
+        }
+        if (!isLatinLetter(code.charAt(0)) || !isDigit(code.charAt(1)) || !isDigit(code.charAt(2))) {
+            return false;
+        }
+        if (length == 3) {
+            return true;
+        }
+        return code.charAt(3) == '.' && isDigit(code.charAt(4)) && (length == 5 || isDigit(code.charAt(5)));
+    }
+
+    private static boolean looksLikeCode(String query) {
+        if (query.isEmpty() || !isLatinLetter(query.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (!isDigit(c) && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Слова из букв и цифр в нижнем регистре, ё→е, как в индексе имён
+    private static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(PatientNameIndex.fold(c));
+            } else if (!word.isEmpty()) {
+                tokens.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isLatinLetter(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int lowerBound(String[] sorted, String key) {
+        int i = Arrays.binarySearch(sorted, key);
+        if (i < 0) {
+            return -i - 1;
+        }
+        while (i > 0 && sorted[i - 1].equals(key)) {
+            i--;
+        }
+        return i;
+    }
+
+    private static TreeMap<String, String> read(Resource location) {
+        TreeMap<String, String> entries = new TreeMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(location.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                int tab = line.indexOf('\t');
+                String code = normalize(tab < 0 ? line : line.substring(0, tab));
+                if (!isWellFormed(code)) {
+                    log.warn("Справочник МКБ-10, строка {}: некорректный код {}, пропущен", lineNumber, code);
+                    continue;
+                }
+                entries.put(code, tab < 0 ? "" : line.substring(tab + 1).strip());
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Не удалось прочитать справочник МКБ-10 " + location.getDescription(), ex);
+        }
+        return entries;
+    }
+
+    // Оценка снизу: заголовки объектов и массивов по 16 байт, сжатые ссылки по 4 байта
+    private long estimateBytes() {
+        long bytes = 16L * 4 + 4L * (codes.length + titles.length + words.length) + 4L * wordEntries.length;
+        for (int i = 0; i < codes.length; i++) {
+            bytes += 40 + codes[i].length() + 40 + 2L * titles[i].length();
+        }
+        String previous = null;
+        for (String word : words) {
+            if (word != previous) {
+                bytes += 40 + 2L * word.length();
+                previous = word;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,93 @@
+package producer.kafka.patient_card.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import producer.kafka.patient_card.repository.PatientRepository;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Фильтр Блума по известным номерам ОМС. Если фильтр отвечает "нет", номер гарантированно
+ * новый и проверку в БД перед вставкой можно пропустить. Удалённые номера из фильтра не
+ * убираются — это только повышает долю ложных срабатываний, которые проверяются запросом.
+ * Пока фильтр не прогрет, он отвечает "возможно" на любой номер.
+ */
+@Component
+@Slf4j
+public class OmsNumberFilter implements MeterBinder {
+    private final PatientRepository patientRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final BloomFilter filter;
+    private final long expectedInsertions;
+    private final AtomicLong insertions = new AtomicLong();
+    private volatile boolean ready;
+    private Counter skippedChecks;
+    private Counter performedChecks;
+
+    public OmsNumberFilter(PatientRepository patientRepository,
+                           TransactionTemplate transactionTemplate,
+                           @Value("${patient-card.oms-filter.expected-insertions:1000000}") long expectedInsertions,
+                           @Value("${patient-card.oms-filter.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.patientRepository = patientRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.expectedInsertions = expectedInsertions;
+        this.filter = new BloomFilter(expectedInsertions, falsePositiveRate);
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        long started = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<String> numbers = patientRepository.streamAllOmsNumbers()) {
+                numbers.forEach(this::add);
+            }
+        });
+        ready = true;
+        log.info("Фильтр номеров ОМС прогрет: {} номеров за {} мс, {} бит, {} хешей",
+                insertions.get(), (System.nanoTime() - started) / 1_000_000, filter.bitSize(), filter.hashCount());
+        if (insertions.get() > expectedInsertions) {
+            log.warn("Номеров ОМС больше, чем patient-card.oms-filter.expected-insertions ({}): растёт доля ложных срабатываний",
+                    expectedInsertions);
+        }
+    }
+
+    public void add(String omsNumber) {
+        if (omsNumber != null) {
+            filter.add(omsNumber);
+            insertions.incrementAndGet();
+        }
+    }
+
+    public boolean mightContain(String omsNumber) {
+        boolean maybe = !ready || filter.mightContain(omsNumber);
+        if (skippedChecks != null) {
+            (maybe ? performedChecks : skippedChecks).increment();
+        }
+        return maybe;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        skippedChecks = Counter.builder("patient.oms.filter.checks").tag("result", "skipped")
+                .description("Создания пациента, для которых проверка дубликата в БД не понадобилась")
+                .register(registry);
+        performedChecks = Counter.builder("patient.oms.filter.checks").tag("result", "db")
+                .description("Создания пациента, для которых номер ОМС проверялся в БД")
+                .register(registry);
+        registry.gauge("patient.oms.filter.insertions", insertions);
+    }
+}
@@ -0,0 +1,119 @@
+package producer.kafka.patient_card.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import producer.kafka.patient_card.datasource.ReadWriteRoutingDataSource;
+import producer.kafka.patient_card.dto.CacheStatsDTO;
+import producer.kafka.patient_card.dto.PatientCard;
+import producer.kafka.patient_card.dto.PatientDTO;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Кэш готового JSON карточки пациента (ключ — id пациента).
+ * Одновременные промахи по одному id выполняют загрузку из БД один раз: остальные
+ * потоки ждут тот же CompletableFuture. Загрузка идёт в вызывающем потоке и вне
+ * compute() хеш-таблицы, поэтому виртуальный поток не закрепляется на время запроса в БД.
+ * Карточка отдаётся всем клиентам, поэтому загружается только с основной БД, а не с реплики.
+ */
+@Component
+@Slf4j
+public class PatientCardCache implements MeterBinder {
+    private final AsyncCache<Long, PatientCard> cards;
+    private final ObjectMapper objectMapper;
+
+    public PatientCardCache(ObjectMapper objectMapper,
+                            @Value("${patient-card.cache.maximum-bytes:67108864}") long maximumBytes,
+                            @Value("${patient-card.cache.ttl:10m}") Duration ttl) {
+        this.objectMapper = objectMapper;
+        this.cards = Caffeine.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher((Long id, PatientCard card) -> card.json().length)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync();
+    }
+
+    public PatientCard get(Long patientId, Function<Long, PatientDTO> loader) {
+        CompletableFuture<PatientCard> pending = new CompletableFuture<>();
+        CompletableFuture<PatientCard> card = cards.get(patientId, (id, executor) -> pending);
+        if (card == pending) {
+            try {
+                pending.complete(serialize(ReadWriteRoutingDataSource.onPrimary(() -> loader.apply(patientId))));
+            } catch (Throwable ex) {
+                // иначе остальные читатели этого пациента навсегда повиснут на незавершённом pending
+                pending.completeExceptionally(ex);
+                throw ex;
+            }
+        }
+        try {
+            return card.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (ex.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Сбрасывает карточку сразу и ещё раз после коммита текущей транзакции, чтобы
+     * параллельное чтение не успело положить в кэш данные до коммита.
+     */
+    public void invalidate(Long patientId) {
+        cards.synchronous().invalidate(patientId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cards.synchronous().invalidate(patientId);
+                }
+            });
+        }
+        log.debug("Карточка пациента с ID {} удалена из кэша", patientId);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cards, "patient.card");
+    }
+
+    public CacheStatsDTO stats() {
+        CacheStats stats = cards.synchronous().stats();
+        return CacheStatsDTO.builder()
+                .hits(stats.hitCount())
+                .misses(stats.missCount())
+                .loads(stats.loadCount())
+                .loadFailures(stats.loadFailureCount())
+                .evictions(stats.evictionCount())
+                .size(cards.synchronous().estimatedSize())
+                .hitRate(stats.hitRate())
+                .build();
+    }
+
+    private PatientCard serialize(PatientDTO patient) {
+        try {
+            return new PatientCard(patient.getId(), patient.getVersion() != null ? patient.getVersion() : 0,
+                    objectMapper.writeValueAsBytes(patient));
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Не удалось сериализовать карточку пациента " + patient.getId(), ex);
+        }
+    }
+}
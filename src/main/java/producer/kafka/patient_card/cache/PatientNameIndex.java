@@ -0,0 +1,513 @@
+package producer.kafka.patient_card.cache;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import producer.kafka.patient_card.dto.PatientSearchHit;
+import producer.kafka.patient_card.repository.PatientRepository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Префиксный индекс "фамилия имя" → пациенты для поиска по первым буквам.
+ * Основная часть — отсортированные массивы: все имена подряд в одном char[], смещения, id и
+ * даты рождения в примитивных массивах, без объекта на пациента. Изменения после построения
+ * попадают в небольшую дельту (skip list) и список "погашенных" id основной части; периодическое
+ * уплотнение сливает дельту в новые массивы. Чтение без блокировок, запись — под одной короткой
+ * блокировкой; новые массивы уплотнения строятся вне её.
+ * Ключ сравнения — имя в нижнем регистре с заменой ё на е.
+ */
+@Component
+@Slf4j
+public class PatientNameIndex implements MeterBinder {
+    private static final int NO_BIRTH_DATE = Integer.MIN_VALUE;
+    private static final Comparator<Entry> ENTRY_ORDER = Comparator.comparing(Entry::key).thenComparingLong(Entry::id);
+
+    private final PatientRepository patientRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int compactThreshold;
+    private final int maxScan;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile State state = State.empty(Base.EMPTY);
+    private volatile boolean ready;
+    // Удаления до готовности базы: проверить их по ещё не построенным массивам нельзя
+    private Set<Long> removedDuringLoad = ConcurrentHashMap.newKeySet();
+
+    public PatientNameIndex(PatientRepository patientRepository,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${patient-card.name-index.compact-threshold:10000}") int compactThreshold,
+                            @Value("${patient-card.name-index.max-scan:50000}") int maxScan) {
+        this.patientRepository = patientRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.compactThreshold = compactThreshold;
+        this.maxScan = maxScan;
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<PatientSearchHit> patients = patientRepository.streamAllForNameIndex()) {
+                load(patients);
+            }
+        });
+    }
+
+    void load(Stream<PatientSearchHit> patients) {
+        long started = System.nanoTime();
+        List<Entry> entries = new ArrayList<>();
+        patients.forEach(p -> entries.add(entry(p.getId(), p.getLastName(), p.getFirstName(), p.getBirthDate())));
+        Base built = Base.of(entries);
+        writeLock.lock();
+        try {
+            // Всё, что успело измениться во время чтения таблицы, уже лежит в дельте: такие записи
+            // базы гасим, как и удалённых за это время пациентов
+            State current = state;
+            Set<Long> tombstones = ConcurrentHashMap.newKeySet();
+            for (Long id : current.deltaById.keySet()) {
+                if (built.contains(id)) {
+                    tombstones.add(id);
+                }
+            }
+            for (Long id : removedDuringLoad) {
+                if (built.contains(id)) {
+                    tombstones.add(id);
+                }
+            }
+            removedDuringLoad = null;
+            state = new State(built, current.delta, current.deltaById, tombstones);
+            ready = true;
+        } finally {
+            writeLock.unlock();
+        }
+        log.info("Индекс имён пациентов построен: {} записей, {} КБ за {} мс",
+                built.size(), built.memoryBytes() / 1024, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /** Добавляет или заменяет пациента; внутри транзакции — после коммита. */
+    public void put(Long id, String lastName, String firstName, LocalDate birthDate) {
+        Entry entry = entry(id, lastName, firstName, birthDate);
+        afterCommit(() -> {
+            writeLock.lock();
+            try {
+                State current = state;
+                if (current.base.contains(id)) {
+                    current.tombstones.add(id);
+                }
+                Entry previous = current.deltaById.put(id, entry);
+                if (previous != null) {
+                    current.delta.remove(previous);
+                }
+                current.delta.add(entry);
+            } finally {
+                writeLock.unlock();
+            }
+        });
+    }
+
+    public void remove(Long id) {
+        afterCommit(() -> {
+            writeLock.lock();
+            try {
+                State current = state;
+                if (current.base.contains(id)) {
+                    current.tombstones.add(id);
+                } else if (removedDuringLoad != null) {
+                    removedDuringLoad.add(id);
+                }
+                Entry previous = current.deltaById.remove(id);
+                if (previous != null) {
+                    current.delta.remove(previous);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Пациенты, у которых "фамилия имя" начинается с prefix (без учёта регистра и ё/е), в порядке
+     * фамилия, имя, id. birthDate, если задана, дополнительно фильтрует результат; просмотр
+     * ограничен maxScan кандидатами, чтобы короткий префикс с фильтром не обходил весь индекс.
+     */
+    public List<PatientSearchHit> search(String prefix, LocalDate birthDate, int limit) {
+        String key = normalize(prefix);
+        int birthDay = birthDate != null ? (int) birthDate.toEpochDay() : NO_BIRTH_DATE;
+        State current = state;
+        Base base = current.base;
+        List<PatientSearchHit> hits = new ArrayList<>(Math.min(limit, 64));
+        // Диапазон базы с нужным префиксом находится двумя бинарными поисками, дальше — только
+        // примитивные массивы; первые limit подходящих из базы и из дельты затем сливаются по порядку
+        int from = base.lowerBound(key);
+        int end = Math.min(base.upperBound(key, from), from + maxScan);
+        boolean noTombstones = current.tombstones.isEmpty();
+        int[] fromBase = new int[limit];
+        int baseCount = 0;
+        for (int i = from; i < end && baseCount < limit; i++) {
+            if ((birthDay == NO_BIRTH_DATE || base.birthDays[i] == birthDay)
+                    && (noTombstones || !current.tombstones.contains(base.ids[i]))) {
+                fromBase[baseCount++] = i;
+            }
+        }
+        List<Entry> fromDelta = new ArrayList<>();
+        for (Entry entry : current.delta.tailSet(new Entry(key, Long.MIN_VALUE, null, null, 0), true)) {
+            if (!entry.key.startsWith(key) || fromDelta.size() == limit) {
+                break;
+            }
+            if (birthDay == NO_BIRTH_DATE || entry.birthDay == birthDay) {
+                fromDelta.add(entry);
+            }
+        }
+        int b = 0;
+        int d = 0;
+        while (hits.size() < limit && (b < baseCount || d < fromDelta.size())) {
+            if (d == fromDelta.size() || (b < baseCount && base.compareTo(fromBase[b], fromDelta.get(d)) < 0)) {
+                hits.add(base.hit(fromBase[b++]));
+            } else {
+                hits.add(fromDelta.get(d++).hit());
+            }
+        }
+        return hits;
+    }
+
+    @Scheduled(fixedDelayString = "${patient-card.name-index.compact-interval-ms:60000}")
+    public void compactIfNeeded() {
+        State current = state;
+        // До построения базы дельта — единственная копия изменений, load() сверяет её с таблицей
+        if (ready && current.delta.size() + current.tombstones.size() >= compactThreshold) {
+            compact();
+        }
+    }
+
+    /**
+     * Новая база строится по снимку дельты без блокировки, запись ждёт только снятия снимка и
+     * подмены. Изменения, пришедшие во время сборки, переносятся в новое состояние: заменённые и
+     * удалённые с момента снимка записи гасятся в новой базе, свежие остаются в дельте.
+     */
+    void compact() {
+        long started = System.nanoTime();
+        State snapshot;
+        Map<Long, Entry> mergedDelta;
+        Set<Long> mergedTombstones;
+        writeLock.lock();
+        try {
+            snapshot = state;
+            mergedDelta = new HashMap<>(snapshot.deltaById);
+            mergedTombstones = new HashSet<>(snapshot.tombstones);
+        } finally {
+            writeLock.unlock();
+        }
+        NavigableSet<Entry> sortedDelta = new ConcurrentSkipListSet<>(ENTRY_ORDER);
+        sortedDelta.addAll(mergedDelta.values());
+        Base merged = snapshot.base.merge(mergedTombstones, sortedDelta);
+
+        writeLock.lock();
+        try {
+            State current = state;
+            if (current.base != snapshot.base) {
+                // базу за это время заменили (load или другое уплотнение) — снимок устарел
+                return;
+            }
+            State next = State.empty(merged);
+            current.deltaById.forEach((id, entry) -> {
+                if (mergedDelta.get(id) == entry) {
+                    return;
+                }
+                next.deltaById.put(id, entry);
+                next.delta.add(entry);
+                if (merged.contains(id)) {
+                    next.tombstones.add(id);
+                }
+            });
+            mergedDelta.forEach((id, entry) -> {
+                if (current.deltaById.get(id) != entry) {
+                    next.tombstones.add(id);
+                }
+            });
+            for (Long id : current.tombstones) {
+                if (!mergedTombstones.contains(id) && merged.contains(id)) {
+                    next.tombstones.add(id);
+                }
+            }
+            state = next;
+        } finally {
+            writeLock.unlock();
+        }
+        log.debug("Индекс имён уплотнён: дельта {}, погашено {}, за {} мс", mergedDelta.size(),
+                mergedTombstones.size(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    public int size() {
+        State current = state;
+        return current.base.size() - current.tombstones.size() + current.delta.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("patient.name.index.entries", this, PatientNameIndex::size)
+                .description("Пациенты в префиксном индексе имён")
+                .register(registry);
+        Gauge.builder("patient.name.index.delta", this, index -> index.state.delta.size())
+                .description("Записи индекса имён, ожидающие уплотнения")
+                .register(registry);
+        Gauge.builder("patient.name.index.bytes", this, index -> index.state.base.memoryBytes())
+                .description("Память массивов индекса имён")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    public static String normalize(String value) {
+        StringBuilder out = new StringBuilder(value.length());
+        boolean space = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = out.length() > 0;
+                continue;
+            }
+            if (space) {
+                out.append(' ');
+                space = false;
+            }
+            out.append(fold(c));
+        }
+        return out.toString();
+    }
+
+    static char fold(char c) {
+        char lower = Character.toLowerCase(c);
+        return lower == 'ё' ? 'е' : lower;
+    }
+
+    private static Entry entry(Long id, String lastName, String firstName, LocalDate birthDate) {
+        String display = normalizeSpaces(lastName) + ' ' + normalizeSpaces(firstName);
+        return new Entry(foldAll(display), id, normalizeSpaces(lastName), normalizeSpaces(firstName),
+                birthDate != null ? (int) birthDate.toEpochDay() : NO_BIRTH_DATE);
+    }
+
+    private static String foldAll(String value) {
+        char[] folded = value.toCharArray();
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = fold(folded[i]);
+        }
+        return new String(folded);
+    }
+
+    private static String normalizeSpaces(String value) {
+        return value == null ? "" : value.trim().replaceAll("\\s+", " ");
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private record Entry(String key, long id, String lastName, String firstName, int birthDay) {
+        PatientSearchHit hit() {
+            return new PatientSearchHit(id, lastName, firstName,
+                    birthDay == NO_BIRTH_DATE ? null : LocalDate.ofEpochDay(birthDay));
+        }
+    }
+
+    private record State(Base base, NavigableSet<Entry> delta, Map<Long, Entry> deltaById, Set<Long> tombstones) {
+        static State empty(Base base) {
+            return new State(base, new ConcurrentSkipListSet<>(ENTRY_ORDER), new ConcurrentHashMap<>(),
+                    ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    /**
+     * Неизменяемая отсортированная часть: имя i-го пациента — "Фамилия Имя" в chars[offsets[i], offsets[i + 1]),
+     * длина фамилии — lastNameLengths[i]. Ключ сравнения вычисляется на лету через fold().
+     */
+    private static final class Base {
+        static final Base EMPTY = new Base(new char[0], new int[]{0}, new short[0], new long[0], new int[0]);
+
+        final char[] chars;
+        final int[] offsets;
+        final short[] lastNameLengths;
+        final long[] ids;
+        final int[] birthDays;
+        final long[] sortedIds;
+
+        private Base(char[] chars, int[] offsets, short[] lastNameLengths, long[] ids, int[] birthDays) {
+            this.chars = chars;
+            this.offsets = offsets;
+            this.lastNameLengths = lastNameLengths;
+            this.ids = ids;
+            this.birthDays = birthDays;
+            this.sortedIds = ids.clone();
+            Arrays.sort(sortedIds);
+        }
+
+        boolean contains(long id) {
+            return Arrays.binarySearch(sortedIds, id) >= 0;
+        }
+
+        static Base of(List<Entry> entries) {
+            entries.sort(ENTRY_ORDER);
+            return pack(entries);
+        }
+
+        private static Base pack(List<Entry> entries) {
+            int n = entries.size();
+            long totalChars = 0;
+            for (Entry entry : entries) {
+                totalChars += entry.lastName.length() + 1 + entry.firstName.length();
+            }
+            char[] chars = new char[Math.toIntExact(totalChars)];
+            int[] offsets = new int[n + 1];
+            short[] lastNameLengths = new short[n];
+            long[] ids = new long[n];
+            int[] birthDays = new int[n];
+            int position = 0;
+            for (int i = 0; i < n; i++) {
+                Entry entry = entries.get(i);
+                offsets[i] = position;
+                entry.lastName.getChars(0, entry.lastName.length(), chars, position);
+                position += entry.lastName.length();
+                chars[position++] = ' ';
+                entry.firstName.getChars(0, entry.firstName.length(), chars, position);
+                position += entry.firstName.length();
+                lastNameLengths[i] = (short) Math.min(entry.lastName.length(), Short.MAX_VALUE);
+                ids[i] = entry.id;
+                birthDays[i] = entry.birthDay;
+            }
+            offsets[n] = position;
+            return new Base(chars, offsets, lastNameLengths, ids, birthDays);
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        long memoryBytes() {
+            return chars.length * 2L + offsets.length * 4L + lastNameLengths.length * 2L + ids.length * 16L
+                    + birthDays.length * 4L;
+        }
+
+        // Первый индекс, чей ключ не меньше prefix
+        int lowerBound(String prefix) {
+            int low = 0;
+            int high = size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compareKey(mid, prefix, true) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        // Первый индекс не раньше from, чей ключ больше любого ключа с префиксом prefix
+        int upperBound(String prefix, int from) {
+            int low = from;
+            int high = size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compareKey(mid, prefix, true) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        int compareTo(int i, Entry entry) {
+            int byKey = compareKey(i, entry.key, false);
+            return byKey != 0 ? byKey : Long.compare(ids[i], entry.id);
+        }
+
+        // prefixOnly: ключ, начинающийся с key, считается равным ему
+        private int compareKey(int i, String key, boolean prefixOnly) {
+            int start = offsets[i];
+            int length = offsets[i + 1] - start;
+            int common = Math.min(length, key.length());
+            for (int j = 0; j < common; j++) {
+                int diff = fold(chars[start + j]) - key.charAt(j);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            if (length < key.length()) {
+                return -1;
+            }
+            return prefixOnly || length == key.length() ? 0 : 1;
+        }
+
+        PatientSearchHit hit(int i) {
+            int start = offsets[i];
+            int lastNameLength = lastNameLengths[i];
+            return new PatientSearchHit(ids[i],
+                    new String(chars, start, lastNameLength),
+                    new String(chars, start + lastNameLength + 1, offsets[i + 1] - start - lastNameLength - 1),
+                    birthDays[i] == NO_BIRTH_DATE ? null : LocalDate.ofEpochDay(birthDays[i]));
+        }
+
+        Entry entryAt(int i) {
+            PatientSearchHit hit = hit(i);
+            return new Entry(foldAll(new String(chars, offsets[i], offsets[i + 1] - offsets[i])),
+                    ids[i], hit.getLastName(), hit.getFirstName(), birthDays[i]);
+        }
+
+        Base merge(Set<Long> tombstones, NavigableSet<Entry> delta) {
+            List<Entry> merged = new ArrayList<>(size() - tombstones.size() + delta.size());
+            Iterator<Entry> added = delta.iterator();
+            Entry next = added.hasNext() ? added.next() : null;
+            for (int i = 0; i < size(); i++) {
+                if (tombstones.contains(ids[i])) {
+                    continue;
+                }
+                while (next != null && compareTo(i, next) > 0) {
+                    merged.add(next);
+                    next = added.hasNext() ? added.next() : null;
+                }
+                merged.add(entryAt(i));
+            }
+            while (next != null) {
+                merged.add(next);
+                next = added.hasNext() ? added.next() : null;
+            }
+            return pack(merged);
+        }
+    }
+}
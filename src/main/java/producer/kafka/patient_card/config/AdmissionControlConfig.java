@@ -0,0 +1,26 @@
+package producer.kafka.patient_card.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import producer.kafka.patient_card.admission.AdmissionControlInterceptor;
+
+@Configuration
+@ConditionalOnProperty(name = "patient-card.admission.enabled", havingValue = "true", matchIfMissing = true)
+public class AdmissionControlConfig implements WebMvcConfigurer {
+    private final AdmissionControlInterceptor admissionControlInterceptor;
+
+    public AdmissionControlConfig(AdmissionControlInterceptor admissionControlInterceptor) {
+        this.admissionControlInterceptor = admissionControlInterceptor;
+    }
+
+    // Первым: отклонённый запрос не должен успеть ничего сделать
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(admissionControlInterceptor)
+                .addPathPatterns("/patient/**", "/diseases/**")
+                .order(Ordered.HIGHEST_PRECEDENCE);
+    }
+}
@@ -0,0 +1,9 @@
+package producer.kafka.patient_card.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+
+@Configuration
+@EnableAsync(proxyTargetClass = true)
+public class AsyncConfig {
+}
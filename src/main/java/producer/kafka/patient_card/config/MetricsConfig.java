@@ -0,0 +1,38 @@
+package producer.kafka.patient_card.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import producer.kafka.patient_card.metrics.EntityLoadCountingListener;
+import producer.kafka.patient_card.metrics.QueryMetricsInterceptor;
+
+@Configuration
+public class MetricsConfig implements WebMvcConfigurer {
+    private final MeterRegistry meterRegistry;
+    private final EntityManagerFactory entityManagerFactory;
+
+    public MetricsConfig(MeterRegistry meterRegistry, EntityManagerFactory entityManagerFactory) {
+        this.meterRegistry = meterRegistry;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @PostConstruct
+    void registerHibernateListeners() {
+        entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .requireService(EventListenerRegistry.class)
+                .appendListeners(EventType.POST_LOAD, new EntityLoadCountingListener());
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new QueryMetricsInterceptor(meterRegistry))
+                .addPathPatterns("/patient/**", "/diseases/**");
+    }
+}
@@ -0,0 +1,101 @@
+package producer.kafka.patient_card.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import producer.kafka.patient_card.datasource.ReadWriteRoutingDataSource;
+import producer.kafka.patient_card.datasource.ReadYourWritesInterceptor;
+import producer.kafka.patient_card.datasource.ReplicaCacheModeJpaDialect;
+import producer.kafka.patient_card.datasource.ReplicaSet;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Чтение с реплик Postgres: основная БД настраивается как обычно через spring.datasource,
+ * реплики — списком адресов patient-card.replicas.urls с теми же учётными данными.
+ * Без patient-card.replicas.enabled=true остаётся один источник из автоконфигурации.
+ */
+@Configuration
+@ConditionalOnProperty(name = "patient-card.replicas.enabled", havingValue = "true")
+public class ReplicaRoutingConfig implements WebMvcConfigurer {
+    private final Duration readYourWrites;
+
+    public ReplicaRoutingConfig(@Value("${patient-card.replicas.read-your-writes:2s}") Duration readYourWrites) {
+        this.readYourWrites = readYourWrites;
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReplicaSet replicaSet(DataSourceProperties properties,
+                                 @Value("${patient-card.replicas.urls}") List<String> urls,
+                                 @Value("${patient-card.replicas.pool-size:${DB_POOL_SIZE:10}}") int poolSize,
+                                 @Value("${patient-card.replicas.connection-timeout-ms:1000}") long connectionTimeout,
+                                 @Value("${patient-card.replicas.balance:round-robin}") String balance,
+                                 @Value("${patient-card.replicas.max-lag:1s}") Duration maxLag,
+                                 @Value("${patient-card.replicas.lag-query:}") String lagQuery) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (String url : urls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            String name = "replica-" + (replicas.size() + 1);
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName(name);
+            replica.setJdbcUrl(url.strip());
+            replica.setUsername(properties.determineUsername());
+            replica.setPassword(properties.determinePassword());
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setMaximumPoolSize(poolSize);
+            replica.setConnectionTimeout(connectionTimeout);
+            replica.setReadOnly(true);
+            // Недоступная при старте реплика не мешает запуску: проверка здоровья включит её позже
+            replica.setInitializationFailTimeout(-1);
+            replicas.put(name, replica);
+        }
+        return new ReplicaSet(replicas, balance, maxLag, lagQuery);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReplicaSet replicaSet) {
+        return new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource(primaryDataSource, replicaSet));
+    }
+
+    // Сессии, читающие с реплики, не наполняют кэш второго уровня
+    @Bean
+    public static BeanPostProcessor replicaCacheModeJpaDialect() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof LocalContainerEntityManagerFactoryBean factory) {
+                    factory.setJpaDialect(new ReplicaCacheModeJpaDialect());
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ReadYourWritesInterceptor(readYourWrites));
+    }
+}
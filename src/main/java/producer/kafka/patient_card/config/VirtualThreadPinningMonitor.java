@@ -0,0 +1,67 @@
+package producer.kafka.patient_card.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.stream.Collectors;
+
+/**
+ * В режиме виртуальных потоков слушает JFR-событие jdk.VirtualThreadPinned: поток остался
+ * закреплён за носителем дольше порога (synchronized или native-кадр на пути блокирующего вызова).
+ * Каждое событие пишется в лог с верхними кадрами стека и считается в jvm.threads.virtual.pinned.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadPinningMonitor {
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int LOGGED_FRAMES = 12;
+
+    private final Counter pinnedCounter;
+    private final Duration threshold;
+    private RecordingStream recording;
+
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry,
+                                       @Value("${patient-card.virtual-threads.pinned-threshold:20ms}") Duration threshold) {
+        this.pinnedCounter = Counter.builder("jvm.threads.virtual.pinned")
+                .description("Закрепления виртуальных потоков дольше порога")
+                .register(meterRegistry);
+        this.threshold = threshold;
+    }
+
+    @PostConstruct
+    void start() {
+        recording = new RecordingStream();
+        recording.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recording.onEvent(PINNED_EVENT, this::onPinned);
+        recording.startAsync();
+        log.info("Мониторинг закрепления виртуальных потоков включён, порог {}", threshold);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedCounter.increment();
+        String frames = event.getStackTrace() == null ? "нет стека" : event.getStackTrace().getFrames().stream()
+                .limit(LOGGED_FRAMES)
+                .map(RecordedFrame::getMethod)
+                .map(method -> method.getType().getName() + "." + method.getName())
+                .collect(Collectors.joining("\n\tat "));
+        log.warn("Виртуальный поток закреплён {} мс:\n\tat {}", event.getDuration().toMillis(), frames);
+    }
+}
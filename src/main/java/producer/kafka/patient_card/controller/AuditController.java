@@ -0,0 +1,52 @@
+package producer.kafka.patient_card.controller;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import producer.kafka.patient_card.audit.AuditLog;
+import producer.kafka.patient_card.audit.AuditLogReader;
+import producer.kafka.patient_card.audit.AuditRecord;
+
+import java.time.Instant;
+import java.util.List;
+
+@RestController
+@RequestMapping("/audit")
+@ConditionalOnProperty(name = "patient-card.audit.enabled", havingValue = "true", matchIfMissing = true)
+public class AuditController {
+    private static final int MAX_LIMIT = 10_000;
+
+    private final AuditLog auditLog;
+
+    public AuditController(AuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
+
+    @Operation(summary = "Журнал доступа к карточкам",
+            description = "Записи журнала аудита: кто, когда и каким действием обращался к пациентам "
+                    + "и заболеваниям. По умолчанию в порядке записи, newestFirst=true — начиная с последних. "
+                    + "Чтение останавливается на limit найденных записях, сегменты старше from пропускаются; "
+                    + "последние события видны с задержкой до долей секунды.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Найденные записи"),
+            @ApiResponse(responseCode = "400", description = "Некорректные параметры")
+    })
+    @GetMapping
+    public ResponseEntity<List<AuditRecord>> getAuditRecords(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String actor,
+            @RequestParam(required = false) String resource,
+            @RequestParam(required = false) Long targetId,
+            @RequestParam(defaultValue = "1000") int limit,
+            @RequestParam(defaultValue = "false") boolean newestFirst) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit должен быть от 1 до " + MAX_LIMIT);
+        }
+        return ResponseEntity.ok(AuditLogReader.query(auditLog.directory(), from,
+                AuditLogReader.filter(from, to, actor, resource, targetId), limit, newestFirst));
+    }
+}
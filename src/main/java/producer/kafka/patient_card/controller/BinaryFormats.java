@@ -0,0 +1,77 @@
+package producer.kafka.patient_card.controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Выбор формата для ответов, которые отдаются готовыми байтами JSON (карточка из кэша).
+ * Остальные ответы согласуются конвертерами Spring MVC из BinaryFormatsConfig.
+ */
+final class BinaryFormats {
+    static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final CBORFactory CBOR = new CBORFactory();
+    private static final SmileFactory SMILE_FACTORY = new SmileFactory();
+
+    private BinaryFormats() {
+    }
+
+    /**
+     * Двоичный тип из Accept, если клиент предпочитает его JSON, иначе null. Шаблоны вида
+     * *&#47;* и application/* означают JSON.
+     */
+    static MediaType preferred(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return null;
+        }
+        List<MediaType> types;
+        try {
+            types = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException ex) {
+            return null;
+        }
+        types.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+        for (MediaType type : types) {
+            if (type.getQualityValue() == 0) {
+                continue;
+            }
+            if (type.includes(MediaType.APPLICATION_JSON)) {
+                return null;
+            }
+            if (type.includes(MediaType.APPLICATION_CBOR)) {
+                return MediaType.APPLICATION_CBOR;
+            }
+            if (type.includes(SMILE)) {
+                return SMILE;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Перекладывает готовый JSON в двоичный формат потоково, без построения объектов:
+     * это дешевле, чем заново собирать карточку из БД.
+     */
+    static byte[] transcode(byte[] json, MediaType format) {
+        JsonFactory target = MediaType.APPLICATION_CBOR.equals(format) ? CBOR : SMILE_FACTORY;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        try (JsonParser parser = JSON.createParser(json); JsonGenerator generator = target.createGenerator(out)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Не удалось преобразовать карточку в " + format, ex);
+        }
+        return out.toByteArray();
+    }
+}
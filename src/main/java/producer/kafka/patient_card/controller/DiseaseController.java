@@ -2,13 +2,20 @@ package producer.kafka.patient_card.controller;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import producer.kafka.patient_card.dto.DiseaseDTO;
+import producer.kafka.patient_card.dto.DiseaseStatus;
+import producer.kafka.patient_card.dto.FieldPatch;
 import producer.kafka.patient_card.service.DiseaseService;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/diseases")
@@ -19,26 +26,49 @@ public class DiseaseController {
         this.diseaseService = diseaseService;
     }
     @Operation(summary = "Получить все заболевания по идентификатору пациента",
-            description = "Возвращает список всех заболеваний, связанных с определённым пациентом.")
+            description = "Возвращает страницу заболеваний пациента, от новых к старым по дате начала. "
+                    + "status=OPEN — только незакрытые эпизоды, CLOSED — только закрытые. "
+                    + "includeArchived=true добавляет давно закрытые эпизоды из архива. "
+                    + "Без size возвращается вся история; с size — страница page, "
+                    + "заголовок X-Has-Next сообщает, есть ли следующая.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Успешное получение списка заболеваний"),
+            @ApiResponse(responseCode = "304", description = "История заболеваний не изменилась"),
+            @ApiResponse(responseCode = "400", description = "Некорректные параметры страницы или статус"),
             @ApiResponse(responseCode = "404", description = "Пациент не найден")
     })
     @GetMapping( "/{patientId}/getAllById")
-    public ResponseEntity<List<DiseaseDTO>> getAllDisease(@PathVariable Long patientId) {
-        List<DiseaseDTO> diseases = diseaseService.getAllDiseases(patientId);
-        return ResponseEntity.ok(diseases);
+    public ResponseEntity<List<DiseaseDTO>> getAllDisease(@PathVariable Long patientId,
+                                                          @RequestParam(defaultValue = "ALL") DiseaseStatus status,
+                                                          @RequestParam(defaultValue = "false") boolean includeArchived,
+                                                          @RequestParam(defaultValue = "0") int page,
+                                                          @RequestParam(required = false) Integer size,
+                                                          WebRequest request) {
+        String currentETag = ETags.diseaseHistory(patientId, diseaseService.getDiseaseHistoryVersion(patientId));
+        if (request.checkNotModified(currentETag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(currentETag).build();
+        }
+        Slice<DiseaseDTO> diseases = diseaseService.getAllDiseases(patientId, status, includeArchived, page, size);
+        return ResponseEntity.ok()
+                .eTag(currentETag)
+                .header("X-Has-Next", String.valueOf(diseases.hasNext()))
+                .body(diseases.getContent());
     }
     @Operation(summary = "Получить заболевание по идентификатору",
             description = "Возвращает информацию о заболевании по его идентификатору.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Успешное получение заболевания"),
+            @ApiResponse(responseCode = "304", description = "Заболевание не изменилось"),
             @ApiResponse(responseCode = "404", description = "Заболевание не найдено")
     })
     @GetMapping("/{id}")
-    public ResponseEntity<DiseaseDTO> getDisease(@PathVariable Long id) {
+    public ResponseEntity<DiseaseDTO> getDisease(@PathVariable Long id, WebRequest request) {
+        String currentETag = ETags.disease(id, diseaseService.getDiseaseVersion(id));
+        if (request.checkNotModified(currentETag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(currentETag).build();
+        }
         DiseaseDTO getDiseaseById = diseaseService.getDiseaseById(id);
-        return ResponseEntity.ok(getDiseaseById);
+        return ResponseEntity.ok().eTag(currentETag).body(getDiseaseById);
     }
     @Operation(summary = "Создать заболевание для пациента",
             description = "Добавляет новое заболевание для пациента по его идентификатору.")
@@ -50,15 +80,48 @@ public class DiseaseController {
     public ResponseEntity<DiseaseDTO> createDisease(@PathVariable Long patientId,@RequestBody DiseaseDTO diseaseDTO) {
         return new ResponseEntity<>(diseaseService.createDisease(patientId,diseaseDTO), HttpStatus.CREATED);
     }
+    @Operation(summary = "Создать пакет заболеваний для пациента",
+            description = "Добавляет список заболеваний (например, диагнозы из выписки) одной транзакцией. "
+                    + "При ошибке в любом элементе не создаётся ни одно заболевание.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Заболевания созданы, в ответе — с присвоенными id"),
+            @ApiResponse(responseCode = "400", description = "Пустой или слишком большой пакет, некорректные даты"),
+            @ApiResponse(responseCode = "404", description = "Пациент не найден")
+    })
+    @PostMapping("/{patientId}/batch")
+    public ResponseEntity<List<DiseaseDTO>> createDiseases(@PathVariable Long patientId,
+                                                           @RequestBody List<DiseaseDTO> diseaseDTOs) {
+        return new ResponseEntity<>(diseaseService.createDiseases(patientId, diseaseDTOs), HttpStatus.CREATED);
+    }
     @Operation(summary = "Обновить заболевание",
             description = "Обновляет информацию о существующем заболевании по идентификатору.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Заболевание успешно обновлено"),
-            @ApiResponse(responseCode = "404", description = "Заболевание не найдено")
+            @ApiResponse(responseCode = "404", description = "Заболевание не найдено"),
+            @ApiResponse(responseCode = "412", description = "ETag из If-Match не совпадает с текущей версией")
     })
     @PutMapping("/{id}")
-    public DiseaseDTO updateDisease(@PathVariable Long id,@RequestBody DiseaseDTO diseaseDTO) {
-        return diseaseService.updateDisease(id, diseaseDTO);
+    public DiseaseDTO updateDisease(@PathVariable Long id,
+                                    @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                    @RequestBody DiseaseDTO diseaseDTO) {
+        return diseaseService.updateDisease(id, diseaseDTO, ETags.expectedVersion(ifMatch, 'd', id));
+    }
+    @Operation(summary = "Частично обновить заболевание",
+            description = "Меняет только переданные поля (JSON Merge Patch), например endDate при закрытии эпизода "
+                    + "или prescription. Выполняется один UPDATE переданных столбцов без загрузки заболевания; "
+                    + "если ничего не меняется, запись пропускается. В ответе нет тела, новая версия — в ETag")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Заболевание обновлено или не изменилось"),
+            @ApiResponse(responseCode = "400", description = "Неизвестное поле, некорректные даты или код МКБ-10"),
+            @ApiResponse(responseCode = "404", description = "Заболевание не найдено"),
+            @ApiResponse(responseCode = "412", description = "ETag из If-Match не совпадает с текущей версией")
+    })
+    @PatchMapping(value = "/{id}", consumes = {MediaType.APPLICATION_JSON_VALUE, "application/merge-patch+json"})
+    public ResponseEntity<Void> patchDisease(@PathVariable Long id,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                             @RequestBody Map<String, Object> body) {
+        long version = diseaseService.patchDisease(id, FieldPatch.forDisease(body), ETags.expectedVersion(ifMatch, 'd', id));
+        return ResponseEntity.noContent().eTag(ETags.disease(id, version)).build();
     }
     @Operation(summary = "Удалить заболевание",
             description = "Удаляет заболевание по его идентификатору из системы.")
@@ -0,0 +1,111 @@
+package producer.kafka.patient_card.controller;
+
+import org.springframework.http.MediaType;
+import producer.kafka.patient_card.exception.PreconditionFailedException;
+
+import java.util.List;
+
+/**
+ * Сильные ETag карточек строятся из версии пациента: "p{id}-{version}" для карточки
+ * ("p{id}-{version}-cbor" и "p{id}-{version}-smile" для двоичных форматов),
+ * "d{id}-{version}" для заболевания и "h{id}-{version}" для истории заболеваний пациента.
+ */
+final class ETags {
+
+    private ETags() {
+    }
+
+    private static final List<MediaType> CARD_FORMATS =
+            List.of(MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR, BinaryFormats.SMILE);
+
+    static String patient(Long id, long version) {
+        return patient(id, version, null);
+    }
+
+    // Сильный тег обещает одинаковые байты, поэтому у JSON, CBOR и Smile одной версии теги разные
+    static String patient(Long id, long version, MediaType format) {
+        return "\"p" + id + "-" + version + formatSuffix(format) + "\"";
+    }
+
+    /**
+     * Тег карточки текущей версии, названный в If-None-Match, или null. Подходит тег любого
+     * формата: кэш с несколькими вариантами по Vary: Accept присылает все свои теги и по 304
+     * выбирает тот вариант, чей тег вернулся. Сравнение слабое, как требует If-None-Match.
+     */
+    static String notModifiedPatient(String[] ifNoneMatch, Long id, long version, MediaType format) {
+        if (ifNoneMatch == null) {
+            return null;
+        }
+        for (String header : ifNoneMatch) {
+            for (String tag : header.split(",")) {
+                tag = tag.trim();
+                if (tag.equals("*")) {
+                    return patient(id, version, format);
+                }
+                String opaque = tag.startsWith("W/") ? tag.substring(2) : tag;
+                for (MediaType variant : CARD_FORMATS) {
+                    String current = patient(id, version, variant);
+                    if (current.equals(opaque)) {
+                        return current;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    // Слабый: одна версия отдаётся в разных наборах полей, а для If-Match такой тег не подходит
+    static String patientView(Long id, long version) {
+        return "W/\"p" + id + "-" + version + "\"";
+    }
+
+    static String disease(Long id, long patientVersion) {
+        return "\"d" + id + "-" + patientVersion + "\"";
+    }
+
+    static String diseaseHistory(Long patientId, long patientVersion) {
+        return "\"h" + patientId + "-" + patientVersion + "\"";
+    }
+
+    /**
+     * Версия, которую клиент ожидает увидеть по заголовку If-Match, или null, если заголовка
+     * нет или он равен "*". Слабые и чужие ETag условию не удовлетворяют.
+     */
+    static Long expectedVersion(String ifMatch, char kind, Long id) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String prefix = "\"" + kind + id + "-";
+        for (String tag : ifMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith(prefix) && tag.endsWith("\"") && tag.length() > prefix.length() + 1) {
+                String version = tag.substring(prefix.length(), tag.length() - 1);
+                if (kind == 'p') {
+                    // тег карточки в CBOR или Smile называет ту же версию пациента
+                    for (MediaType format : CARD_FORMATS) {
+                        String suffix = formatSuffix(format);
+                        if (!suffix.isEmpty() && version.endsWith(suffix)) {
+                            version = version.substring(0, version.length() - suffix.length());
+                        }
+                    }
+                }
+                try {
+                    return Long.parseLong(version);
+                } catch (NumberFormatException ignored) {
+                    // не наш формат — проверяем следующий
+                }
+            }
+        }
+        throw new PreconditionFailedException("Условие If-Match не выполнено");
+    }
+
+    private static String formatSuffix(MediaType format) {
+        if (MediaType.APPLICATION_CBOR.equals(format)) {
+            return "-cbor";
+        }
+        if (BinaryFormats.SMILE.equals(format)) {
+            return "-smile";
+        }
+        return "";
+    }
+}
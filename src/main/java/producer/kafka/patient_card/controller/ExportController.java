@@ -0,0 +1,50 @@
+package producer.kafka.patient_card.controller;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import producer.kafka.patient_card.dto.ExportProgressDTO;
+import producer.kafka.patient_card.service.PatientExportService;
+
+@RestController
+@RequestMapping("/export")
+public class ExportController {
+    private final PatientExportService patientExportService;
+
+    public ExportController(PatientExportService patientExportService) {
+        this.patientExportService = patientExportService;
+    }
+
+    @Operation(summary = "Выгрузить реестр пациентов",
+            description = "Потоковая выгрузка всех карточек с заболеваниями в NDJSON, при gzip=true — сжатым файлом. "
+                    + "Идентификатор выгрузки возвращается в заголовке X-Export-Id.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Выгрузка началась")
+    })
+    @GetMapping("/patients")
+    public ResponseEntity<StreamingResponseBody> exportPatients(@RequestParam(defaultValue = "false") boolean gzip) {
+        String exportId = patientExportService.startExport();
+        String fileName = gzip ? "patients.ndjson.gz" : "patients.ndjson";
+        return ResponseEntity.ok()
+                .contentType(gzip ? MediaType.parseMediaType("application/gzip") : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(fileName).build().toString())
+                .header("X-Export-Id", exportId)
+                .body(out -> patientExportService.export(exportId, out, gzip));
+    }
+
+    @Operation(summary = "Прогресс выгрузки",
+            description = "Количество выгруженных пациентов, заболеваний и байт для выгрузки по её идентификатору.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Состояние выгрузки"),
+            @ApiResponse(responseCode = "404", description = "Выгрузка не найдена")
+    })
+    @GetMapping("/{exportId}/progress")
+    public ResponseEntity<ExportProgressDTO> getProgress(@PathVariable String exportId) {
+        return ResponseEntity.ok(patientExportService.getProgress(exportId));
+    }
+}
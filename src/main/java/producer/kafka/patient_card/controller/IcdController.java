@@ -0,0 +1,40 @@
+package producer.kafka.patient_card.controller;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import producer.kafka.patient_card.cache.IcdCatalog;
+import producer.kafka.patient_card.dto.IcdCodeDTO;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/icd")
+public class IcdController {
+    static final int MAX_LIMIT = 100;
+    private final IcdCatalog icdCatalog;
+
+    public IcdController(IcdCatalog icdCatalog) {
+        this.icdCatalog = icdCatalog;
+    }
+
+    @Operation(summary = "Подсказка кода МКБ-10",
+            description = "Если prefix похож на начало кода (J0, J06.), возвращает коды с этим началом, "
+                    + "иначе — записи, в названии которых есть слово, начинающееся с prefix.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Подходящие коды по возрастанию"),
+            @ApiResponse(responseCode = "400", description = "Пустой запрос или некорректный limit")
+    })
+    @GetMapping
+    public ResponseEntity<List<IcdCodeDTO>> suggest(@RequestParam String prefix,
+                                                    @RequestParam(defaultValue = "20") int limit) {
+        if (prefix.isBlank()) {
+            throw new IllegalArgumentException("Введите начало кода или названия");
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit должен быть от 1 до " + MAX_LIMIT);
+        }
+        return ResponseEntity.ok(icdCatalog.suggest(prefix, limit));
+    }
+}
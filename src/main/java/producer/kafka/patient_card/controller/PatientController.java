@@ -1,50 +1,222 @@
 package producer.kafka.patient_card.controller;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import producer.kafka.patient_card.cache.PatientCardCache;
+import producer.kafka.patient_card.dto.CacheStatsDTO;
+import producer.kafka.patient_card.dto.FieldPatch;
+import producer.kafka.patient_card.dto.PatientCard;
 import producer.kafka.patient_card.dto.PatientDTO;
+import producer.kafka.patient_card.dto.PatientFilter;
+import producer.kafka.patient_card.dto.PatientImportReport;
+import producer.kafka.patient_card.dto.PatientPageDTO;
+import producer.kafka.patient_card.dto.PatientSearchHit;
+import producer.kafka.patient_card.dto.PatientView;
+import producer.kafka.patient_card.service.PatientImportService;
 import producer.kafka.patient_card.service.Service;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/patient")
 public class PatientController {
 
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
     private final Service service;
+    private final PatientImportService patientImportService;
+    private final PatientCardCache patientCardCache;
 
-    public PatientController(Service service) {
+    public PatientController(Service service, PatientImportService patientImportService,
+                             PatientCardCache patientCardCache) {
         this.service = service;
+        this.patientImportService = patientImportService;
+        this.patientCardCache = patientCardCache;
     }
-    @Operation(summary = "Получить информацию о пациенте по идентификатору",description = "Найдите пациента по его идентификатору" )
+    @Operation(summary = "Получить информацию о пациенте по идентификатору",
+            description = "Найдите пациента по его идентификатору. Без параметров возвращается полная карточка. "
+                    + "fields=lastName,firstName — только перечисленные поля, expand=disease — вместе с заболеваниями, "
+                    + "diseaseLimit=N — только N последних заболеваний по дате начала. "
+                    + "Для части карточки ETag слабый и не годится для If-Match. "
+                    + "Accept: application/cbor или application/x-jackson-smile — ответ в двоичном формате "
+                    + "со своим ETag (\"p{id}-{version}-cbor\", \"p{id}-{version}-smile\")")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200",description ="Успешно извлеченный пациент"),
+            @ApiResponse(responseCode = "200",description ="Успешно извлеченный пациент",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = PatientDTO.class))),
+            @ApiResponse(responseCode = "304",description = "Карточка не изменилась с версии из If-None-Match"),
+            @ApiResponse(responseCode = "400",description = "Неизвестное поле, раскрытие или некорректный diseaseLimit"),
             @ApiResponse(responseCode = "404",description = "Пациент не найден ")
     })
     @GetMapping("/{id}")
-    public ResponseEntity<PatientDTO> getPatient(@PathVariable Long id) {
-        return ResponseEntity.ok(service.getPatient(id));
+    public ResponseEntity<?> getPatient(@PathVariable Long id,
+                                        @RequestParam(required = false) String fields,
+                                        @RequestParam(required = false) String expand,
+                                        @RequestParam(required = false) Integer diseaseLimit,
+                                        WebRequest request) {
+        PatientView view = fields == null && expand == null && diseaseLimit == null
+                ? null
+                : PatientView.parse(fields, expand, diseaseLimit);
+        // Ревалидация стоит одного запроса версии: карточку не собираем и не сериализуем
+        long version = service.getPatientVersion(id);
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        if (view == null || view.isFullCard()) {
+            String notModified = ETags.notModifiedPatient(request.getHeaderValues(HttpHeaders.IF_NONE_MATCH),
+                    id, version, BinaryFormats.preferred(accept));
+            if (notModified != null) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                        .eTag(notModified)
+                        .build();
+            }
+            return cardResponse(service.getPatientCard(id), accept);
+        }
+        // Слабый тег допускает равнозначные представления, поэтому общий для всех форматов
+        String currentETag = ETags.patientView(id, version);
+        if (request.checkNotModified(currentETag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                    .eTag(currentETag)
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .eTag(currentETag)
+                .body(service.getPatientView(id, view));
+    }
+    @Operation(summary = "Найти пациента по номеру ОМС",description = "Поиск карточки по уникальному номеру полиса ОМС")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200",description ="Успешно извлеченный пациент",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = PatientDTO.class))),
+            @ApiResponse(responseCode = "404",description = "Пациент не найден ")
+    })
+    @GetMapping("/by-oms/{omsNumber}")
+    public ResponseEntity<byte[]> getPatientByOms(@PathVariable String omsNumber,
+                                                  @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return cardResponse(service.getPatientCardByOms(omsNumber), accept);
+    }
+
+    // Карточка хранится в кэше готовым JSON; клиенту, который просит CBOR или Smile, она перекладывается
+    private static ResponseEntity<byte[]> cardResponse(PatientCard card, String accept) {
+        MediaType binary = BinaryFormats.preferred(accept);
+        return ResponseEntity.ok()
+                .contentType(binary != null ? binary : MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .eTag(ETags.patient(card.id(), card.version(), binary))
+                .body(binary != null ? BinaryFormats.transcode(card.json(), binary) : card.json());
+    }
+    @Operation(summary = "Поиск пациентов по началу фамилии",
+            description = "Подсказки по первым буквам \"фамилии имени\" без учёта регистра и ё/е. "
+                    + "В запрос можно добавить дату рождения: q=иванова ан 03.02.2001")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200",description ="Подходящие пациенты по фамилии, имени и id"),
+            @ApiResponse(responseCode = "400",description = "Пустой запрос или некорректный limit")
+    })
+    @GetMapping("/search")
+    public ResponseEntity<List<PatientSearchHit>> searchPatients(@RequestParam String q,
+                                                                 @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(service.searchPatients(q, limit));
+    }
+    @Operation(summary = "Статистика кэша карточек",description = "Попадания, промахи и вытеснения кэша карточек пациентов")
+    @GetMapping("/card-cache/stats")
+    public ResponseEntity<CacheStatsDTO> getCardCacheStats() {
+        return ResponseEntity.ok(patientCardCache.stats());
+    }
+    @Operation(summary = "Список пациентов",
+            description = "Постраничный список пациентов по (фамилия, имя, id) с фильтрами по полу и дате рождения. "
+                    + "Для следующей страницы передайте nextCursor из предыдущего ответа")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200",description ="Страница пациентов"),
+            @ApiResponse(responseCode = "400",description = "Некорректный курсор или параметры страницы")
+    })
+    @GetMapping
+    public ResponseEntity<PatientPageDTO> getPatients(@RequestParam(required = false) String gender,
+                                                      @RequestParam(required = false)
+                                                      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate birthDateFrom,
+                                                      @RequestParam(required = false)
+                                                      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate birthDateTo,
+                                                      @RequestParam(required = false) String cursor,
+                                                      @RequestParam(defaultValue = "50") int limit) {
+        PatientFilter filter = PatientFilter.builder()
+                .gender(gender)
+                .birthDateFrom(birthDateFrom)
+                .birthDateTo(birthDateTo)
+                .build();
+        return ResponseEntity.ok(service.findPatients(filter, cursor, limit));
     }
     @Operation(summary = "Создайте нового пациента",description = "Add a new patient to the system")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201",description ="Успешно создание пациента"),
-            @ApiResponse(responseCode = "404",description = " данные пациент неправильне ")
+            @ApiResponse(responseCode = "404",description = " данные пациент неправильне "),
+            @ApiResponse(responseCode = "409",description = "Пациент с таким номером ОМС уже существует")
     })
     @PostMapping
     public ResponseEntity<PatientDTO> createPatient(@RequestBody PatientDTO dto) {
         return ResponseEntity.status(HttpStatus.CREATED).body(service.createPatient(dto));
     }
+    @Operation(summary = "Массовый импорт пациентов",
+            description = "Потоковая загрузка пациентов в формате NDJSON или CSV с отчётом об ошибках по строкам")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200",description ="Импорт завершён, отчёт по строкам в ответе"),
+            @ApiResponse(responseCode = "400",description = "Некорректный заголовок CSV")
+    })
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, "text/csv"})
+    public ResponseEntity<PatientImportReport> importPatients(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                              InputStream body) throws IOException {
+        if (TEXT_CSV.isCompatibleWith(MediaType.parseMediaType(contentType))) {
+            return ResponseEntity.ok(patientImportService.importCsv(body));
+        }
+        return ResponseEntity.ok(patientImportService.importNdjson(body));
+    }
     @Operation(summary = "Обновлять информацию о пациенте",description = "Обновите существующие данные пациента по идентификатору.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200",description ="Успешно обанлён пациента"),
-            @ApiResponse(responseCode = "404",description = " данные пациент не найдены  ")
+            @ApiResponse(responseCode = "404",description = " данные пациент не найдены  "),
+            @ApiResponse(responseCode = "409",description = "Карточка изменена параллельным запросом"),
+            @ApiResponse(responseCode = "412",description = "ETag из If-Match не совпадает с текущей версией")
     })
 
     @PutMapping("/{id}")
     public ResponseEntity<PatientDTO> updatePatient(@PathVariable Long id,
+                                                    @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
                                                     @RequestBody PatientDTO dto) {
-        return ResponseEntity.ok(service.updatePatient(id, dto));
+        PatientDTO updated = service.updatePatient(id, dto, ETags.expectedVersion(ifMatch, 'p', id));
+        return ResponseEntity.ok()
+                .eTag(ETags.patient(id, updated.getVersion()))
+                .body(updated);
+    }
+    @Operation(summary = "Частично обновить пациента",
+            description = "Меняет только переданные поля (JSON Merge Patch), null очищает отчество. "
+                    + "Сущность не загружается: выполняется один UPDATE переданных столбцов. "
+                    + "Если ничего не меняется, запись пропускается и версия остаётся прежней. "
+                    + "В ответе нет тела, новая версия — в ETag")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204",description ="Пациент обновлён или не изменился"),
+            @ApiResponse(responseCode = "400",description = "Неизвестное или пустое обязательное поле, некорректная дата"),
+            @ApiResponse(responseCode = "404",description = " данные пациент не найдены  "),
+            @ApiResponse(responseCode = "409",description = "Пациент с таким номером ОМС уже существует"),
+            @ApiResponse(responseCode = "412",description = "ETag из If-Match не совпадает с текущей версией")
+    })
+    @PatchMapping(value = "/{id}", consumes = {MediaType.APPLICATION_JSON_VALUE, "application/merge-patch+json"})
+    public ResponseEntity<Void> patchPatient(@PathVariable Long id,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                             @RequestBody Map<String, Object> body) {
+        long version = service.patchPatient(id, FieldPatch.forPatient(body), ETags.expectedVersion(ifMatch, 'p', id));
+        return ResponseEntity.noContent().eTag(ETags.patient(id, version)).build();
     }
     @Operation(summary = "Удаление пациента",description = "Удаление пациента из системы по идентификатору")
     @ApiResponses(value = {
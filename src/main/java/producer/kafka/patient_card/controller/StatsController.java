@@ -0,0 +1,51 @@
+package producer.kafka.patient_card.controller;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import producer.kafka.patient_card.dto.DiseaseStatsDTO;
+import producer.kafka.patient_card.stats.DiseaseStats;
+
+import java.time.LocalDate;
+
+@RestController
+@RequestMapping("/stats")
+public class StatsController {
+    private final DiseaseStats diseaseStats;
+
+    public StatsController(DiseaseStats diseaseStats) {
+        this.diseaseStats = diseaseStats;
+    }
+
+    @Operation(summary = "Статистика заболеваний",
+            description = "Открытые эпизоды и новые случаи по дням для каждого кода МКБ-10 и пола. "
+                    + "Отвечает из счётчиков в памяти, без запросов к таблицам заболеваний. "
+                    + "По умолчанию — последние 30 дней; icdCode — начало кода (J06 включает J06.9).")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Статистика за период"),
+            @ApiResponse(responseCode = "400", description = "Некорректный период"),
+            @ApiResponse(responseCode = "503", description = "Счётчики ещё загружаются после старта")
+    })
+    @GetMapping("/diseases")
+    public ResponseEntity<DiseaseStatsDTO> getDiseaseStats(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String icdCode,
+            @RequestParam(required = false) String gender) {
+        return ResponseEntity.ok(diseaseStats.query(from, to, icdCode, gender));
+    }
+
+    @Operation(summary = "Пересчитать статистику заболеваний",
+            description = "Пересчитывает disease_stats по рабочим и архивным заболеваниям в фоне. "
+                    + "Обычно выполняется по расписанию patient-card.stats.rebuild-cron.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Пересчёт запущен")
+    })
+    @PostMapping("/diseases/rebuild")
+    public ResponseEntity<Void> rebuildDiseaseStats() {
+        diseaseStats.requestRebuild();
+        return ResponseEntity.accepted().build();
+    }
+}
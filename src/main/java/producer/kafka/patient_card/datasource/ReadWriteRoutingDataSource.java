@@ -0,0 +1,96 @@
+package producer.kafka.patient_card.datasource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.function.Supplier;
+
+/**
+ * Транзакции readOnly читают с реплики, всё остальное — с основной БД. Решение принимается при
+ * получении физического соединения, поэтому источник оборачивается в LazyConnectionDataSourceProxy:
+ * к первому запросу признак readOnly транзакции уже выставлен.
+ * В пределах HTTP-запроса (см. {@link ReadYourWritesInterceptor}) чтения после записи и чтения
+ * клиента, недавно что-то изменившего, тоже идут на основную БД: реплика могла ещё не догнать.
+ * Общие для всех клиентов кэши наполняются только с основной БД (см. {@link #onPrimary}).
+ */
+public class ReadWriteRoutingDataSource extends AbstractDataSource {
+    private static final ThreadLocal<Pin> PIN = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final ReplicaSet replicas;
+
+    public ReadWriteRoutingDataSource(DataSource primary, ReplicaSet replicas) {
+        this.primary = primary;
+        this.replicas = replicas;
+    }
+
+    /** Начало HTTP-запроса; recentWrite — клиент менял данные в пределах окна read-your-writes. */
+    public static void beginRequest(boolean recentWrite) {
+        Pin pin = new Pin();
+        pin.primary = recentWrite;
+        PIN.set(pin);
+    }
+
+    public static void endRequest() {
+        PIN.remove();
+    }
+
+    /**
+     * Все чтения внутри action идут на основную БД. Так загружается то, что потом отдаётся
+     * всем клиентам из общего кэша: запись с отстающей реплики жила бы там до истечения срока.
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        Pin previous = PIN.get();
+        Pin pin = new Pin();
+        pin.primary = true;
+        PIN.set(pin);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                PIN.remove();
+            } else {
+                PIN.set(previous);
+            }
+        }
+    }
+
+    /** Чтение без записи в этом потоке может уйти на реплику: результат нельзя класть в общий кэш. */
+    public static boolean mayReadFromReplica() {
+        Pin pin = PIN.get();
+        return pin == null || !pin.primary;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return route().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return route().getConnection(username, password);
+    }
+
+    private DataSource route() {
+        Pin pin = PIN.get();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (pin != null && TransactionSynchronizationManager.isActualTransactionActive()) {
+                pin.primary = true;
+            }
+            return primary;
+        }
+        DataSource replica = pin != null && pin.primary ? null : replicas.pick();
+        if (replica == null) {
+            replicas.primaryRead();
+            return primary;
+        }
+        return replica;
+    }
+
+    private static final class Pin {
+        boolean primary;
+    }
+}
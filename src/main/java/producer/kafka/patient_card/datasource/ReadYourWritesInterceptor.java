@@ -0,0 +1,70 @@
+package producer.kafka.patient_card.datasource;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.time.Duration;
+
+/**
+ * Read-your-writes: изменяющий запрос выдаёт клиенту cookie со сроком окна, и пока оно
+ * не истекло, чтения этого клиента идут на основную БД, а не на отстающую реплику.
+ */
+public class ReadYourWritesInterceptor implements HandlerInterceptor {
+    static final String COOKIE = "pc-primary-until";
+
+    private final Duration window;
+
+    public ReadYourWritesInterceptor(Duration window) {
+        this.window = window;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        long now = System.currentTimeMillis();
+        boolean recentWrite = primaryUntil(request) > now;
+        if (isMutating(request.getMethod()) && !window.isZero()) {
+            // Ставим до обработки: после неё ответ может быть уже отправлен
+            ResponseCookie cookie = ResponseCookie.from(COOKIE, Long.toString(now + window.toMillis()))
+                    .path("/")
+                    .httpOnly(true)
+                    .maxAge(Duration.ofSeconds(Math.max(1, (window.toMillis() + 999) / 1000)))
+                    .build();
+            response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+            recentWrite = true;
+        }
+        ReadWriteRoutingDataSource.beginRequest(recentWrite);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ReadWriteRoutingDataSource.endRequest();
+    }
+
+    private static long primaryUntil(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (COOKIE.equals(cookie.getName())) {
+                    try {
+                        return Long.parseLong(cookie.getValue());
+                    } catch (NumberFormatException ignored) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static boolean isMutating(String method) {
+        return switch (method) {
+            case "POST", "PUT", "PATCH", "DELETE" -> true;
+            default -> false;
+        };
+    }
+}
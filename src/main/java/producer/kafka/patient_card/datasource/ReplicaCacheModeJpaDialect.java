@@ -0,0 +1,43 @@
+package producer.kafka.patient_card.datasource;
+
+import jakarta.persistence.CacheStoreMode;
+import jakarta.persistence.EntityManager;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.sql.SQLException;
+
+/**
+ * Транзакция readOnly может читать с отстающей реплики (см. {@link ReadWriteRoutingDataSource}).
+ * Такая сессия берёт данные из кэша второго уровня, но не кладёт туда прочитанное: иначе
+ * устаревшая запись досталась бы всем клиентам, включая только что записавшего.
+ * Режим задаётся свойством сессии, а не CacheMode: find() пересчитывает CacheMode из свойств.
+ */
+public class ReplicaCacheModeJpaDialect extends HibernateJpaDialect {
+    private static final String STORE_MODE = "jakarta.persistence.cache.storeMode";
+
+    @Override
+    public Object beginTransaction(EntityManager entityManager, TransactionDefinition definition)
+            throws SQLException {
+        Object transactionData = super.beginTransaction(entityManager, definition);
+        if (!definition.isReadOnly() || !ReadWriteRoutingDataSource.mayReadFromReplica()) {
+            return transactionData;
+        }
+        Object previous = entityManager.getProperties().getOrDefault(STORE_MODE, CacheStoreMode.USE);
+        entityManager.setProperty(STORE_MODE, CacheStoreMode.BYPASS);
+        return new ReplicaRead(transactionData, entityManager, previous);
+    }
+
+    @Override
+    public void cleanupTransaction(Object transactionData) {
+        if (transactionData instanceof ReplicaRead replicaRead) {
+            replicaRead.entityManager.setProperty(STORE_MODE, replicaRead.previousStoreMode);
+            super.cleanupTransaction(replicaRead.transactionData);
+            return;
+        }
+        super.cleanupTransaction(transactionData);
+    }
+
+    private record ReplicaRead(Object transactionData, EntityManager entityManager, Object previousStoreMode) {
+    }
+}
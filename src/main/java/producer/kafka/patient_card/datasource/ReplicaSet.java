@@ -0,0 +1,165 @@
+package producer.kafka.patient_card.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Реплики для чтения. Фоновая проверка помечает реплику больной, если к ней нельзя подключиться
+ * или она отстаёт от основной БД больше max-lag; больные реплики не выбираются, пока проверка
+ * не пройдёт снова. Выбор среди здоровых — по кругу (round-robin) или по наименьшему числу
+ * занятых соединений пула (least-busy).
+ */
+@Slf4j
+public class ReplicaSet implements MeterBinder {
+    private final List<Replica> replicas = new ArrayList<>();
+    private final boolean leastBusy;
+    private final long maxLagMillis;
+    private final String lagQuery;
+    private final AtomicInteger next = new AtomicInteger();
+    private Counter primaryReads;
+
+    public ReplicaSet(Map<String, DataSource> replicas, String balance, Duration maxLag, String lagQuery) {
+        replicas.forEach((name, dataSource) -> this.replicas.add(new Replica(name, dataSource)));
+        this.leastBusy = "least-busy".equalsIgnoreCase(balance);
+        this.maxLagMillis = maxLag.toMillis();
+        this.lagQuery = lagQuery == null || lagQuery.isBlank() ? null : lagQuery;
+    }
+
+    /** Здоровая реплика для очередного чтения или null, если таких нет. */
+    public DataSource pick() {
+        List<Replica> healthy = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas) {
+            if (replica.healthy) {
+                healthy.add(replica);
+            }
+        }
+        if (healthy.isEmpty()) {
+            return null;
+        }
+        int start = Math.floorMod(next.getAndIncrement(), healthy.size());
+        Replica chosen = healthy.get(start);
+        if (leastBusy) {
+            // Начинаем с очередной по кругу, чтобы при равной загрузке чтения не липли к первой
+            for (int i = 1; i < healthy.size(); i++) {
+                Replica candidate = healthy.get((start + i) % healthy.size());
+                if (candidate.activeConnections() < chosen.activeConnections()) {
+                    chosen = candidate;
+                }
+            }
+        }
+        if (chosen.reads != null) {
+            chosen.reads.increment();
+        }
+        return chosen.dataSource;
+    }
+
+    void primaryRead() {
+        if (primaryReads != null) {
+            primaryReads.increment();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${patient-card.replicas.health-interval-ms:2000}")
+    public void checkHealth() {
+        for (Replica replica : replicas) {
+            long lag = 0;
+            boolean healthy;
+            try (Connection connection = replica.dataSource.getConnection()) {
+                healthy = connection.isValid(1);
+                if (healthy && lagQuery != null) {
+                    try (Statement statement = connection.createStatement();
+                         ResultSet result = statement.executeQuery(lagQuery)) {
+                        lag = result.next() ? Math.round(result.getDouble(1) * 1000) : 0;
+                    }
+                    healthy = lag <= maxLagMillis;
+                }
+            } catch (SQLException | RuntimeException ex) {
+                log.debug("Проверка реплики {} не прошла: {}", replica.name, ex.getMessage());
+                healthy = false;
+            }
+            replica.lagMillis = lag;
+            if (healthy != replica.healthy) {
+                if (healthy) {
+                    log.info("Реплика {} доступна для чтения, отставание {} мс", replica.name, lag);
+                } else {
+                    log.warn("Реплика {} исключена из чтения: недоступна или отстаёт на {} мс (допустимо {} мс)",
+                            replica.name, lag, maxLagMillis);
+                }
+                replica.healthy = healthy;
+            }
+        }
+    }
+
+    public int size() {
+        return replicas.size();
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof HikariDataSource hikari) {
+                hikari.close();
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        primaryReads = Counter.builder("patient.datasource.reads")
+                .description("Соединения для транзакций только на чтение по источнику")
+                .tag("target", "primary")
+                .register(registry);
+        for (Replica replica : replicas) {
+            replica.reads = Counter.builder("patient.datasource.reads")
+                    .description("Соединения для транзакций только на чтение по источнику")
+                    .tag("target", replica.name)
+                    .register(registry);
+            Gauge.builder("patient.datasource.replica.healthy", replica, r -> r.healthy ? 1 : 0)
+                    .tag("replica", replica.name)
+                    .register(registry);
+            Gauge.builder("patient.datasource.replica.lag", replica, r -> r.lagMillis)
+                    .description("Отставание реплики при последней проверке, мс")
+                    .tag("replica", replica.name)
+                    .register(registry);
+        }
+    }
+
+    private static final class Replica {
+        final String name;
+        final DataSource dataSource;
+        volatile boolean healthy;
+        volatile long lagMillis;
+        Counter reads;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        int activeConnections() {
+            if (dataSource instanceof HikariDataSource hikari) {
+                HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+                return pool != null ? pool.getActiveConnections() : 0;
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package producer.kafka.patient_card.dto;
+import lombok.*;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CacheStatsDTO {
+    private long hits;
+    private long misses;
+    private long loads;
+    private long loadFailures;
+    private long evictions;
+    private long size;
+    private double hitRate;
+}
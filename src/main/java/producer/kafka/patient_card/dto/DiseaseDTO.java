@@ -11,8 +11,13 @@ import java.time.LocalDate;
 @AllArgsConstructor
 public class DiseaseDTO {
 
+    private Long id;
     private String icdCode;
     private LocalDate startDate;
     private LocalDate endDate;
     private String prescription;
+
+    public DiseaseDTO(String icdCode, LocalDate startDate, LocalDate endDate, String prescription) {
+        this(null, icdCode, startDate, endDate, prescription);
+    }
 }
@@ -0,0 +1,13 @@
+package producer.kafka.patient_card.dto;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class DiseaseStatsDTO {
+    private LocalDate from;
+    private LocalDate to;
+    private List<DiseaseStatsRow> rows;
+}
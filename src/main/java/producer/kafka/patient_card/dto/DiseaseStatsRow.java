@@ -0,0 +1,17 @@
+package producer.kafka.patient_card.dto;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+@Getter
+@AllArgsConstructor
+public class DiseaseStatsRow {
+    private String icdCode;
+    private String gender;
+    // Открытые эпизоды на текущий момент, без учёта периода
+    private long activeCases;
+    // Эпизоды, начавшиеся в периоде, всего и по дням (дни без случаев не выводятся)
+    private long newCases;
+    private Map<LocalDate, Long> newCasesByDay;
+}
@@ -0,0 +1,7 @@
+package producer.kafka.patient_card.dto;
+
+public enum DiseaseStatus {
+    ALL,
+    OPEN,
+    CLOSED
+}
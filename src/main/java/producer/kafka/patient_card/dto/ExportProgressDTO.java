@@ -0,0 +1,19 @@
+package producer.kafka.patient_card.dto;
+import lombok.*;
+
+import java.time.Instant;
+
+// Снимок хода выгрузки на момент запроса; сам ход ведёт поток выгрузки в PatientExportService
+@Getter
+@Builder
+@AllArgsConstructor
+public class ExportProgressDTO {
+    private String exportId;
+    private String status;
+    private long patients;
+    private long diseases;
+    private long bytes;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+}
@@ -0,0 +1,103 @@
+package producer.kafka.patient_card.dto;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Частичный документ PATCH: только те поля, что пришли в теле, уже приведённые к своим типам.
+ * Отсутствующее поле не меняется, null очищает его (если столбец это допускает).
+ */
+public record FieldPatch(Map<String, Object> changes) {
+    private static final Map<String, Class<?>> PATIENT_FIELDS = fields(
+            "lastName", String.class, "firstName", String.class, "middleName", String.class,
+            "gender", String.class, "birthDate", LocalDate.class, "omsNumber", String.class);
+    private static final Set<String> PATIENT_NULLABLE = Set.of("middleName");
+    private static final Map<String, Class<?>> DISEASE_FIELDS = fields(
+            "icdCode", String.class, "startDate", LocalDate.class, "endDate", LocalDate.class,
+            "prescription", String.class);
+    private static final Set<String> DISEASE_NULLABLE = Set.of("endDate");
+
+    public FieldPatch {
+        changes = Collections.unmodifiableMap(new LinkedHashMap<>(changes));
+    }
+
+    public static FieldPatch forPatient(Map<String, Object> body) {
+        return parse(body, PATIENT_FIELDS, PATIENT_NULLABLE);
+    }
+
+    public static FieldPatch forDisease(Map<String, Object> body) {
+        return parse(body, DISEASE_FIELDS, DISEASE_NULLABLE);
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    public boolean contains(String field) {
+        return changes.containsKey(field);
+    }
+
+    public boolean containsAny(String... fields) {
+        for (String field : fields) {
+            if (changes.containsKey(field)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String field) {
+        return (T) changes.get(field);
+    }
+
+    public FieldPatch with(String field, Object value) {
+        Map<String, Object> replaced = new LinkedHashMap<>(changes);
+        replaced.put(field, value);
+        return new FieldPatch(replaced);
+    }
+
+    private static FieldPatch parse(Map<String, Object> body, Map<String, Class<?>> fields, Set<String> nullable) {
+        Map<String, Object> changes = new LinkedHashMap<>();
+        if (body == null) {
+            return new FieldPatch(changes);
+        }
+        for (Map.Entry<String, Object> entry : body.entrySet()) {
+            String name = entry.getKey();
+            Class<?> type = fields.get(name);
+            if (type == null) {
+                throw new IllegalArgumentException("Поле нельзя изменить через PATCH: " + name);
+            }
+            Object value = entry.getValue();
+            if (value == null) {
+                if (!nullable.contains(name)) {
+                    throw new IllegalArgumentException("Поле " + name + " не может быть пустым");
+                }
+                changes.put(name, null);
+            } else if (!(value instanceof String text)) {
+                throw new IllegalArgumentException("Поле " + name + " должно быть строкой");
+            } else if (type == LocalDate.class) {
+                try {
+                    changes.put(name, LocalDate.parse(text));
+                } catch (DateTimeParseException ex) {
+                    throw new IllegalArgumentException("Некорректная дата в поле " + name + ": " + text);
+                }
+            } else {
+                changes.put(name, text);
+            }
+        }
+        return new FieldPatch(changes);
+    }
+
+    private static Map<String, Class<?>> fields(Object... namesAndTypes) {
+        Map<String, Class<?>> fields = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndTypes.length; i += 2) {
+            fields.put((String) namesAndTypes[i], (Class<?>) namesAndTypes[i + 1]);
+        }
+        return fields;
+    }
+}
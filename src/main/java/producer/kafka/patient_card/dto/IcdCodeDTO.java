@@ -0,0 +1,9 @@
+package producer.kafka.patient_card.dto;
+import lombok.*;
+
+@Getter
+@AllArgsConstructor
+public class IcdCodeDTO {
+    private String code;
+    private String title;
+}
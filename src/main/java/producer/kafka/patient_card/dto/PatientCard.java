@@ -0,0 +1,7 @@
+package producer.kafka.patient_card.dto;
+
+/**
+ * Готовый JSON карточки вместе с версией, из которой он построен.
+ */
+public record PatientCard(Long id, long version, byte[] json) {
+}
@@ -0,0 +1,34 @@
+package producer.kafka.patient_card.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Позиция в списке пациентов, отсортированном по (lastName, firstName, id).
+ * Передаётся клиенту как непрозрачная строка base64url.
+ */
+public record PatientCursor(String lastName, String firstName, Long id) {
+    private static final char SEPARATOR = '\u001F';
+
+    public static PatientCursor after(PatientListItemDTO item) {
+        return new PatientCursor(item.getLastName(), item.getFirstName(), item.getId());
+    }
+
+    public String encode() {
+        String raw = lastName + SEPARATOR + firstName + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static PatientCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(String.valueOf(SEPARATOR), -1);
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Некорректный курсор страницы");
+            }
+            return new PatientCursor(parts[0], parts[1], Long.parseLong(parts[2]));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Некорректный курсор страницы");
+        }
+    }
+}
@@ -17,5 +17,6 @@ public class PatientDTO {
     private String gender;
     private LocalDate birthDate;
     private String omsNumber;
+    private Long version;
     private List<DiseaseDTO> disease;
 }
@@ -0,0 +1,21 @@
+package producer.kafka.patient_card.dto;
+import lombok.*;
+
+import java.time.LocalDate;
+
+@Getter
+@AllArgsConstructor
+public class PatientExportRow {
+    private Long id;
+    private String lastName;
+    private String firstName;
+    private String middleName;
+    private String gender;
+    private LocalDate birthDate;
+    private String omsNumber;
+    private Long diseaseId;
+    private String icdCode;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private String prescription;
+}
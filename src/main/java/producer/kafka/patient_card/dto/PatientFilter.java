@@ -0,0 +1,15 @@
+package producer.kafka.patient_card.dto;
+import lombok.*;
+
+import java.time.LocalDate;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PatientFilter {
+    private String gender;
+    private LocalDate birthDateFrom;
+    private LocalDate birthDateTo;
+}
@@ -0,0 +1,13 @@
+package producer.kafka.patient_card.dto;
+import lombok.*;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PatientImportError {
+    private long line;
+    private String omsNumber;
+    private String message;
+}
@@ -0,0 +1,19 @@
+package producer.kafka.patient_card.dto;
+import lombok.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PatientImportReport {
+    private long total;
+    private long imported;
+    private long failed;
+    private boolean errorsTruncated;
+    @Builder.Default
+    private List<PatientImportError> errors = new ArrayList<>();
+}
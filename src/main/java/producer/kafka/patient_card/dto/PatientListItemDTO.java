@@ -0,0 +1,19 @@
+package producer.kafka.patient_card.dto;
+import lombok.*;
+
+import java.time.LocalDate;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PatientListItemDTO {
+    private Long id;
+    private String lastName;
+    private String firstName;
+    private String middleName;
+    private String gender;
+    private LocalDate birthDate;
+    private String omsNumber;
+}
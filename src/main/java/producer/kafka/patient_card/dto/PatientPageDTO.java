@@ -0,0 +1,14 @@
+package producer.kafka.patient_card.dto;
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PatientPageDTO {
+    private List<PatientListItemDTO> items;
+    private String nextCursor;
+}
@@ -0,0 +1,13 @@
+package producer.kafka.patient_card.dto;
+import lombok.*;
+
+import java.time.LocalDate;
+
+@Getter
+@AllArgsConstructor
+public class PatientSearchHit {
+    private Long id;
+    private String lastName;
+    private String firstName;
+    private LocalDate birthDate;
+}
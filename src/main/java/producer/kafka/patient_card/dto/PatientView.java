@@ -0,0 +1,65 @@
+package producer.kafka.patient_card.dto;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Какую часть карточки вернуть: поля пациента из ?fields= и заболевания из ?expand=disease,
+ * все или последние diseaseLimit по дате начала. Поля хранятся в порядке {@link #FIELDS}.
+ */
+public record PatientView(Set<String> fields, boolean expandDisease, Integer diseaseLimit) {
+    public static final List<String> FIELDS =
+            List.of("id", "lastName", "firstName", "middleName", "gender", "birthDate", "omsNumber", "version");
+    public static final String DISEASE = "disease";
+    public static final int MAX_DISEASE_LIMIT = 1000;
+
+    /**
+     * Разбирает параметры запроса. Без fields возвращаются все поля пациента,
+     * "disease" в fields равносилен expand=disease.
+     */
+    public static PatientView parse(String fields, String expand, Integer diseaseLimit) {
+        Set<String> names = names(fields);
+        for (String name : names) {
+            if (!name.equals(DISEASE) && !FIELDS.contains(name)) {
+                throw new IllegalArgumentException("Неизвестное поле пациента: " + name);
+            }
+        }
+        for (String name : names(expand)) {
+            if (!name.equals(DISEASE)) {
+                throw new IllegalArgumentException("Неизвестное раскрытие: " + name);
+            }
+        }
+        Set<String> requested = new LinkedHashSet<>();
+        FIELDS.stream().filter(name -> names.isEmpty() || names.contains(name)).forEach(requested::add);
+        boolean expandDisease = names.contains(DISEASE) || !names(expand).isEmpty();
+        if (diseaseLimit != null) {
+            if (!expandDisease) {
+                throw new IllegalArgumentException("diseaseLimit задаётся вместе с expand=disease");
+            }
+            if (diseaseLimit < 1 || diseaseLimit > MAX_DISEASE_LIMIT) {
+                throw new IllegalArgumentException("diseaseLimit должен быть от 1 до " + MAX_DISEASE_LIMIT);
+            }
+        }
+        return new PatientView(requested, expandDisease, diseaseLimit);
+    }
+
+    /**
+     * Совпадает ли представление с полной карточкой: все поля и все заболевания.
+     */
+    public boolean isFullCard() {
+        return fields.size() == FIELDS.size() && expandDisease && diseaseLimit == null;
+    }
+
+    private static Set<String> names(String list) {
+        Set<String> names = new LinkedHashSet<>();
+        if (list != null) {
+            for (String name : list.split(",")) {
+                if (!name.isBlank()) {
+                    names.add(name.strip());
+                }
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,7 @@
+package producer.kafka.patient_card.exception;
+
+public class DuplicateResourceException extends RuntimeException {
+    public DuplicateResourceException(String message) {
+        super(message);
+    }
+}
@@ -1,15 +1,23 @@
 package producer.kafka.patient_card.exception;
 
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
+import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 @ControllerAdvice
 public class GlobalExceptionHandler {
+    private static final String UNIQUE_VIOLATION = "23505";
+
     @ExceptionHandler(ResourceNotFoundException.class)
     public ResponseEntity<Map<String, String>> handlerNotFoundException(ResourceNotFoundException ex) {
         Map<String, String> response = new HashMap<>();
@@ -24,6 +32,64 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
     }
 
+    // Значение параметра запроса или пути не приводится к типу: неизвестный status, буквы в id
+    @ExceptionHandler(MethodArgumentTypeMismatchException.class)
+    public ResponseEntity<Map<String, String>> handlerMethodArgumentTypeMismatchException(MethodArgumentTypeMismatchException ex) {
+        Map<String, String> response = new HashMap<>();
+        String message = "Некорректное значение параметра " + ex.getName() + ": " + ex.getValue();
+        Class<?> type = ex.getRequiredType();
+        if (type != null && type.isEnum()) {
+            message += ", допустимые значения: " + Arrays.toString(type.getEnumConstants());
+        }
+        response.put("message", message);
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+    }
+
+    @ExceptionHandler(DuplicateResourceException.class)
+    public ResponseEntity<Map<String, String>> handlerDuplicateResourceException(DuplicateResourceException ex) {
+        Map<String, String> response = new HashMap<>();
+        response.put("message", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+    }
+
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<Map<String, String>> handlerPreconditionFailedException(PreconditionFailedException ex) {
+        Map<String, String> response = new HashMap<>();
+        response.put("message", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(response);
+    }
+
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<Map<String, String>> handlerServiceUnavailableException(ServiceUnavailableException ex) {
+        Map<String, String> response = new HashMap<>();
+        response.put("message", ex.getMessage());
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE);
+        if (ex.getRetryAfter() != null) {
+            builder.header(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, ex.getRetryAfter().toSeconds())));
+        }
+        return builder.body(response);
+    }
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<Map<String, String>> handlerOptimisticLockingFailureException(OptimisticLockingFailureException ex) {
+        Map<String, String> response = new HashMap<>();
+        response.put("message", "Запись изменена другим запросом, повторите попытку");
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+    }
+
+    // Гонка двух одновременных созданий с одним номером ОМС доходит до уникального индекса
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    public ResponseEntity<?> handlerDataIntegrityViolationException(DataIntegrityViolationException ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException && UNIQUE_VIOLATION.equals(sqlException.getSQLState())) {
+                Map<String, String> response = new HashMap<>();
+                response.put("message", "Запись с такими уникальными данными уже существует");
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+            }
+        }
+        return handlerException(ex);
+    }
+
     @ExceptionHandler(Exception.class)
 
     public ResponseEntity<?> handlerException(Exception ex) {
@@ -0,0 +1,7 @@
+package producer.kafka.patient_card.exception;
+
+public class PreconditionFailedException extends RuntimeException {
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
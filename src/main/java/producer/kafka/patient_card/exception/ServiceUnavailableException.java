@@ -0,0 +1,21 @@
+package producer.kafka.patient_card.exception;
+
+import java.time.Duration;
+
+public class ServiceUnavailableException extends RuntimeException {
+    // Через сколько повторить запрос (заголовок Retry-After); null — без заголовка
+    private final Duration retryAfter;
+
+    public ServiceUnavailableException(String message) {
+        this(message, null);
+    }
+
+    public ServiceUnavailableException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
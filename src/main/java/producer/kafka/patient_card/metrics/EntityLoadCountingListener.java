@@ -0,0 +1,12 @@
+package producer.kafka.patient_card.metrics;
+
+import org.hibernate.event.spi.PostLoadEvent;
+import org.hibernate.event.spi.PostLoadEventListener;
+
+public class EntityLoadCountingListener implements PostLoadEventListener {
+
+    @Override
+    public void onPostLoad(PostLoadEvent event) {
+        RequestQueryStats.entityLoaded();
+    }
+}
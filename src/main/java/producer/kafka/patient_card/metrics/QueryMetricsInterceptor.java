@@ -0,0 +1,48 @@
+package producer.kafka.patient_card.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+public class QueryMetricsInterceptor implements HandlerInterceptor {
+    private final MeterRegistry meterRegistry;
+
+    public QueryMetricsInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        RequestQueryStats.begin();
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        RequestQueryStats stats = RequestQueryStats.end();
+        if (stats == null || !(handler instanceof HandlerMethod handlerMethod)) {
+            return;
+        }
+        String uri = String.valueOf(request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE));
+        String operation = handlerMethod.getBeanType().getSimpleName() + "." + handlerMethod.getMethod().getName();
+        summary("http.server.requests.sql.statements", "SQL-запросы на один HTTP-запрос", request, uri, operation)
+                .record(stats.getStatements());
+        summary("http.server.requests.entities.loaded", "Загруженные сущности на один HTTP-запрос", request, uri, operation)
+                .record(stats.getEntitiesLoaded());
+    }
+
+    private DistributionSummary summary(String name, String description, HttpServletRequest request,
+                                        String uri, String operation) {
+        return DistributionSummary.builder(name)
+                .description(description)
+                .tag("method", request.getMethod())
+                .tag("uri", uri)
+                .tag("operation", operation)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+}
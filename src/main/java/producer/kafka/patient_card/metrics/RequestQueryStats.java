@@ -0,0 +1,47 @@
+package producer.kafka.patient_card.metrics;
+
+/**
+ * Счётчики SQL-запросов и загруженных сущностей для текущего HTTP-запроса.
+ * Заполняются слушателями Hibernate только в потоке, где запрос был начат через {@link #begin()}.
+ */
+public final class RequestQueryStats {
+    private static final ThreadLocal<RequestQueryStats> CURRENT = new ThreadLocal<>();
+
+    private int statements;
+    private int entitiesLoaded;
+
+    private RequestQueryStats() {
+    }
+
+    public static void begin() {
+        CURRENT.set(new RequestQueryStats());
+    }
+
+    public static RequestQueryStats end() {
+        RequestQueryStats stats = CURRENT.get();
+        CURRENT.remove();
+        return stats;
+    }
+
+    static void statementExecuted() {
+        RequestQueryStats stats = CURRENT.get();
+        if (stats != null) {
+            stats.statements++;
+        }
+    }
+
+    static void entityLoaded() {
+        RequestQueryStats stats = CURRENT.get();
+        if (stats != null) {
+            stats.entitiesLoaded++;
+        }
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public int getEntitiesLoaded() {
+        return entitiesLoaded;
+    }
+}
@@ -0,0 +1,20 @@
+package producer.kafka.patient_card.metrics;
+
+import org.hibernate.BaseSessionEventListener;
+
+/**
+ * Подключается через hibernate.session.events.auto, Hibernate создаёт экземпляр на каждую сессию.
+ * Пакетная вставка считается одним обращением к БД.
+ */
+public class StatementCountingListener extends BaseSessionEventListener {
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        RequestQueryStats.statementExecuted();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        RequestQueryStats.statementExecuted();
+    }
+}
@@ -2,6 +2,8 @@ package producer.kafka.patient_card.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.time.LocalDate;
 
@@ -11,11 +13,16 @@ import java.time.LocalDate;
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
-@Table(name = "disease_sone", schema ="all_schem")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "disease")
+@Table(name = "disease_sone", schema ="all_schem", indexes = {
+        @Index(name = "idx_disease_patient_start", columnList = "patient_id, start_date"),
+        @Index(name = "idx_disease_end_date", columnList = "end_date")
+})
 public class Disease {
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "disease_seq")
-    @SequenceGenerator(name = "disease_seq", sequenceName = "disease_sequence",allocationSize=1)
+    @SequenceGenerator(name = "disease_seq", sequenceName = "disease_sequence",allocationSize=50)
     private Long id;
     @Column(nullable = false)
     private String icdCode; //Код МКБ-10 что это вообще ? я хз
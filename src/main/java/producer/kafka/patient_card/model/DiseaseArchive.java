@@ -0,0 +1,33 @@
+package producer.kafka.patient_card.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Закрытые эпизоды, перенесённые из disease_sone архивированием; id сохраняется прежним
+@Entity
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "disease_archive", schema = "all_schem", indexes = {
+        @Index(name = "idx_disease_archive_patient_start", columnList = "patient_id, start_date")
+})
+public class DiseaseArchive {
+    @Id
+    private Long id;
+    @Column(nullable = false)
+    private String icdCode;
+    @Column(nullable = false)
+    private LocalDate startDate;
+    private LocalDate endDate;
+    @Column(length = 1024, nullable = false)
+    private String prescription;
+    @Column(name = "patient_id", nullable = false)
+    private Long patientId;
+    @Column(nullable = false)
+    private LocalDateTime archivedAt;
+}
@@ -0,0 +1,38 @@
+package producer.kafka.patient_card.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+// Сводка по заболеваниям: сколько эпизодов с кодом МКБ началось в этот день у пациентов этого пола
+// и сколько из них ещё не закрыто. Ведётся инкрементально, пересчитывается заданием перестроения
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@IdClass(DiseaseStatsEntry.Key.class)
+@Table(name = "disease_stats", schema = "all_schem")
+public class DiseaseStatsEntry {
+    @Id
+    private String icdCode;
+    @Id
+    private String gender;
+    @Id
+    private LocalDate startDate;
+    @Column(nullable = false)
+    private long newCases;
+    @Column(nullable = false)
+    private long activeCases;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String icdCode;
+        private String gender;
+        private LocalDate startDate;
+    }
+}
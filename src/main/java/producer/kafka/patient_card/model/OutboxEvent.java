@@ -0,0 +1,32 @@
+package producer.kafka.patient_card.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import producer.kafka.patient_card.outbox.ChangeType;
+
+import java.time.Instant;
+
+@Entity
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "outbox_event", schema = "all_schem")
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_seq")
+    @SequenceGenerator(name = "outbox_seq", sequenceName = "outbox_sequence", allocationSize = 50)
+    private Long id;
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private ChangeType type;
+    @Column(nullable = false)
+    private Long patientId;
+    private Long entityId;
+    private Long version;
+    @Column(nullable = false)
+    private Instant createdAt;
+    // До этого момента событие публикует захвативший его экземпляр relay; пусто — свободно
+    private Instant claimedUntil;
+}
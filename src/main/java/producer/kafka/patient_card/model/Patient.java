@@ -2,6 +2,8 @@ package producer.kafka.patient_card.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -13,11 +15,16 @@ import java.util.List;
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
-@Table(name = "patient_card_some",schema ="all_schem")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "patient")
+@Table(name = "patient_card_some",schema ="all_schem", indexes = {
+        @Index(name = "idx_patient_name_id", columnList = "last_name, first_name, id"),
+        @Index(name = "idx_patient_gender_name_id", columnList = "gender, last_name, first_name, id")
+})
 public class Patient {
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "patient_seq")
-    @SequenceGenerator(name = "patient_seq", sequenceName = "patient_sequence",allocationSize=1)
+    @SequenceGenerator(name = "patient_seq", sequenceName = "patient_sequence",allocationSize=50)
     private Long id;
     @Column(nullable = false)
     private String lastName;
@@ -30,7 +37,11 @@ public class Patient {
     private LocalDate birthDate;
     @Column(nullable = false,length = 16, unique = true)
     private String omsNumber;
+    // Растёт при изменении карточки и любого её заболевания, служит основой ETag
+    @Version
+    private Long version;
 
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "patient-disease")
     @OneToMany(mappedBy = "patient", cascade = CascadeType.ALL,orphanRemoval = true) //fetch = FetchType.EAGER)
     private List<Disease> disease;
 
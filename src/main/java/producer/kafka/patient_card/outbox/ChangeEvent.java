@@ -0,0 +1,11 @@
+package producer.kafka.patient_card.outbox;
+
+import java.time.Instant;
+
+/**
+ * Компактное событие об изменении карточки: только идентификаторы и версия пациента.
+ * Потребитель при необходимости забирает актуальную карточку с If-None-Match по версии.
+ */
+public record ChangeEvent(Long eventId, ChangeType type, Long patientId, Long entityId, Long version,
+                          Instant occurredAt) {
+}
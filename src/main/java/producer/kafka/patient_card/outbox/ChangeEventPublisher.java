@@ -0,0 +1,12 @@
+package producer.kafka.patient_card.outbox;
+
+import java.util.List;
+
+/**
+ * Доставка пачки событий получателю. Метод возвращает управление только после подтверждения
+ * всей пачки; исключение означает, что пачка останется в outbox и будет отправлена повторно.
+ */
+public interface ChangeEventPublisher {
+
+    void publish(List<ChangeEvent> events);
+}
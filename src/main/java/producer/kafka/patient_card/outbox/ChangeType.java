@@ -0,0 +1,10 @@
+package producer.kafka.patient_card.outbox;
+
+public enum ChangeType {
+    PATIENT_CREATED,
+    PATIENT_UPDATED,
+    PATIENT_DELETED,
+    DISEASE_CREATED,
+    DISEASE_UPDATED,
+    DISEASE_DELETED
+}
@@ -0,0 +1,47 @@
+package producer.kafka.patient_card.outbox;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Издатель для локальной отладки: дописывает события в NDJSON-файл, по строке на событие.
+ */
+@Component
+@ConditionalOnProperty(name = "patient-card.outbox.publisher", havingValue = "file")
+public class FileChangeEventPublisher implements ChangeEventPublisher {
+    private final Path file;
+    private final ObjectWriter eventWriter;
+
+    public FileChangeEventPublisher(@Value("${patient-card.outbox.file:outbox-events.ndjson}") Path file,
+                                    ObjectMapper objectMapper) {
+        this.file = file;
+        this.eventWriter = objectMapper.writerFor(ChangeEvent.class)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @Override
+    public synchronized void publish(List<ChangeEvent> batch) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(batch.size() * 128);
+        try {
+            for (ChangeEvent event : batch) {
+                eventWriter.writeValue(buffer, event);
+                buffer.write('\n');
+            }
+            Files.write(file, buffer.toByteArray(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Не удалось записать события в " + file, ex);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package producer.kafka.patient_card.outbox;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Издатель для локального запуска и тестов: хранит последние события в памяти.
+ */
+@Component
+@ConditionalOnProperty(name = "patient-card.outbox.publisher", havingValue = "memory", matchIfMissing = true)
+public class InMemoryChangeEventPublisher implements ChangeEventPublisher {
+    private final int capacity;
+    private final Deque<ChangeEvent> events = new ArrayDeque<>();
+
+    public InMemoryChangeEventPublisher(@Value("${patient-card.outbox.memory-capacity:10000}") int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public synchronized void publish(List<ChangeEvent> batch) {
+        for (ChangeEvent event : batch) {
+            if (events.size() == capacity) {
+                events.removeFirst();
+            }
+            events.addLast(event);
+        }
+    }
+
+    public synchronized List<ChangeEvent> recent() {
+        return new ArrayList<>(events);
+    }
+}
@@ -0,0 +1,64 @@
+package producer.kafka.patient_card.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Публикация в Kafka. Ключ сообщения — ID пациента, поэтому события одной карточки попадают
+ * в одну партицию и читаются по порядку. Пачка отправляется целиком, затем ожидаются подтверждения.
+ */
+@Component
+@ConditionalOnProperty(name = "patient-card.outbox.publisher", havingValue = "kafka")
+public class KafkaChangeEventPublisher implements ChangeEventPublisher {
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ObjectWriter eventWriter;
+    private final String topic;
+    private final Duration sendTimeout;
+
+    public KafkaChangeEventPublisher(KafkaTemplate<String, String> kafkaTemplate,
+                                     ObjectMapper objectMapper,
+                                     @Value("${patient-card.outbox.topic:patient-card-changes}") String topic,
+                                     @Value("${patient-card.outbox.send-timeout:30s}") Duration sendTimeout) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.eventWriter = objectMapper.writerFor(ChangeEvent.class);
+        this.topic = topic;
+        this.sendTimeout = sendTimeout;
+    }
+
+    @Override
+    public void publish(List<ChangeEvent> batch) {
+        CompletableFuture<?>[] acks = new CompletableFuture<?>[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            ChangeEvent event = batch.get(i);
+            acks[i] = kafkaTemplate.send(topic, String.valueOf(event.patientId()), toJson(event));
+        }
+        try {
+            CompletableFuture.allOf(acks).get(sendTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Публикация событий прервана", ex);
+        } catch (ExecutionException | TimeoutException ex) {
+            throw new IllegalStateException("Kafka не подтвердила пачку из " + batch.size() + " событий", ex);
+        }
+    }
+
+    private String toJson(ChangeEvent event) {
+        try {
+            return eventWriter.writeValueAsString(event);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Не удалось сериализовать событие " + event.eventId(), ex);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package producer.kafka.patient_card.outbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import producer.kafka.patient_card.model.OutboxEvent;
+import producer.kafka.patient_card.repository.OutboxEventRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Фоновый разбор outbox в три шага: короткая транзакция захватывает пачку (SKIP LOCKED и аренда
+ * claimedUntil), публикация идёт без открытой транзакции и блокировок, вторая короткая транзакция
+ * удаляет доставленное. При ошибке издателя аренда снимается и пачка уйдёт повторно на следующем
+ * цикле; если экземпляр упал посреди публикации, события подберут после истечения аренды —
+ * доставка "хотя бы один раз", порядок по eventId.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "patient-card.outbox.relay.enabled", havingValue = "true", matchIfMissing = true)
+public class OutboxRelay implements MeterBinder {
+    private final OutboxEventRepository outboxEventRepository;
+    private final ChangeEventPublisher publisher;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Duration lease;
+    private final AtomicLong lagMillis = new AtomicLong();
+    private Counter published;
+    private Counter failures;
+    private Timer batchTimer;
+    private Timer deliveryLag;
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository,
+                       ChangeEventPublisher publisher,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${patient-card.outbox.batch-size:500}") int batchSize,
+                       @Value("${patient-card.outbox.lease:60s}") Duration lease) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.publisher = publisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.lease = lease;
+    }
+
+    @Scheduled(fixedDelayString = "${patient-card.outbox.poll-interval-ms:200}")
+    public void relay() {
+        try {
+            int sent;
+            do {
+                sent = relayBatch();
+            } while (sent == batchSize);
+        } catch (RuntimeException ex) {
+            if (failures != null) {
+                failures.increment();
+            }
+            log.warn("Не удалось опубликовать пачку событий outbox, повтор на следующем цикле: {}", ex.getMessage());
+        }
+    }
+
+    int relayBatch() {
+        long started = System.nanoTime();
+        Instant claimedAt = Instant.now();
+        List<OutboxEvent> batch = transactionTemplate.execute(status -> {
+            List<OutboxEvent> claimed = outboxEventRepository.findBatchForPublishing(claimedAt, Limit.of(batchSize));
+            if (!claimed.isEmpty()) {
+                outboxEventRepository.claim(ids(claimed), claimedAt.plus(lease));
+            }
+            return claimed;
+        });
+        if (batch == null || batch.isEmpty()) {
+            lagMillis.set(0);
+            return 0;
+        }
+        lagMillis.set(Duration.between(batch.get(0).getCreatedAt(), claimedAt).toMillis());
+        List<Long> ids = ids(batch);
+        try {
+            publisher.publish(batch.stream().map(OutboxRelay::toChangeEvent).toList());
+        } catch (RuntimeException ex) {
+            release(ids, ex);
+            throw ex;
+        }
+        Instant acknowledged = Instant.now();
+        transactionTemplate.executeWithoutResult(status -> outboxEventRepository.deleteAllByIdInBatch(ids));
+        if (published != null) {
+            published.increment(batch.size());
+            batch.forEach(event -> deliveryLag.record(Duration.between(event.getCreatedAt(), acknowledged)));
+            batchTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+        return batch.size();
+    }
+
+    // Без снятия аренды пачка ждала бы её истечения; если не удалось и это — так и будет
+    private void release(List<Long> ids, RuntimeException cause) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> outboxEventRepository.release(ids));
+        } catch (RuntimeException ex) {
+            cause.addSuppressed(ex);
+        }
+    }
+
+    private static List<Long> ids(List<OutboxEvent> events) {
+        return events.stream().map(OutboxEvent::getId).toList();
+    }
+
+    static ChangeEvent toChangeEvent(OutboxEvent event) {
+        return new ChangeEvent(event.getId(), event.getType(), event.getPatientId(), event.getEntityId(),
+                event.getVersion(), event.getCreatedAt());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        published = Counter.builder("patient.outbox.published")
+                .description("События, доставленные издателю")
+                .register(registry);
+        failures = Counter.builder("patient.outbox.publish.failures")
+                .description("Пачки outbox, которые не удалось опубликовать")
+                .register(registry);
+        batchTimer = Timer.builder("patient.outbox.relay.batch")
+                .description("Время разбора одной пачки outbox: захват, публикация, удаление")
+                .publishPercentileHistogram()
+                .register(registry);
+        deliveryLag = Timer.builder("patient.outbox.delivery.lag")
+                .description("Время от записи события в outbox до подтверждения издателем")
+                .publishPercentileHistogram()
+                .register(registry);
+        registry.gauge("patient.outbox.lag.millis", lagMillis);
+    }
+}
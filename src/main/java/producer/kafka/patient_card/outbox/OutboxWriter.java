@@ -0,0 +1,33 @@
+package producer.kafka.patient_card.outbox;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import producer.kafka.patient_card.model.OutboxEvent;
+import producer.kafka.patient_card.repository.OutboxEventRepository;
+
+import java.time.Instant;
+
+/**
+ * Записывает событие в outbox в транзакции изменения: событие появляется тогда и только тогда,
+ * когда зафиксировано само изменение. Вне транзакции вызов запрещён.
+ */
+@Component
+public class OutboxWriter {
+    private final OutboxEventRepository outboxEventRepository;
+
+    public OutboxWriter(OutboxEventRepository outboxEventRepository) {
+        this.outboxEventRepository = outboxEventRepository;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(ChangeType type, Long patientId, Long entityId, Long version) {
+        outboxEventRepository.save(OutboxEvent.builder()
+                .type(type)
+                .patientId(patientId)
+                .entityId(entityId)
+                .version(version)
+                .createdAt(Instant.now())
+                .build());
+    }
+}
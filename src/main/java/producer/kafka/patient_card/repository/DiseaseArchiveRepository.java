@@ -0,0 +1,46 @@
+package producer.kafka.patient_card.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import producer.kafka.patient_card.dto.DiseaseDTO;
+import producer.kafka.patient_card.model.DiseaseArchive;
+import producer.kafka.patient_card.stats.DiseaseCase;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface DiseaseArchiveRepository extends JpaRepository<DiseaseArchive, Long> {
+
+    @Query("SELECT new producer.kafka.patient_card.dto.DiseaseDTO(a.id, a.icdCode, a.startDate, a.endDate, a.prescription) " +
+            "FROM DiseaseArchive a WHERE a.patientId = :patientId")
+    Slice<DiseaseDTO> findDtoByPatientId(@Param("patientId") Long patientId, Pageable pageable);
+
+    @Query("SELECT new producer.kafka.patient_card.dto.DiseaseDTO(a.id, a.icdCode, a.startDate, a.endDate, a.prescription) " +
+            "FROM DiseaseArchive a WHERE a.id = :id")
+    Optional<DiseaseDTO> findDtoById(@Param("id") Long id);
+
+    @Query("SELECT p.version FROM DiseaseArchive a JOIN Patient p ON p.id = a.patientId WHERE a.id = :id")
+    Optional<Long> findPatientVersionById(@Param("id") Long id);
+
+    @Query("SELECT new producer.kafka.patient_card.stats.DiseaseCase(a.icdCode, p.gender, a.startDate, a.endDate) " +
+            "FROM DiseaseArchive a JOIN Patient p ON p.id = a.patientId WHERE a.patientId = :patientId")
+    List<DiseaseCase> findCasesByPatientId(@Param("patientId") Long patientId);
+
+    // Копирование одним INSERT ... SELECT, без загрузки сущностей
+    @Modifying
+    @Query("INSERT INTO DiseaseArchive (id, icdCode, startDate, endDate, prescription, patientId, archivedAt) " +
+            "SELECT d.id, d.icdCode, d.startDate, d.endDate, d.prescription, d.patient.id, LOCAL DATETIME " +
+            "FROM Disease d WHERE d.id IN :ids AND d.endDate < :cutoff")
+    int copyClosedBefore(@Param("ids") List<Long> ids, @Param("cutoff") LocalDate cutoff);
+
+    @Modifying
+    @Query("DELETE FROM DiseaseArchive a WHERE a.patientId = :patientId")
+    int deleteByPatientId(@Param("patientId") Long patientId);
+}
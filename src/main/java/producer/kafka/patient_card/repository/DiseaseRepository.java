@@ -1,12 +1,64 @@
 package producer.kafka.patient_card.repository;
 
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import producer.kafka.patient_card.dto.DiseaseDTO;
 import producer.kafka.patient_card.model.Disease;
+import producer.kafka.patient_card.stats.DiseaseCase;
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface DiseaseRepository extends JpaRepository<Disease,Long> {
+public interface DiseaseRepository extends JpaRepository<Disease,Long>, DiseaseRepositoryCustom {
     List<Disease> findByPatientId(Long patientId);
+
+    @Query("SELECT new producer.kafka.patient_card.dto.DiseaseDTO(d.id, d.icdCode, d.startDate, d.endDate, d.prescription) " +
+            "FROM Disease d WHERE d.patient.id = :patientId")
+    Slice<DiseaseDTO> findDtoByPatientId(@Param("patientId") Long patientId, Pageable pageable);
+
+    @Query("SELECT new producer.kafka.patient_card.dto.DiseaseDTO(d.id, d.icdCode, d.startDate, d.endDate, d.prescription) " +
+            "FROM Disease d WHERE d.patient.id = :patientId AND d.endDate IS NULL")
+    Slice<DiseaseDTO> findOpenDtoByPatientId(@Param("patientId") Long patientId, Pageable pageable);
+
+    @Query("SELECT new producer.kafka.patient_card.dto.DiseaseDTO(d.id, d.icdCode, d.startDate, d.endDate, d.prescription) " +
+            "FROM Disease d WHERE d.patient.id = :patientId AND d.endDate IS NOT NULL")
+    Slice<DiseaseDTO> findClosedDtoByPatientId(@Param("patientId") Long patientId, Pageable pageable);
+
+    @Query("SELECT d.patient.id FROM Disease d WHERE d.id = :id")
+    Optional<Long> findPatientIdById(@Param("id") Long id);
+
+    @Query("SELECT new producer.kafka.patient_card.stats.DiseaseCase(d.icdCode, d.patient.gender, d.startDate, d.endDate) " +
+            "FROM Disease d WHERE d.id = :id")
+    Optional<DiseaseCase> findCaseById(@Param("id") Long id);
+
+    @Query("SELECT new producer.kafka.patient_card.stats.DiseaseCase(d.icdCode, d.patient.gender, d.startDate, d.endDate) " +
+            "FROM Disease d WHERE d.patient.id = :patientId")
+    List<DiseaseCase> findCasesByPatientId(@Param("patientId") Long patientId);
+
+    // FOR UPDATE SKIP LOCKED: выбранные эпизоды не изменятся, пока порция не перенесена,
+    // а занятые другим запросом подождут следующего запуска
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT d.id FROM Disease d WHERE d.endDate < :cutoff ORDER BY d.id")
+    List<Long> findIdsClosedBefore(@Param("cutoff") LocalDate cutoff, Limit limit);
+
+    @Query("SELECT DISTINCT d.patient.id FROM Disease d WHERE d.id IN :ids")
+    List<Long> findPatientIdsByIdIn(@Param("ids") List<Long> ids);
+
+    // Условие выборки повторяется: эпизод, который успели открыть заново, не удаляется
+    @Modifying
+    @Query("DELETE FROM Disease d WHERE d.id IN :ids AND d.endDate < :cutoff")
+    int deleteClosedBefore(@Param("ids") List<Long> ids, @Param("cutoff") LocalDate cutoff);
 }
@@ -0,0 +1,8 @@
+package producer.kafka.patient_card.repository;
+
+import java.util.Map;
+
+public interface DiseaseRepositoryCustom {
+    // Пишет только поля из changes (имена из FieldPatch); 0 — нет заболевания или менять нечего
+    int patchById(Long id, Map<String, Object> changes);
+}
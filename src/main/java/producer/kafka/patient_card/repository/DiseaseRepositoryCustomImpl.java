@@ -0,0 +1,24 @@
+package producer.kafka.patient_card.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.type.StandardBasicTypes;
+import producer.kafka.patient_card.model.Disease;
+import producer.kafka.patient_card.repository.TargetedUpdate.Column;
+
+import java.util.Map;
+
+public class DiseaseRepositoryCustomImpl implements DiseaseRepositoryCustom {
+    private static final TargetedUpdate PATCH = new TargetedUpdate(Disease.class, "all_schem.disease_sone", Map.of(
+            "icdCode", new Column("icd_code", StandardBasicTypes.STRING),
+            "startDate", new Column("start_date", StandardBasicTypes.LOCAL_DATE),
+            "endDate", new Column("end_date", StandardBasicTypes.LOCAL_DATE),
+            "prescription", new Column("prescription", StandardBasicTypes.STRING)));
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public int patchById(Long id, Map<String, Object> changes) {
+        return PATCH.execute(entityManager, id, changes, null, null, Map.of());
+    }
+}
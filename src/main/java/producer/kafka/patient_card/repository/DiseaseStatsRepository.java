@@ -0,0 +1,40 @@
+package producer.kafka.patient_card.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import producer.kafka.patient_card.model.DiseaseStatsEntry;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface DiseaseStatsRepository extends JpaRepository<DiseaseStatsEntry, DiseaseStatsEntry.Key> {
+
+    @Modifying
+    @Query("UPDATE DiseaseStatsEntry s SET s.newCases = s.newCases + :newCases, s.activeCases = s.activeCases + :activeCases " +
+            "WHERE s.icdCode = :icdCode AND s.gender = :gender AND s.startDate = :startDate")
+    int addCounts(@Param("icdCode") String icdCode, @Param("gender") String gender, @Param("startDate") LocalDate startDate,
+                  @Param("newCases") long newCases, @Param("activeCases") long activeCases);
+
+    // Итоги по коду и полу; дата в строке — самый ранний день
+    @Query("SELECT new producer.kafka.patient_card.model.DiseaseStatsEntry(s.icdCode, s.gender, MIN(s.startDate), " +
+            "SUM(s.newCases), SUM(s.activeCases)) FROM DiseaseStatsEntry s GROUP BY s.icdCode, s.gender")
+    List<DiseaseStatsEntry> sumByCodeAndGender();
+
+    List<DiseaseStatsEntry> findByStartDateGreaterThanEqual(LocalDate startDate);
+
+    // Полный пересчёт одним INSERT ... SELECT из рабочей таблицы и архива, без выгрузки строк в приложение
+    @Modifying
+    @Query("INSERT INTO DiseaseStatsEntry (icdCode, gender, startDate, newCases, activeCases) " +
+            "SELECT c.icdCode, c.gender, c.startDate, COUNT(*), SUM(c.active) FROM (" +
+            "SELECT d.icdCode AS icdCode, COALESCE(NULLIF(TRIM(p.gender), ''), 'unknown') AS gender, d.startDate AS startDate, " +
+            "CASE WHEN d.endDate IS NULL THEN 1 ELSE 0 END AS active FROM Disease d JOIN d.patient p " +
+            "UNION ALL " +
+            "SELECT a.icdCode, COALESCE(NULLIF(TRIM(p.gender), ''), 'unknown'), a.startDate, 0 " +
+            "FROM DiseaseArchive a JOIN Patient p ON p.id = a.patientId" +
+            ") c GROUP BY c.icdCode, c.gender, c.startDate")
+    int rebuildFromDiseases();
+}
@@ -0,0 +1,36 @@
+package producer.kafka.patient_card.repository;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import producer.kafka.patient_card.model.OutboxEvent;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    // lock.timeout = -2 — FOR UPDATE SKIP LOCKED: несколько экземпляров разбирают outbox, не мешая друг другу.
+    // Блокировка держится только до захвата пачки, дальше чужие события отсекает claimedUntil
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT e FROM OutboxEvent e WHERE e.claimedUntil IS NULL OR e.claimedUntil < :now ORDER BY e.id")
+    List<OutboxEvent> findBatchForPublishing(@Param("now") Instant now, Limit limit);
+
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.claimedUntil = :until WHERE e.id IN :ids")
+    int claim(@Param("ids") Collection<Long> ids, @Param("until") Instant until);
+
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.claimedUntil = NULL WHERE e.id IN :ids")
+    int release(@Param("ids") Collection<Long> ids);
+}
@@ -1,15 +1,73 @@
 package producer.kafka.patient_card.repository;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import producer.kafka.patient_card.dto.PatientExportRow;
+import producer.kafka.patient_card.dto.PatientSearchHit;
 import producer.kafka.patient_card.model.Patient;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 
 @Repository
-public interface PatientRepository extends JpaRepository<Patient, Long> {
+public interface PatientRepository extends JpaRepository<Patient, Long>, PatientRepositoryCustom {
     @Query("SELECT p FROM Patient p LEFT JOIN FETCH p.disease WHERE p.id = :id")
     Optional<Patient> findByIdWithDiseases(@Param("id") Long id);
+
+    // Плоские строки пациент+заболевание без сущностей: контекст персистентности не растёт,
+    // а драйвер Postgres читает курсором порциями по fetch size (нужна открытая транзакция)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT new producer.kafka.patient_card.dto.PatientExportRow(p.id, p.lastName, p.firstName, p.middleName, " +
+            "p.gender, p.birthDate, p.omsNumber, d.id, d.icdCode, d.startDate, d.endDate, d.prescription) " +
+            "FROM Patient p LEFT JOIN p.disease d ORDER BY p.id, d.startDate, d.id")
+    Stream<PatientExportRow> streamAllForExport();
+
+    // Массовый вариант для архивирования: сбрасывает регион Patient целиком, но выполняется раз в сутки
+    @Modifying
+    @Query("UPDATE Patient p SET p.version = p.version + 1 WHERE p.id IN :ids")
+    int incrementVersions(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT p.id FROM Patient p WHERE p.omsNumber = :omsNumber")
+    Optional<Long> findIdByOmsNumber(@Param("omsNumber") String omsNumber);
+
+    boolean existsByOmsNumber(String omsNumber);
+
+    boolean existsByOmsNumberAndIdNot(String omsNumber, Long id);
+
+    // Мимо кэша второго уровня: нужна версия, только что записанная в этой транзакции
+    @Query("SELECT p.version FROM Patient p WHERE p.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "5000"))
+    @Query("SELECT p.omsNumber FROM Patient p")
+    Stream<String> streamAllOmsNumbers();
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "5000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT new producer.kafka.patient_card.dto.PatientSearchHit(p.id, p.lastName, p.firstName, p.birthDate) " +
+            "FROM Patient p")
+    Stream<PatientSearchHit> streamAllForNameIndex();
+
+    // Запасной поиск, пока префиксный индекс имён строится после старта. Сравнение как в индексе:
+    // без учёта регистра и с ё, приведённой к е (prefix уже нормализован)
+    @Query("SELECT new producer.kafka.patient_card.dto.PatientSearchHit(p.id, p.lastName, p.firstName, p.birthDate) " +
+            "FROM Patient p WHERE REPLACE(LOWER(CONCAT(p.lastName, ' ', p.firstName)), 'ё', 'е') LIKE :prefix ESCAPE '\\' " +
+            "AND (:birthDate IS NULL OR p.birthDate = :birthDate) ORDER BY p.lastName, p.firstName, p.id")
+    List<PatientSearchHit> searchByNamePrefix(@Param("prefix") String prefix, @Param("birthDate") LocalDate birthDate,
+                                              Limit limit);
 }
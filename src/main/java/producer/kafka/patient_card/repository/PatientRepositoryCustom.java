@@ -0,0 +1,32 @@
+package producer.kafka.patient_card.repository;
+
+import producer.kafka.patient_card.dto.PatientCursor;
+import producer.kafka.patient_card.dto.PatientFilter;
+import producer.kafka.patient_card.dto.PatientListItemDTO;
+import producer.kafka.patient_card.model.Disease;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public interface PatientRepositoryCustom {
+    List<PatientListItemDTO> findPage(PatientFilter filter, PatientCursor after, int limit);
+
+    // Заболевания пациента, если коллекция уже лежит в кэше второго уровня; иначе пусто
+    Optional<List<Disease>> findCachedDiseases(Long patientId);
+
+    // Только перечисленные поля пациента (имена из PatientView.FIELDS) в том же порядке
+    Optional<Map<String, Object>> findFieldsById(Long id, Collection<String> fields);
+
+    // Блокирует строку пациента до конца транзакции и возвращает её текущую версию; пусто — пациента нет
+    Optional<Long> lockVersionById(Long id);
+
+    // Блокирует строку пациента до конца транзакции и сразу поднимает версию карточки;
+    // пусто — пациента нет
+    Optional<Long> incrementVersionById(Long id);
+
+    // Пишет только поля из changes (имена из FieldPatch) и поднимает версию; 0 — нет пациента,
+    // версия не совпала с expectedVersion или менять нечего
+    int patchById(Long id, Map<String, Object> changes, Long expectedVersion);
+}
@@ -0,0 +1,161 @@
+package producer.kafka.patient_card.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.type.StandardBasicTypes;
+import producer.kafka.patient_card.dto.PatientCursor;
+import producer.kafka.patient_card.dto.PatientFilter;
+import producer.kafka.patient_card.dto.PatientListItemDTO;
+import producer.kafka.patient_card.dto.PatientView;
+import producer.kafka.patient_card.model.Disease;
+import producer.kafka.patient_card.model.Patient;
+import producer.kafka.patient_card.repository.TargetedUpdate.Column;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class PatientRepositoryCustomImpl implements PatientRepositoryCustom {
+    private static final String DISEASES_ROLE = Patient.class.getName() + ".disease";
+    private static final TargetedUpdate PATCH = new TargetedUpdate(Patient.class, "all_schem.patient_card_some", Map.of(
+            "lastName", new Column("last_name", StandardBasicTypes.STRING),
+            "firstName", new Column("first_name", StandardBasicTypes.STRING),
+            "middleName", new Column("middle_name", StandardBasicTypes.STRING),
+            "gender", new Column("gender", StandardBasicTypes.STRING),
+            "birthDate", new Column("birth_date", StandardBasicTypes.LOCAL_DATE),
+            "omsNumber", new Column("oms_number", StandardBasicTypes.STRING)));
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Условие по кортежу (lastName, firstName, id) совпадает с порядком индекса idx_patient_name_id,
+    // поэтому любая страница читается range-сканом от курсора без OFFSET
+    @Override
+    public List<PatientListItemDTO> findPage(PatientFilter filter, PatientCursor after, int limit) {
+        StringBuilder jpql = new StringBuilder("SELECT new producer.kafka.patient_card.dto.PatientListItemDTO(")
+                .append("p.id, p.lastName, p.firstName, p.middleName, p.gender, p.birthDate, p.omsNumber) ")
+                .append("FROM Patient p WHERE 1 = 1");
+        if (filter.getGender() != null) {
+            jpql.append(" AND p.gender = :gender");
+        }
+        if (filter.getBirthDateFrom() != null) {
+            jpql.append(" AND p.birthDate >= :birthDateFrom");
+        }
+        if (filter.getBirthDateTo() != null) {
+            jpql.append(" AND p.birthDate <= :birthDateTo");
+        }
+        if (after != null) {
+            jpql.append(" AND (p.lastName, p.firstName, p.id) > (:lastName, :firstName, :id)");
+        }
+        jpql.append(" ORDER BY p.lastName, p.firstName, p.id");
+
+        TypedQuery<PatientListItemDTO> query = entityManager.createQuery(jpql.toString(), PatientListItemDTO.class);
+        if (filter.getGender() != null) {
+            query.setParameter("gender", filter.getGender());
+        }
+        if (filter.getBirthDateFrom() != null) {
+            query.setParameter("birthDateFrom", filter.getBirthDateFrom());
+        }
+        if (filter.getBirthDateTo() != null) {
+            query.setParameter("birthDateTo", filter.getBirthDateTo());
+        }
+        if (after != null) {
+            query.setParameter("lastName", after.lastName());
+            query.setParameter("firstName", after.firstName());
+            query.setParameter("id", after.id());
+        }
+        return query.setMaxResults(limit).getResultList();
+    }
+
+    // Пациент и заболевания при попадании берутся из кэша второго уровня без SQL. При промахе
+    // коллекцию не загружаем: для длинной истории страница из БД дешевле всей коллекции
+    @Override
+    public Optional<List<Disease>> findCachedDiseases(Long patientId) {
+        SessionFactory sessionFactory = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class);
+        if (!sessionFactory.getCache().containsCollection(DISEASES_ROLE, patientId)) {
+            return Optional.empty();
+        }
+        Patient patient = entityManager.find(Patient.class, patientId);
+        if (patient == null) {
+            return Optional.empty();
+        }
+        Hibernate.initialize(patient.getDisease());
+        return Optional.of(patient.getDisease());
+    }
+
+    // В SELECT попадают только запрошенные столбцы; имена сверяются со списком полей,
+    // поэтому в текст запроса не может попасть ничего, кроме них
+    @Override
+    public Optional<Map<String, Object>> findFieldsById(Long id, Collection<String> fields) {
+        StringBuilder jpql = new StringBuilder("SELECT p.id AS id");
+        for (String field : fields) {
+            if (!PatientView.FIELDS.contains(field)) {
+                throw new IllegalArgumentException("Неизвестное поле пациента: " + field);
+            }
+            if (!field.equals("id")) {
+                jpql.append(", p.").append(field).append(" AS ").append(field);
+            }
+        }
+        jpql.append(" FROM Patient p WHERE p.id = :id");
+        List<Tuple> rows = entityManager.createQuery(jpql.toString(), Tuple.class)
+                .setParameter("id", id)
+                .getResultList();
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String field : fields) {
+            values.put(field, rows.get(0).get(field));
+        }
+        return Optional.of(values);
+    }
+
+    // Изменение заболеваний не трогает строку пациента, поэтому версию карточки поднимаем явно.
+    // Сначала строка блокируется и версия читается из БД: пациент к этому моменту может уже лежать
+    // в сессии (findById, disease.getPatient()) или прийти из кэша второго уровня с устаревшей версией,
+    // и проверка версии при блокировке сущности дала бы 409 вместо ожидания.
+    // Если копия актуальна, версия растёт через сущность и кэш второго уровня обновляет одну запись.
+    // Устаревшую копию поднимаем UPDATE-запросом: он сбросит регион пациентов, но только в этом редком случае
+    @Override
+    public Optional<Long> incrementVersionById(Long id) {
+        Optional<Long> locked = lockVersionById(id);
+        if (locked.isEmpty()) {
+            return Optional.empty();
+        }
+        long current = locked.get();
+        Patient patient = entityManager.find(Patient.class, id);
+        if (patient != null && patient.getVersion() == current) {
+            entityManager.lock(patient, LockModeType.PESSIMISTIC_FORCE_INCREMENT);
+            return Optional.of(patient.getVersion());
+        }
+        entityManager.createQuery("UPDATE Patient p SET p.version = p.version + 1 WHERE p.id = :id")
+                .setParameter("id", id)
+                .executeUpdate();
+        return Optional.of(current + 1);
+    }
+
+    // Запрос мимо сущности: версия из БД, а не из сессии или кэша второго уровня
+    @Override
+    public Optional<Long> lockVersionById(Long id) {
+        List<?> locked = entityManager.createNativeQuery(
+                        "SELECT version FROM all_schem.patient_card_some WHERE id = :id FOR UPDATE")
+                .setParameter("id", id)
+                .getResultList();
+        return locked.isEmpty() ? Optional.empty() : Optional.of(((Number) locked.get(0)).longValue());
+    }
+
+    @Override
+    public int patchById(Long id, Map<String, Object> changes, Long expectedVersion) {
+        if (expectedVersion == null) {
+            return PATCH.execute(entityManager, id, changes, "version = version + 1", null, Map.of());
+        }
+        return PATCH.execute(entityManager, id, changes, "version = version + 1", "version = :expectedVersion",
+                Map.of("expectedVersion", expectedVersion));
+    }
+}
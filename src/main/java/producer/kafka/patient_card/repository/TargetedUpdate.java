@@ -0,0 +1,93 @@
+package producer.kafka.patient_card.repository;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.query.TypedParameterValue;
+import org.hibernate.type.BasicTypeReference;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+
+/**
+ * UPDATE одной строки по id, который пишет только переданные столбцы и только если хотя бы
+ * один из них действительно меняется (IS DISTINCT FROM). Возвращает число изменённых строк:
+ * 0 — строки нет, условие не выполнено или менять нечего.
+ * Запрос нативный: Hibernate после HQL UPDATE сбрасывает кэш второго уровня всей сущности,
+ * а здесь запрос привязан к отдельному пространству и из кэша удаляется только эта запись.
+ */
+final class TargetedUpdate {
+    private final Class<?> entity;
+    private final String table;
+    private final Map<String, Column> columns;
+
+    TargetedUpdate(Class<?> entity, String table, Map<String, Column> columns) {
+        this.entity = entity;
+        this.table = table;
+        this.columns = columns;
+    }
+
+    /**
+     * @param extraSet   дополнительное присваивание (например, увеличение версии) или null
+     * @param extraWhere дополнительное условие на строку или null; параметры — из extraParameters
+     */
+    int execute(EntityManager entityManager, Long id, Map<String, Object> changes,
+                String extraSet, String extraWhere, Map<String, Object> extraParameters) {
+        StringBuilder set = new StringBuilder();
+        StringBuilder distinct = new StringBuilder();
+        for (String field : changes.keySet()) {
+            Column column = column(field);
+            set.append(set.isEmpty() ? "" : ", ").append(column.name()).append(" = :").append(field);
+            distinct.append(distinct.isEmpty() ? "" : " OR ")
+                    .append(column.name()).append(" IS DISTINCT FROM :").append(field);
+        }
+        if (extraSet != null) {
+            set.append(", ").append(extraSet);
+        }
+        String sql = "UPDATE " + table + " SET " + set + " WHERE id = :id AND (" + distinct + ")"
+                + (extraWhere != null ? " AND " + extraWhere : "");
+
+        NativeQuery<?> query = entityManager.createNativeQuery(sql).unwrap(NativeQuery.class);
+        query.addSynchronizedQuerySpace(table + "#targeted");
+        query.setParameter("id", id);
+        changes.forEach((field, value) -> query.setParameter(field, typed(column(field), value)));
+        extraParameters.forEach(query::setParameter);
+        int updated = query.executeUpdate();
+        if (updated > 0) {
+            evict(entityManager, id);
+        }
+        return updated;
+    }
+
+    // Сразу и после завершения транзакции: параллельное чтение могло положить в кэш старую строку
+    private void evict(EntityManager entityManager, Long id) {
+        SessionFactory sessionFactory = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class);
+        sessionFactory.getCache().evictEntityData(entity, id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    sessionFactory.getCache().evictEntityData(entity, id);
+                }
+            });
+        }
+    }
+
+    private Column column(String field) {
+        Column column = columns.get(field);
+        if (column == null) {
+            throw new IllegalArgumentException("Поле нельзя изменить: " + field);
+        }
+        return column;
+    }
+
+    // Тип задаётся явно: иначе null в SET и IS DISTINCT FROM уходит в драйвер без типа
+    @SuppressWarnings("unchecked")
+    private static <T> TypedParameterValue<T> typed(Column column, Object value) {
+        return new TypedParameterValue<>((BasicTypeReference<T>) column.type(), (T) value);
+    }
+
+    record Column(String name, BasicTypeReference<?> type) {
+    }
+}
@@ -0,0 +1,101 @@
+package producer.kafka.patient_card.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import producer.kafka.patient_card.cache.PatientCardCache;
+import producer.kafka.patient_card.repository.DiseaseArchiveRepository;
+import producer.kafka.patient_card.repository.DiseaseRepository;
+import producer.kafka.patient_card.repository.PatientRepository;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.List;
+
+/**
+ * Переносит давно закрытые эпизоды из disease_sone в disease_archive порциями, каждая в своей
+ * транзакции, чтобы не держать долгих блокировок. Строки порции блокируются при выборке, а копирование
+ * и удаление повторяют условие закрытия, так что параллельная правка эпизода не теряется. Карточки затронутых пациентов меняются
+ * (архивные эпизоды в них не входят), поэтому их версия поднимается, а кэш сбрасывается.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "patient-card.archive.enabled", havingValue = "true", matchIfMissing = true)
+public class DiseaseArchiveService implements MeterBinder {
+    private final DiseaseRepository diseaseRepository;
+    private final DiseaseArchiveRepository diseaseArchiveRepository;
+    private final PatientRepository patientRepository;
+    private final PatientCardCache patientCardCache;
+    private final TransactionTemplate transactionTemplate;
+    private final Period closedFor;
+    private final int chunkSize;
+    private Counter archived;
+
+    public DiseaseArchiveService(DiseaseRepository diseaseRepository,
+                                 DiseaseArchiveRepository diseaseArchiveRepository,
+                                 PatientRepository patientRepository,
+                                 PatientCardCache patientCardCache,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${patient-card.archive.closed-for:P3Y}") Period closedFor,
+                                 @Value("${patient-card.archive.chunk-size:1000}") int chunkSize) {
+        this.diseaseRepository = diseaseRepository;
+        this.diseaseArchiveRepository = diseaseArchiveRepository;
+        this.patientRepository = patientRepository;
+        this.patientCardCache = patientCardCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.closedFor = closedFor;
+        this.chunkSize = chunkSize;
+    }
+
+    @Scheduled(cron = "${patient-card.archive.cron:0 30 3 * * *}")
+    public void archiveClosedEpisodes() {
+        LocalDate cutoff = LocalDate.now().minus(closedFor);
+        long started = System.nanoTime();
+        long total = 0;
+        int moved;
+        do {
+            moved = archiveChunk(cutoff);
+            total += moved;
+        } while (moved == chunkSize);
+        log.info("Архивировано {} заболеваний, закрытых до {}, за {} мс",
+                total, cutoff, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    int archiveChunk(LocalDate cutoff) {
+        Integer moved = transactionTemplate.execute(status -> {
+            List<Long> ids = diseaseRepository.findIdsClosedBefore(cutoff, Limit.of(chunkSize));
+            if (ids.isEmpty()) {
+                return 0;
+            }
+            List<Long> patientIds = diseaseRepository.findPatientIdsByIdIn(ids);
+            int copied = diseaseArchiveRepository.copyClosedBefore(ids, cutoff);
+            int deleted = diseaseRepository.deleteClosedBefore(ids, cutoff);
+            if (copied != deleted) {
+                throw new IllegalStateException("Порция архива изменилась во время переноса: скопировано "
+                        + copied + ", удалено " + deleted);
+            }
+            patientRepository.incrementVersions(patientIds);
+            patientIds.forEach(patientCardCache::invalidate);
+            return deleted;
+        });
+        if (archived != null && moved != null) {
+            archived.increment(moved);
+        }
+        return moved == null ? 0 : moved;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        archived = Counter.builder("patient.disease.archived")
+                .description("Заболевания, перенесённые в архив")
+                .register(registry);
+    }
+}
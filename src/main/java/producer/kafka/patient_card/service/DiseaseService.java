@@ -1,13 +1,21 @@
 package producer.kafka.patient_card.service;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import producer.kafka.patient_card.dto.DiseaseDTO;
+import producer.kafka.patient_card.dto.DiseaseStatus;
+import producer.kafka.patient_card.dto.FieldPatch;
+
 import java.util.List;
 
 @Service
 public interface DiseaseService {
     DiseaseDTO createDisease(Long patientId, DiseaseDTO diseaseDTO);
-    List<DiseaseDTO> getAllDiseases(Long id);
+    List<DiseaseDTO> createDiseases(Long patientId, List<DiseaseDTO> diseaseDTOs);
+    Slice<DiseaseDTO> getAllDiseases(Long patientId, DiseaseStatus status, boolean includeArchived, int page, Integer size);
     DiseaseDTO getDiseaseById(Long id);
-    DiseaseDTO updateDisease(Long id, DiseaseDTO diseaseDTO);
+    long getDiseaseVersion(Long id);
+    long getDiseaseHistoryVersion(Long patientId);
+    DiseaseDTO updateDisease(Long id, DiseaseDTO diseaseDTO, Long expectedPatientVersion);
+    long patchDisease(Long id, FieldPatch patch, Long expectedPatientVersion);
     void deleteDisease(Long id);
 }
@@ -1,27 +1,67 @@
 package producer.kafka.patient_card.service;
+import io.micrometer.core.annotation.Timed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import producer.kafka.patient_card.cache.IcdCatalog;
+import producer.kafka.patient_card.cache.PatientCardCache;
 import producer.kafka.patient_card.dto.DiseaseDTO;
+import producer.kafka.patient_card.dto.DiseaseStatus;
+import producer.kafka.patient_card.dto.FieldPatch;
+import producer.kafka.patient_card.exception.PreconditionFailedException;
 import producer.kafka.patient_card.exception.ResourceNotFoundException;
 import producer.kafka.patient_card.model.Disease;
 import producer.kafka.patient_card.model.Patient;
+import producer.kafka.patient_card.outbox.ChangeType;
+import producer.kafka.patient_card.outbox.OutboxWriter;
+import producer.kafka.patient_card.repository.DiseaseArchiveRepository;
 import producer.kafka.patient_card.repository.DiseaseRepository;
 import producer.kafka.patient_card.repository.PatientRepository;
+import producer.kafka.patient_card.stats.DiseaseCase;
+import producer.kafka.patient_card.stats.DiseaseStats;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.TreeMap;
 
 @Service
+@Timed(value = "disease.service", histogram = true)
 public class DiseaseServiceImpl implements DiseaseService {
     private static final Logger logger = LoggerFactory.getLogger(DiseaseServiceImpl.class);
+    static final int MAX_PAGE_SIZE = 1000;
+    static final int MAX_ARCHIVE_DEPTH = 10_000;
+    static final int MAX_BATCH_SIZE = 500;
+    private static final Sort HISTORY_ORDER = Sort.by(Sort.Order.desc("startDate"), Sort.Order.desc("id"));
+    private static final Comparator<DiseaseDTO> HISTORY_COMPARATOR = Comparator
+            .comparing(DiseaseDTO::getStartDate, Comparator.reverseOrder())
+            .thenComparing(DiseaseDTO::getId, Comparator.reverseOrder());
     private final DiseaseRepository diseaseRepository;
+    private final DiseaseArchiveRepository diseaseArchiveRepository;
     private final PatientRepository patientRepository;
+    private final PatientCardCache patientCardCache;
+    private final OutboxWriter outboxWriter;
+    private final IcdCatalog icdCatalog;
+    private final DiseaseStats diseaseStats;
 
-    public DiseaseServiceImpl(DiseaseRepository diseaseRepository, PatientRepository patientRepository) {
+    public DiseaseServiceImpl(DiseaseRepository diseaseRepository, DiseaseArchiveRepository diseaseArchiveRepository,
+                              PatientRepository patientRepository, PatientCardCache patientCardCache,
+                              OutboxWriter outboxWriter, IcdCatalog icdCatalog, DiseaseStats diseaseStats) {
         this.diseaseRepository = diseaseRepository;
+        this.diseaseArchiveRepository = diseaseArchiveRepository;
         this.patientRepository = patientRepository;
+        this.patientCardCache = patientCardCache;
+        this.outboxWriter = outboxWriter;
+        this.icdCatalog = icdCatalog;
+        this.diseaseStats = diseaseStats;
     }
 
     @Override
@@ -29,60 +69,328 @@ public class DiseaseServiceImpl implements DiseaseService {
     public DiseaseDTO createDisease(Long patientId, DiseaseDTO diseaseDTO) {
         logger.info("Начато создание болезни для пациента с ID: {}", patientId);
         validateDiseaseDate(diseaseDTO);
+        validateIcdCode(diseaseDTO);
         Patient patient = patientRepository.findById(patientId)
                 .orElseThrow(() -> new ResourceNotFoundException("Пациент с ID " + patientId + " не найден"));
 
         Disease disease = mapToEntity(diseaseDTO);
 
         disease.setPatient(patient);
+        Disease saved = diseaseRepository.save(disease);
+        DiseaseDTO created = mapToDto(saved);
+        cardChanged(ChangeType.DISEASE_CREATED, patientId, saved.getId());
+        diseaseStats.added(diseaseCase(saved, patient.getGender()));
         logger.info("Болезнь успешно создана для пациента с ID: {}", patientId);
-        return mapToDto(diseaseRepository.save(disease));
+        return created;
 
     }
+    @Override
+    @Transactional
+    public List<DiseaseDTO> createDiseases(Long patientId, List<DiseaseDTO> diseaseDTOs) {
+        logger.info("Начато пакетное создание {} болезней для пациента с ID: {}",
+                diseaseDTOs == null ? 0 : diseaseDTOs.size(), patientId);
+        if (diseaseDTOs == null || diseaseDTOs.isEmpty() || diseaseDTOs.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("В пакете должно быть от 1 до " + MAX_BATCH_SIZE + " заболеваний");
+        }
+        for (int i = 0; i < diseaseDTOs.size(); i++) {
+            try {
+                validateDiseaseDate(diseaseDTOs.get(i));
+                validateIcdCode(diseaseDTOs.get(i));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Заболевание №" + (i + 1) + ": " + ex.getMessage());
+            }
+        }
+        // Версия поднимается один раз на пакет; строка пациента заблокирована до конца транзакции
+        Long version = patientRepository.incrementVersionById(patientId)
+                .orElseThrow(() -> new ResourceNotFoundException("Пациент с ID " + patientId + " не найден"));
+        Patient patient = patientRepository.getReferenceById(patientId);
+        List<Disease> diseases = new ArrayList<>(diseaseDTOs.size());
+        for (DiseaseDTO diseaseDTO : diseaseDTOs) {
+            Disease disease = mapToEntity(diseaseDTO);
+            disease.setPatient(patient);
+            diseases.add(disease);
+        }
+        List<Disease> saved = diseaseRepository.saveAll(diseases);
+        List<DiseaseDTO> created = new ArrayList<>(saved.size());
+        for (Disease disease : saved) {
+            outboxWriter.record(ChangeType.DISEASE_CREATED, patientId, disease.getId(), version);
+            diseaseStats.added(diseaseCase(disease, patient.getGender()));
+            created.add(mapToDto(disease));
+        }
+        patientCardCache.invalidate(patientId);
+        logger.info("Создано {} болезней для пациента с ID: {}", created.size(), patientId);
+        return created;
+    }
+
+    // Пакет группового коммита: заявки разных вызывающих одной транзакцией. Ошибка проверки
+    // или отсутствующий пациент записываются в свою заявку и пакет не откатывают
+    @Transactional
+    void createDiseaseGroup(List<GroupCommitDiseaseService.Pending> group) {
+        // Пациенты блокируются по возрастанию id — два пакета не могут ждать друг друга
+        Map<Long, List<GroupCommitDiseaseService.Pending>> byPatient = new TreeMap<>();
+        for (GroupCommitDiseaseService.Pending pending : group) {
+            try {
+                validateDiseaseDate(pending.disease);
+                validateIcdCode(pending.disease);
+                byPatient.computeIfAbsent(pending.patientId, id -> new ArrayList<>()).add(pending);
+            } catch (IllegalArgumentException ex) {
+                pending.error = ex;
+            }
+        }
+        List<Disease> diseases = new ArrayList<>(group.size());
+        List<GroupCommitDiseaseService.Pending> owners = new ArrayList<>(group.size());
+        Map<Long, Long> versions = new HashMap<>();
+        for (Map.Entry<Long, List<GroupCommitDiseaseService.Pending>> entry : byPatient.entrySet()) {
+            Long version = patientRepository.incrementVersionById(entry.getKey()).orElse(null);
+            Patient patient = version == null ? null : patientRepository.getReferenceById(entry.getKey());
+            versions.put(entry.getKey(), version);
+            for (GroupCommitDiseaseService.Pending pending : entry.getValue()) {
+                if (patient == null) {
+                    pending.error = new ResourceNotFoundException("Пациент с ID " + entry.getKey() + " не найден");
+                    continue;
+                }
+                Disease disease = mapToEntity(pending.disease);
+                disease.setPatient(patient);
+                diseases.add(disease);
+                owners.add(pending);
+            }
+        }
+        List<Disease> saved = diseaseRepository.saveAll(diseases);
+        for (int i = 0; i < saved.size(); i++) {
+            Disease disease = saved.get(i);
+            Patient patient = disease.getPatient();
+            outboxWriter.record(ChangeType.DISEASE_CREATED, patient.getId(), disease.getId(),
+                    versions.get(patient.getId()));
+            diseaseStats.added(diseaseCase(disease, patient.getGender()));
+            owners.get(i).created = mapToDto(disease);
+        }
+        byPatient.keySet().forEach(patientCardCache::invalidate);
+        logger.debug("Групповой коммит: {} заявок, создано {} болезней у {} пациентов",
+                group.size(), saved.size(), byPatient.size());
+    }
+
     @Override
     @Transactional(readOnly = true)
-    public List<DiseaseDTO> getAllDiseases(Long id) {
-        logger.debug("Получение всех заболеваний для пациента с ID: {}", id);
-        Patient patient = patientRepository.findById(id)
-                .orElseThrow( () -> new ResourceNotFoundException("Пациент не найден с таким "  + id));
-        return mapToListDTO(patient.getDisease());
+    public Slice<DiseaseDTO> getAllDiseases(Long patientId, DiseaseStatus status, boolean includeArchived,
+                                            int page, Integer size) {
+        logger.debug("Получение заболеваний для пациента с ID: {}, статус {}, архив {}, страница {}",
+                patientId, status, includeArchived, page);
+        // Без size — вся история одним списком, как до постраничного вывода
+        if (size == null && page != 0) {
+            throw new IllegalArgumentException("Номер страницы задаётся вместе с размером страницы size");
+        }
+        if (page < 0 || size != null && (size < 1 || size > MAX_PAGE_SIZE)) {
+            throw new IllegalArgumentException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        // В архиве только закрытые эпизоды, открытым он не нужен
+        Slice<DiseaseDTO> diseases;
+        if (includeArchived && status != DiseaseStatus.OPEN) {
+            diseases = size == null
+                    ? findAllWithArchive(patientId, status)
+                    : findWithArchive(patientId, status, page, size);
+        } else {
+            diseases = findHot(patientId, status, size == null
+                    ? Pageable.unpaged(HISTORY_ORDER)
+                    : PageRequest.of(page, size, HISTORY_ORDER));
+        }
+        // Пустая страница — единственный случай, когда нужно отличить "нет пациента" от "нет заболеваний"
+        if (diseases.isEmpty() && !patientRepository.existsById(patientId)) {
+            throw new ResourceNotFoundException("Пациент не найден с таким " + patientId);
+        }
+        return diseases;
+    }
+
+    // Если история пациента уже в кэше второго уровня, страница собирается из неё без запросов
+    private Slice<DiseaseDTO> findHot(Long patientId, DiseaseStatus status, Pageable pageable) {
+        List<Disease> cached = patientRepository.findCachedDiseases(patientId).orElse(null);
+        if (cached != null) {
+            List<DiseaseDTO> matching = cached.stream()
+                    .filter(disease -> status == DiseaseStatus.ALL
+                            || (status == DiseaseStatus.OPEN) == (disease.getEndDate() == null))
+                    .map(DiseaseServiceImpl::mapToDto)
+                    .sorted(HISTORY_COMPARATOR)
+                    .toList();
+            if (pageable.isUnpaged()) {
+                return new SliceImpl<>(matching, pageable, false);
+            }
+            int from = (int) Math.min(pageable.getOffset(), matching.size());
+            int to = Math.min(from + pageable.getPageSize(), matching.size());
+            return new SliceImpl<>(matching.subList(from, to), pageable, to < matching.size());
+        }
+        return switch (status) {
+            case OPEN -> diseaseRepository.findOpenDtoByPatientId(patientId, pageable);
+            case CLOSED -> diseaseRepository.findClosedDtoByPatientId(patientId, pageable);
+            case ALL -> diseaseRepository.findDtoByPatientId(patientId, pageable);
+        };
+    }
+
+    // Полная история: из каждой таблицы берём первые (page + 1) * size + 1 записей в общем порядке
+    // и сливаем — этого достаточно для нужной страницы и признака следующей. Объём растёт с номером
+    // страницы, поэтому глубина листания ограничена MAX_ARCHIVE_DEPTH записями
+    private Slice<DiseaseDTO> findWithArchive(Long patientId, DiseaseStatus status, int page, int size) {
+        if ((long) page * size + size > MAX_ARCHIVE_DEPTH) {
+            throw new IllegalArgumentException("С архивом доступны только первые " + MAX_ARCHIVE_DEPTH
+                    + " записей истории");
+        }
+        int offset = page * size;
+        int needed = offset + size + 1;
+        Pageable head = PageRequest.of(0, needed, HISTORY_ORDER);
+        List<DiseaseDTO> merged = new ArrayList<>(findHot(patientId, status, head).getContent());
+        merged.addAll(diseaseArchiveRepository.findDtoByPatientId(patientId, head).getContent());
+        merged.sort(HISTORY_COMPARATOR);
+        List<DiseaseDTO> content = offset >= merged.size()
+                ? List.of()
+                : merged.subList(offset, Math.min(offset + size, merged.size()));
+        return new SliceImpl<>(content, PageRequest.of(page, size, HISTORY_ORDER), merged.size() > offset + size);
+    }
+
+    private Slice<DiseaseDTO> findAllWithArchive(Long patientId, DiseaseStatus status) {
+        Pageable all = Pageable.unpaged(HISTORY_ORDER);
+        List<DiseaseDTO> merged = new ArrayList<>(findHot(patientId, status, all).getContent());
+        merged.addAll(diseaseArchiveRepository.findDtoByPatientId(patientId, all).getContent());
+        merged.sort(HISTORY_COMPARATOR);
+        return new SliceImpl<>(merged, all, false);
     }
 
     @Override
     @org.springframework.transaction.annotation.Transactional(readOnly = true)
     public DiseaseDTO getDiseaseById(Long id) {
         logger.debug("Получение болезни по ID: {}", id);
-         Disease disease = diseaseRepository.findById(id)
+        // Архивное заболевание доступно по прежнему id, но ищется только после промаха в основной таблице
+        return diseaseRepository.findById(id)
+                .map(DiseaseServiceImpl::mapToDto)
+                .or(() -> diseaseArchiveRepository.findDtoById(id))
                 .orElseThrow( () ->  new ResourceNotFoundException("Заболевание не найдено"));
-        return mapToDto(disease);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long getDiseaseVersion(Long id) {
+        // Через сущности, а не запросом версии: заболевание и пациент обычно уже в кэше второго уровня
+        return diseaseRepository.findById(id).map(disease -> disease.getPatient().getVersion())
+                .or(() -> diseaseArchiveRepository.findPatientVersionById(id))
+                .orElseThrow(() -> new ResourceNotFoundException("Заболевание не найдено"));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long getDiseaseHistoryVersion(Long patientId) {
+        return patientRepository.findById(patientId).map(Patient::getVersion)
+                .orElseThrow(() -> new ResourceNotFoundException("Пациент не найден с таким " + patientId));
     }
 
     @Override
     @Transactional
-    public DiseaseDTO updateDisease(Long id, DiseaseDTO diseaseDTO) {
+    public DiseaseDTO updateDisease(Long id, DiseaseDTO diseaseDTO, Long expectedPatientVersion) {
         logger.info("Обновление болезни с ID: {}", id);
         Disease disease = diseaseRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Заболевание не найдено"));
+        checkPatientVersion(id, disease.getPatient().getId(), expectedPatientVersion);
         validateDiseaseDate(diseaseDTO);
+        validateIcdCode(diseaseDTO);
+        String gender = disease.getPatient().getGender();
+        DiseaseCase before = diseaseCase(disease, gender);
         updateEntity(disease,diseaseDTO);
         Disease updateDisease = diseaseRepository.save(disease);
+        cardChanged(ChangeType.DISEASE_UPDATED, disease.getPatient().getId(), id);
+        diseaseStats.changed(before, diseaseCase(updateDisease, gender));
         logger.info("Болезнь с ID {} успешно обновлена", id);
         return mapToDto(updateDisease);
 
     }
 
+    /**
+     * Частичное обновление: один UPDATE только переданных столбцов, без загрузки и слияния сущности.
+     * Если ничего не меняется, запись не выполняется и версия карточки не растёт.
+     * Возвращает версию карточки пациента — основу ETag заболевания.
+     */
+    @Override
+    @Transactional
+    public long patchDisease(Long id, FieldPatch patch, Long expectedPatientVersion) {
+        logger.info("Частичное обновление болезни с ID {}: {}", id, patch.changes().keySet());
+        Long patientId = diseaseRepository.findPatientIdById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Заболевание не найдено"));
+        checkPatientVersion(id, patientId, expectedPatientVersion);
+        patch = validatePatch(patch);
+        // Статистике нужен прежний случай, но только если меняется код или даты
+        DiseaseCase before = null;
+        if (patch.containsAny("icdCode", "startDate", "endDate")) {
+            before = diseaseRepository.findCaseById(id)
+                    .orElseThrow(() -> new ResourceNotFoundException("Заболевание не найдено"));
+        }
+        int updated = patch.isEmpty() ? 0 : diseaseRepository.patchById(id, patch.changes());
+        if (updated == 0) {
+            logger.debug("Болезнь с ID {} не изменилась, запись пропущена", id);
+            return getDiseaseHistoryVersion(patientId);
+        }
+        Long version = cardChanged(ChangeType.DISEASE_UPDATED, patientId, id);
+        if (before != null) {
+            diseaseStats.changed(before, new DiseaseCase(
+                    patch.contains("icdCode") ? patch.get("icdCode") : before.icdCode(), before.gender(),
+                    patch.contains("startDate") ? patch.get("startDate") : before.startDate(),
+                    patch.contains("endDate") ? patch.get("endDate") : before.endDate()));
+        }
+        logger.info("Болезнь с ID {} частично обновлена", id);
+        return version;
+    }
+
+    // If-Match сверяется с версией, прочитанной под блокировкой строки пациента: параллельный запрос
+    // с тем же ETag ждёт конца этой транзакции и видит уже поднятую версию — 412, а не затирание
+    private void checkPatientVersion(Long diseaseId, Long patientId, Long expectedPatientVersion) {
+        if (expectedPatientVersion == null) {
+            return;
+        }
+        Long current = patientRepository.lockVersionById(patientId)
+                .orElseThrow(() -> new ResourceNotFoundException("Заболевание не найдено"));
+        if (!expectedPatientVersion.equals(current)) {
+            logger.warn("Заболевание с ID {} изменено другим запросом", diseaseId);
+            throw new PreconditionFailedException("Заболевание изменено другим запросом");
+        }
+    }
+
+    // Те же правила, что и для полного документа, но только для переданных полей
+    private FieldPatch validatePatch(FieldPatch patch) {
+        LocalDate startDate = patch.get("startDate");
+        if (startDate != null && startDate.isAfter(LocalDate.now())) {
+            throw new IllegalArgumentException("Дата начала болезни не может быть в будущем");
+        }
+        LocalDate endDate = patch.get("endDate");
+        if (endDate != null && endDate.isAfter(LocalDate.now())) {
+            throw new IllegalArgumentException("Дата окончания болезни не может быть в будущем");
+        }
+        String prescription = patch.get("prescription");
+        if (prescription != null && prescription.length() > 1024) {
+            throw new IllegalArgumentException("Описание болезни не может превышать 1024 символа");
+        }
+        if (patch.contains("icdCode")) {
+            DiseaseDTO code = DiseaseDTO.builder().icdCode(patch.get("icdCode")).build();
+            validateIcdCode(code);
+            patch = patch.with("icdCode", code.getIcdCode());
+        }
+        return patch;
+    }
+
     @Override
     @Transactional
     public void deleteDisease(Long id) {
         logger.warn("Удаление болезни с ID: {}", id);
-        if (!diseaseRepository.existsById(id)) {
-            throw new ResourceNotFoundException("Заболевание не найдено");
-        }
+        Long patientId = diseaseRepository.findPatientIdById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Заболевание не найдено"));
+        diseaseRepository.findCaseById(id).ifPresent(diseaseStats::removed);
         diseaseRepository.deleteById(id);
+        cardChanged(ChangeType.DISEASE_DELETED, patientId, id);
         logger.info("Болезнь с ID {} успешно удалена", id);
     }
 
-    private void validateDiseaseDate(DiseaseDTO diseaseDTO) {
+    // Версия поднимается под блокировкой строки пациента, поэтому значение в событии — наше
+    private Long cardChanged(ChangeType type, Long patientId, Long diseaseId) {
+        Long version = patientRepository.incrementVersionById(patientId).orElse(null);
+        outboxWriter.record(type, patientId, diseaseId, version);
+        patientCardCache.invalidate(patientId);
+        return version;
+    }
+
+    static void validateDiseaseDate(DiseaseDTO diseaseDTO) {
         if (diseaseDTO.getStartDate().isAfter(LocalDate.now())) {
             throw new IllegalArgumentException("Дата начала болезни не может быть в будущем");
         }
@@ -94,6 +402,22 @@ public class DiseaseServiceImpl implements DiseaseService {
         }
     }
 
+    // Код сохраняется в виде справочника: j06.9 и кириллическая "А01" становятся J06.9 и A01
+    void validateIcdCode(DiseaseDTO diseaseDTO) {
+        String code = IcdCatalog.normalize(diseaseDTO.getIcdCode());
+        if (code == null || code.isEmpty()) {
+            throw new IllegalArgumentException("Код МКБ-10 не может быть пустым");
+        }
+        if (!icdCatalog.isKnown(code)) {
+            throw new IllegalArgumentException("Неизвестный код МКБ-10: " + diseaseDTO.getIcdCode());
+        }
+        diseaseDTO.setIcdCode(code);
+    }
+
+    private static DiseaseCase diseaseCase(Disease disease, String gender) {
+        return new DiseaseCase(disease.getIcdCode(), gender, disease.getStartDate(), disease.getEndDate());
+    }
+
     private Disease mapToEntity(DiseaseDTO diseaseDTO) {
         return Disease.builder()
                 .icdCode(diseaseDTO.getIcdCode())
@@ -103,8 +427,9 @@ public class DiseaseServiceImpl implements DiseaseService {
                 .build();
     }
 
-    private DiseaseDTO mapToDto(Disease disease) {
+    static DiseaseDTO mapToDto(Disease disease) {
         return DiseaseDTO.builder()
+                .id(disease.getId())
                 .icdCode(disease.getIcdCode())
                 .startDate(disease.getStartDate())
                 .endDate(disease.getEndDate())
@@ -118,10 +443,4 @@ public class DiseaseServiceImpl implements DiseaseService {
         disease.setEndDate(diseaseDTO.getEndDate());
         disease.setPrescription(diseaseDTO.getPrescription());
     }
-
-    private List<DiseaseDTO> mapToListDTO(List<Disease> listDisease) {
-        return listDisease.stream()
-                .map(disease -> mapToDto(disease))
-                .collect(Collectors.toList());
-    }
 }
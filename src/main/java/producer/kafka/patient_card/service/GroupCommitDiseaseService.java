@@ -0,0 +1,256 @@
+package producer.kafka.patient_card.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Service;
+import producer.kafka.patient_card.dto.DiseaseDTO;
+import producer.kafka.patient_card.dto.DiseaseStatus;
+import producer.kafka.patient_card.dto.FieldPatch;
+import producer.kafka.patient_card.exception.ServiceUnavailableException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Групповой коммит создания заболеваний. Одиночные POST /diseases/{patientId} не коммитятся
+ * каждый сам по себе, а встают в очередь; поток записи забирает из неё всё, что накопилось
+ * за окно window-ms (но не больше batch-size), и вставляет одной транзакцией — один fsync на пакет.
+ * Каждый вызывающий ждёт свою заявку не дольше await-timeout и получает своё заболевание или свою ошибку.
+ * Если поток записи упал, все ждущие и все новые заявки получают 503.
+ * Остальные операции передаются {@link DiseaseServiceImpl} без изменений.
+ */
+@Service
+@Primary
+@Slf4j
+@ConditionalOnProperty(name = "patient-card.group-commit.enabled", havingValue = "true")
+public class GroupCommitDiseaseService implements DiseaseService, MeterBinder {
+    private final DiseaseServiceImpl delegate;
+    private final BlockingQueue<Pending> queue;
+    private final long windowNanos;
+    private final int batchSize;
+    private final Duration awaitTimeout;
+    private volatile boolean running;
+    private Thread writer;
+    private DistributionSummary batchSizes;
+    private Counter fallbacks;
+
+    public GroupCommitDiseaseService(DiseaseServiceImpl delegate,
+                                     @Value("${patient-card.group-commit.window-ms:5}") long windowMs,
+                                     @Value("${patient-card.group-commit.batch-size:200}") int batchSize,
+                                     @Value("${patient-card.group-commit.queue-capacity:10000}") int queueCapacity,
+                                     @Value("${patient-card.group-commit.await-timeout:30s}") Duration awaitTimeout) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.batchSize = batchSize;
+        this.awaitTimeout = awaitTimeout;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = new Thread(this::writeLoop, "disease-group-commit");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Групповой коммит заболеваний включён: окно {} мс, до {} заявок в пакете",
+                TimeUnit.NANOSECONDS.toMillis(windowNanos), batchSize);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.interrupt();
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    @Override
+    public DiseaseDTO createDisease(Long patientId, DiseaseDTO diseaseDTO) {
+        Pending pending = new Pending(patientId, diseaseDTO);
+        if (!running || !queue.offer(pending)) {
+            throw new ServiceUnavailableException("Очередь записи заболеваний переполнена, повторите запрос позже");
+        }
+        try {
+            return pending.result.get(awaitTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (ex.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(ex.getCause());
+        } catch (TimeoutException ex) {
+            throw abandon(pending, "Заявка на создание заболевания не дождалась записи");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw abandon(pending, "Ожидание записи заболевания прервано");
+        }
+    }
+
+    // Заявку, которую поток записи ещё не взял, снимаем с очереди: тогда 503 означает, что записи не было
+    private ServiceUnavailableException abandon(Pending pending, String message) {
+        if (queue.remove(pending)) {
+            return new ServiceUnavailableException(message + ", повторите запрос позже", awaitTimeout);
+        }
+        return new ServiceUnavailableException(message + "; заявка уже пишется, проверьте список заболеваний перед повтором");
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        try {
+            while (running || !queue.isEmpty()) {
+                collect(batch);
+                if (!batch.isEmpty()) {
+                    write(batch);
+                    batch.clear();
+                }
+            }
+        } catch (Throwable ex) {
+            // Поток записи не переживёт ошибку (OutOfMemoryError и т.п.): новые заявки получают 503,
+            // текущий пакет и всё, что ещё в очереди, завершаются ошибкой, а не висят до таймаута
+            running = false;
+            log.error("Поток группового коммита заболеваний остановлен из-за ошибки", ex);
+            queue.drainTo(batch);
+            ServiceUnavailableException failure =
+                    new ServiceUnavailableException("Запись заболеваний недоступна, повторите запрос позже");
+            batch.forEach(pending -> pending.result.completeExceptionally(failure));
+        }
+    }
+
+    private void collect(List<Pending> batch) {
+        try {
+            Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                return;
+            }
+            batch.add(first);
+            long deadline = System.nanoTime() + windowNanos;
+            while (batch.size() < batchSize) {
+                long left = deadline - System.nanoTime();
+                Pending next = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : queue.poll();
+                if (next == null) {
+                    break;
+                }
+                batch.add(next);
+            }
+        } catch (InterruptedException ex) {
+            // Остановка: дописываем то, что уже взяли, и дочищаем очередь
+            queue.drainTo(batch, batchSize - batch.size());
+        }
+    }
+
+    void write(List<Pending> batch) {
+        if (batchSizes != null) {
+            batchSizes.record(batch.size());
+        }
+        try {
+            delegate.createDiseaseGroup(batch);
+        } catch (RuntimeException ex) {
+            // Пакет откатился целиком (ошибка БД, взаимоблокировка) — каждую заявку проводим отдельно,
+            // чтобы чужая ошибка не досталась соседям по пакету
+            log.warn("Пакет из {} заболеваний не записан, заявки будут записаны по одной: {}", batch.size(), ex.getMessage());
+            if (fallbacks != null) {
+                fallbacks.increment();
+            }
+            for (Pending pending : batch) {
+                try {
+                    pending.created = delegate.createDisease(pending.patientId, pending.disease);
+                    pending.error = null;
+                } catch (RuntimeException single) {
+                    pending.error = single;
+                }
+            }
+        }
+        for (Pending pending : batch) {
+            if (pending.error != null) {
+                pending.result.completeExceptionally(pending.error);
+            } else {
+                pending.result.complete(pending.created);
+            }
+        }
+    }
+
+    @Override
+    public List<DiseaseDTO> createDiseases(Long patientId, List<DiseaseDTO> diseaseDTOs) {
+        return delegate.createDiseases(patientId, diseaseDTOs);
+    }
+
+    @Override
+    public Slice<DiseaseDTO> getAllDiseases(Long patientId, DiseaseStatus status, boolean includeArchived, int page, Integer size) {
+        return delegate.getAllDiseases(patientId, status, includeArchived, page, size);
+    }
+
+    @Override
+    public DiseaseDTO getDiseaseById(Long id) {
+        return delegate.getDiseaseById(id);
+    }
+
+    @Override
+    public long getDiseaseVersion(Long id) {
+        return delegate.getDiseaseVersion(id);
+    }
+
+    @Override
+    public long getDiseaseHistoryVersion(Long patientId) {
+        return delegate.getDiseaseHistoryVersion(patientId);
+    }
+
+    @Override
+    public DiseaseDTO updateDisease(Long id, DiseaseDTO diseaseDTO, Long expectedPatientVersion) {
+        return delegate.updateDisease(id, diseaseDTO, expectedPatientVersion);
+    }
+
+    @Override
+    public long patchDisease(Long id, FieldPatch patch, Long expectedPatientVersion) {
+        return delegate.patchDisease(id, patch, expectedPatientVersion);
+    }
+
+    @Override
+    public void deleteDisease(Long id) {
+        delegate.deleteDisease(id);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        batchSizes = DistributionSummary.builder("patient.disease.group_commit.batch")
+                .description("Заявок на создание заболевания в одной транзакции")
+                .publishPercentileHistogram()
+                .register(registry);
+        fallbacks = Counter.builder("patient.disease.group_commit.fallbacks")
+                .description("Пакеты, откатившиеся целиком и записанные по одной заявке")
+                .register(registry);
+        registry.gauge("patient.disease.group_commit.queue", queue, BlockingQueue::size);
+    }
+
+    // Заявка одного вызывающего; created и error заполняет DiseaseServiceImpl.createDiseaseGroup
+    static final class Pending {
+        final Long patientId;
+        final DiseaseDTO disease;
+        final CompletableFuture<DiseaseDTO> result = new CompletableFuture<>();
+        DiseaseDTO created;
+        RuntimeException error;
+
+        Pending(Long patientId, DiseaseDTO disease) {
+            this.patientId = patientId;
+            this.disease = disease;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package producer.kafka.patient_card.service;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import producer.kafka.patient_card.dto.DiseaseDTO;
+import producer.kafka.patient_card.dto.ExportProgressDTO;
+import producer.kafka.patient_card.dto.PatientDTO;
+import producer.kafka.patient_card.dto.PatientExportRow;
+import producer.kafka.patient_card.exception.ResourceNotFoundException;
+import producer.kafka.patient_card.repository.PatientRepository;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+@Service
+@Slf4j
+public class PatientExportService {
+    static final int CLEAR_EVERY = 10_000;
+    private static final int KEPT_EXPORTS = 32;
+
+    private final PatientRepository patientRepository;
+    private final ObjectWriter patientWriter;
+    private final Map<String, ExportProgress> exports = Collections.synchronizedMap(
+            new LinkedHashMap<>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ExportProgress> eldest) {
+                    return size() > KEPT_EXPORTS;
+                }
+            });
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public PatientExportService(PatientRepository patientRepository, ObjectMapper objectMapper) {
+        this.patientRepository = patientRepository;
+        this.patientWriter = objectMapper.writerFor(PatientDTO.class);
+    }
+
+    public String startExport() {
+        String exportId = UUID.randomUUID().toString();
+        exports.put(exportId, new ExportProgress(exportId, Instant.now()));
+        return exportId;
+    }
+
+    public ExportProgressDTO getProgress(String exportId) {
+        return progress(exportId).snapshot();
+    }
+
+    private ExportProgress progress(String exportId) {
+        ExportProgress progress = exports.get(exportId);
+        if (progress == null) {
+            throw new ResourceNotFoundException("Выгрузка " + exportId + " не найдена");
+        }
+        return progress;
+    }
+
+    /**
+     * Пишет весь реестр в NDJSON: одна строка — одна карточка с заболеваниями.
+     * В памяти одновременно держится только текущий пациент.
+     */
+    @Transactional(readOnly = true)
+    public void export(String exportId, OutputStream target, boolean gzip) throws IOException {
+        ExportProgress progress = progress(exportId);
+        progress.status = "RUNNING";
+        log.info("Начата выгрузка реестра пациентов {}", exportId);
+        CountingOutputStream counter = new CountingOutputStream(target);
+        GZIPOutputStream gzipStream = gzip ? new GZIPOutputStream(counter, 64 * 1024) : null;
+        OutputStream out = new BufferedOutputStream(gzipStream != null ? gzipStream : counter, 64 * 1024);
+        try (Stream<PatientExportRow> rows = patientRepository.streamAllForExport()) {
+            PatientDTO current = null;
+            for (PatientExportRow row : (Iterable<PatientExportRow>) rows::iterator) {
+                if (current == null || !current.getId().equals(row.getId())) {
+                    if (current != null) {
+                        writePatient(out, current, progress, counter);
+                    }
+                    current = toPatient(row);
+                }
+                if (row.getDiseaseId() != null) {
+                    current.getDisease().add(toDisease(row));
+                }
+            }
+            if (current != null) {
+                writePatient(out, current, progress, counter);
+            }
+            out.flush();
+            if (gzipStream != null) {
+                gzipStream.finish();
+            }
+            progress.bytes.set(counter.count);
+            progress.finish("DONE", null);
+            log.info("Выгрузка {} завершена: пациентов {}, заболеваний {}, байт {}",
+                    exportId, progress.patients.get(), progress.diseases.get(), progress.bytes.get());
+        } catch (IOException | RuntimeException ex) {
+            progress.finish("FAILED", ex.getMessage());
+            log.error("Выгрузка {} прервана после {} пациентов", exportId, progress.patients.get(), ex);
+            throw ex;
+        }
+    }
+
+    private void writePatient(OutputStream out, PatientDTO patient, ExportProgress progress,
+                              CountingOutputStream counter) throws IOException {
+        out.write(patientWriter.writeValueAsBytes(patient));
+        out.write('\n');
+        long exported = progress.patients.incrementAndGet();
+        progress.diseases.addAndGet(patient.getDisease().size());
+        progress.bytes.set(counter.count);
+        if (exported % CLEAR_EVERY == 0) {
+            entityManager.clear();
+            log.info("Выгрузка {}: выгружено пациентов {}", progress.exportId, exported);
+        }
+    }
+
+    private PatientDTO toPatient(PatientExportRow row) {
+        return PatientDTO.builder()
+                .id(row.getId())
+                .lastName(row.getLastName())
+                .firstName(row.getFirstName())
+                .middleName(row.getMiddleName())
+                .gender(row.getGender())
+                .birthDate(row.getBirthDate())
+                .omsNumber(row.getOmsNumber())
+                .disease(new ArrayList<>())
+                .build();
+    }
+
+    private DiseaseDTO toDisease(PatientExportRow row) {
+        return DiseaseDTO.builder()
+                .id(row.getDiseaseId())
+                .icdCode(row.getIcdCode())
+                .startDate(row.getStartDate())
+                .endDate(row.getEndDate())
+                .prescription(row.getPrescription())
+                .build();
+    }
+
+    /**
+     * Ход выгрузки: пишет поток выгрузки, читает GET /export/{id}/progress. Итог (время и ошибка)
+     * записывается до статуса, поэтому снимок, увидевший DONE или FAILED, видит и их.
+     */
+    private static final class ExportProgress {
+        private final String exportId;
+        private final Instant startedAt;
+        private final AtomicLong patients = new AtomicLong();
+        private final AtomicLong diseases = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private volatile String status = "PENDING";
+        private volatile Instant finishedAt;
+        private volatile String error;
+
+        ExportProgress(String exportId, Instant startedAt) {
+            this.exportId = exportId;
+            this.startedAt = startedAt;
+        }
+
+        void finish(String finalStatus, String failure) {
+            error = failure;
+            finishedAt = Instant.now();
+            status = finalStatus;
+        }
+
+        ExportProgressDTO snapshot() {
+            String current = status;
+            return ExportProgressDTO.builder()
+                    .exportId(exportId)
+                    .status(current)
+                    .patients(patients.get())
+                    .diseases(diseases.get())
+                    .bytes(bytes.get())
+                    .startedAt(startedAt)
+                    .finishedAt(finishedAt)
+                    .error(error)
+                    .build();
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream target) {
+            super(target);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
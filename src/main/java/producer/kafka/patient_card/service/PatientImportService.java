@@ -0,0 +1,262 @@
+package producer.kafka.patient_card.service;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import producer.kafka.patient_card.cache.OmsNumberFilter;
+import producer.kafka.patient_card.cache.PatientNameIndex;
+import producer.kafka.patient_card.dto.PatientDTO;
+import producer.kafka.patient_card.dto.PatientImportError;
+import producer.kafka.patient_card.dto.PatientImportReport;
+import producer.kafka.patient_card.model.Patient;
+import producer.kafka.patient_card.outbox.ChangeType;
+import producer.kafka.patient_card.outbox.OutboxWriter;
+import producer.kafka.patient_card.repository.PatientRepository;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+@Slf4j
+public class PatientImportService {
+    static final int CHUNK_SIZE = 500;
+    static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final PatientRepository patientRepository;
+    private final PatientValidator patientValidator;
+    private final OmsNumberFilter omsNumberFilter;
+    private final OutboxWriter outboxWriter;
+    private final PatientNameIndex patientNameIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectReader patientReader;
+
+    public PatientImportService(PatientRepository patientRepository,
+                                PatientValidator patientValidator,
+                                OmsNumberFilter omsNumberFilter,
+                                OutboxWriter outboxWriter,
+                                PatientNameIndex patientNameIndex,
+                                PlatformTransactionManager transactionManager,
+                                ObjectMapper objectMapper) {
+        this.patientRepository = patientRepository;
+        this.patientValidator = patientValidator;
+        this.omsNumberFilter = omsNumberFilter;
+        this.outboxWriter = outboxWriter;
+        this.patientNameIndex = patientNameIndex;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.patientReader = objectMapper.readerFor(PatientDTO.class);
+    }
+
+    public PatientImportReport importNdjson(InputStream body) throws IOException {
+        log.info("Начат импорт пациентов из NDJSON");
+        return importRows(body, line -> {
+            try {
+                return patientReader.readValue(line);
+            } catch (JsonProcessingException ex) {
+                throw new IllegalArgumentException("Некорректный JSON: " + ex.getOriginalMessage());
+            }
+        });
+    }
+
+    public PatientImportReport importCsv(InputStream body) throws IOException {
+        log.info("Начат импорт пациентов из CSV");
+        return importRows(body, new CsvRowParser());
+    }
+
+    private PatientImportReport importRows(InputStream body, RowParser parser) throws IOException {
+        PatientImportReport report = new PatientImportReport();
+        List<ImportRow> chunk = new ArrayList<>(CHUNK_SIZE);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String line;
+        long lineNumber = 0;
+        boolean headerPending = parser.hasHeader();
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            if (headerPending) {
+                parser.readHeader(line);
+                headerPending = false;
+                continue;
+            }
+            report.setTotal(report.getTotal() + 1);
+            PatientDTO dto = null;
+            try {
+                dto = parser.parse(line);
+                patientValidator.validate(dto);
+            } catch (IllegalArgumentException | DateTimeParseException ex) {
+                addError(report, lineNumber, dto, ex.getMessage());
+                continue;
+            }
+            chunk.add(new ImportRow(lineNumber, dto));
+            if (chunk.size() == CHUNK_SIZE) {
+                saveChunk(chunk, report);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            saveChunk(chunk, report);
+        }
+        log.info("Импорт пациентов завершён: всего {}, загружено {}, с ошибками {}",
+                report.getTotal(), report.getImported(), report.getFailed());
+        return report;
+    }
+
+    private void saveChunk(List<ImportRow> chunk, PatientImportReport report) {
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    patientRepository.saveAll(chunk.stream().map(row -> mapToEntity(row.dto())).toList())
+                            .forEach(this::recordCreated));
+            report.setImported(report.getImported() + chunk.size());
+            chunk.forEach(row -> omsNumberFilter.add(row.dto().getOmsNumber()));
+        } catch (DataAccessException ex) {
+            log.warn("Пакет из {} пациентов отклонён базой, повтор по одной записи: {}",
+                    chunk.size(), ex.getMostSpecificCause().getMessage());
+            for (ImportRow row : chunk) {
+                try {
+                    transactionTemplate.executeWithoutResult(status ->
+                            recordCreated(patientRepository.save(mapToEntity(row.dto()))));
+                    report.setImported(report.getImported() + 1);
+                    omsNumberFilter.add(row.dto().getOmsNumber());
+                } catch (DataAccessException rowEx) {
+                    addError(report, row.line(), row.dto(), rowEx.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+    }
+
+    private void addError(PatientImportReport report, long line, PatientDTO dto, String message) {
+        report.setFailed(report.getFailed() + 1);
+        if (report.getErrors().size() >= MAX_REPORTED_ERRORS) {
+            report.setErrorsTruncated(true);
+            return;
+        }
+        report.getErrors().add(PatientImportError.builder()
+                .line(line)
+                .omsNumber(dto != null ? dto.getOmsNumber() : null)
+                .message(message)
+                .build());
+    }
+
+    private void recordCreated(Patient patient) {
+        if (patient != null) {
+            outboxWriter.record(ChangeType.PATIENT_CREATED, patient.getId(), patient.getId(), patient.getVersion());
+            patientNameIndex.put(patient.getId(), patient.getLastName(), patient.getFirstName(), patient.getBirthDate());
+        }
+    }
+
+    private Patient mapToEntity(PatientDTO dto) {
+        return Patient.builder()
+                .lastName(dto.getLastName())
+                .firstName(dto.getFirstName())
+                .middleName(dto.getMiddleName())
+                .gender(dto.getGender())
+                .birthDate(dto.getBirthDate())
+                .omsNumber(dto.getOmsNumber())
+                .build();
+    }
+
+    private record ImportRow(long line, PatientDTO dto) {
+    }
+
+    private interface RowParser {
+        PatientDTO parse(String line);
+
+        default boolean hasHeader() {
+            return false;
+        }
+
+        default void readHeader(String header) {
+        }
+    }
+
+    /**
+     * Строка CSV с заголовком: lastName,firstName,middleName,gender,birthDate,omsNumber
+     * (порядок колонок любой, значения в двойных кавычках допускаются).
+     */
+    static class CsvRowParser implements RowParser {
+        private final Map<String, Integer> columns = new HashMap<>();
+
+        @Override
+        public boolean hasHeader() {
+            return true;
+        }
+
+        @Override
+        public void readHeader(String header) {
+            List<String> names = split(header);
+            for (int i = 0; i < names.size(); i++) {
+                columns.put(names.get(i).trim(), i);
+            }
+            for (String required : List.of("lastName", "firstName", "gender", "birthDate", "omsNumber")) {
+                if (!columns.containsKey(required)) {
+                    throw new IllegalArgumentException("В заголовке CSV нет колонки " + required);
+                }
+            }
+        }
+
+        @Override
+        public PatientDTO parse(String line) {
+            List<String> values = split(line);
+            String birthDate = value(values, "birthDate");
+            return PatientDTO.builder()
+                    .lastName(value(values, "lastName"))
+                    .firstName(value(values, "firstName"))
+                    .middleName(value(values, "middleName"))
+                    .gender(value(values, "gender"))
+                    .birthDate(birthDate != null ? LocalDate.parse(birthDate) : null)
+                    .omsNumber(value(values, "omsNumber"))
+                    .build();
+        }
+
+        private String value(List<String> values, String column) {
+            Integer index = columns.get(column);
+            if (index == null || index >= values.size()) {
+                return null;
+            }
+            String value = values.get(index).trim();
+            return value.isEmpty() ? null : value;
+        }
+
+        static List<String> split(String line) {
+            List<String> values = new ArrayList<>();
+            StringBuilder current = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        current.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    values.add(current.toString());
+                    current.setLength(0);
+                } else {
+                    current.append(c);
+                }
+            }
+            values.add(current.toString());
+            return values;
+        }
+    }
+}
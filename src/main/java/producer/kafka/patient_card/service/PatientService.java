@@ -1,28 +1,81 @@
 package producer.kafka.patient_card.service;
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import producer.kafka.patient_card.cache.OmsNumberFilter;
+import producer.kafka.patient_card.cache.PatientCardCache;
+import producer.kafka.patient_card.cache.PatientNameIndex;
 import producer.kafka.patient_card.dto.DiseaseDTO;
+import producer.kafka.patient_card.dto.FieldPatch;
+import producer.kafka.patient_card.dto.PatientCard;
+import producer.kafka.patient_card.dto.PatientCursor;
 import producer.kafka.patient_card.dto.PatientDTO;
+import producer.kafka.patient_card.dto.PatientFilter;
+import producer.kafka.patient_card.dto.PatientListItemDTO;
+import producer.kafka.patient_card.dto.PatientPageDTO;
+import producer.kafka.patient_card.dto.PatientSearchHit;
+import producer.kafka.patient_card.dto.PatientView;
+import producer.kafka.patient_card.exception.DuplicateResourceException;
 import producer.kafka.patient_card.exception.GlobalExceptionHandler;
+import producer.kafka.patient_card.exception.PreconditionFailedException;
 import producer.kafka.patient_card.exception.ResourceNotFoundException;
 import producer.kafka.patient_card.model.Disease;
 import producer.kafka.patient_card.model.Patient;
+import producer.kafka.patient_card.outbox.ChangeType;
+import producer.kafka.patient_card.outbox.OutboxWriter;
+import producer.kafka.patient_card.repository.DiseaseArchiveRepository;
+import producer.kafka.patient_card.repository.DiseaseRepository;
 import producer.kafka.patient_card.repository.PatientRepository;
+import producer.kafka.patient_card.stats.DiseaseStats;
 import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
+@Timed(value = "patient.service", histogram = true)
 @Slf4j
 public class PatientService implements producer.kafka.patient_card.service.Service {
+    static final int MAX_PAGE_SIZE = 500;
+    static final int MAX_SEARCH_LIMIT = 100;
+    private static final DateTimeFormatter RU_DATE = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+    private static final Sort RECENT_FIRST = Sort.by(Sort.Order.desc("startDate"), Sort.Order.desc("id"));
 
     private final PatientRepository patientRepository;
+    private final DiseaseRepository diseaseRepository;
+    private final DiseaseArchiveRepository diseaseArchiveRepository;
+    private final PatientValidator patientValidator;
+    private final PatientCardCache patientCardCache;
+    private final OmsNumberFilter omsNumberFilter;
+    private final OutboxWriter outboxWriter;
+    private final PatientNameIndex patientNameIndex;
+    private final DiseaseStats diseaseStats;
 
-    public PatientService(PatientRepository patientRepository) {
+    public PatientService(PatientRepository patientRepository, DiseaseRepository diseaseRepository,
+                          DiseaseArchiveRepository diseaseArchiveRepository,
+                          PatientValidator patientValidator, PatientCardCache patientCardCache,
+                          OmsNumberFilter omsNumberFilter, OutboxWriter outboxWriter,
+                          PatientNameIndex patientNameIndex, DiseaseStats diseaseStats) {
         this.patientRepository = patientRepository;
+        this.diseaseRepository = diseaseRepository;
+        this.diseaseArchiveRepository = diseaseArchiveRepository;
+        this.patientValidator = patientValidator;
+        this.patientCardCache = patientCardCache;
+        this.omsNumberFilter = omsNumberFilter;
+        this.outboxWriter = outboxWriter;
+        this.patientNameIndex = patientNameIndex;
+        this.diseaseStats = diseaseStats;
     }
 
+    @Transactional(readOnly = true)
     public PatientDTO getPatient(Long id) {
         log.debug("Получение данных пациента с ID: {}", id);
         Patient patient = patientRepository.findByIdWithDiseases(id)
@@ -31,33 +84,73 @@ public class PatientService implements producer.kafka.patient_card.service.Servi
         return mapToDTO(patient);
     }
 
+    public PatientCard getPatientCard(Long id) {
+        return patientCardCache.get(id, this::getPatient);
+    }
+
+    /**
+     * Часть карточки: запрошенные поля пациента проекцией без сущности и, если нужно,
+     * заболевания DTO-запросом — все или последние diseaseLimit по дате начала.
+     * Полная карточка сюда не приходит, она берётся из кэша через {@link #getPatientCard}.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getPatientView(Long id, PatientView view) {
+        log.debug("Получение полей {} пациента с ID: {}, заболевания: {}", view.fields(), id, view.expandDisease());
+        Map<String, Object> patient = patientRepository.findFieldsById(id, view.fields())
+                .orElseThrow(() -> new ResourceNotFoundException("Пациент не найден"));
+        if (view.expandDisease()) {
+            Pageable diseases = view.diseaseLimit() != null
+                    ? PageRequest.of(0, view.diseaseLimit(), RECENT_FIRST)
+                    : Pageable.unpaged(RECENT_FIRST);
+            patient.put(PatientView.DISEASE, diseaseRepository.findDtoByPatientId(id, diseases).getContent());
+        }
+        return patient;
+    }
+
+    public PatientCard getPatientCardByOms(String omsNumber) {
+        log.debug("Получение данных пациента по номеру ОМС: {}", omsNumber);
+        Long id = patientRepository.findIdByOmsNumber(omsNumber)
+                .orElseThrow(() -> new ResourceNotFoundException("Пациент не найден"));
+        return getPatientCard(id);
+    }
+
+    public long getPatientVersion(Long id) {
+        return patientRepository.findById(id).map(Patient::getVersion)
+                .orElseThrow(() -> new ResourceNotFoundException("Пациент не найден"));
+    }
+
+    @Transactional
     public PatientDTO createPatient(PatientDTO patientDTO){
         log.debug("Создание нового пациента: {}", patientDTO);
-        if (patientDTO.getBirthDate().isAfter(LocalDate.now())) {
-            log.error("Неверная дата рождения: {}", patientDTO.getBirthDate());
-            throw new IllegalArgumentException("Дата рождения не может быть в будущем");
-        }
+        patientValidator.validate(patientDTO);
+        checkOmsNumberIsFree(patientDTO.getOmsNumber());
         Patient patient = mapToEntity(patientDTO);
-        if (patientDTO.getOmsNumber() == null || patientDTO.getOmsNumber().isEmpty()) {
-            log.error("OMS номер не может быть пустым");
-            throw new IllegalArgumentException("OMS номер не может быть пустым");
-        }
-        log.info("Пациент создан с ID: {}", patient.getId());
-        return mapToDTO(patientRepository.save(patient));
+        PatientDTO created = mapToDTO(patientRepository.save(patient));
+        outboxWriter.record(ChangeType.PATIENT_CREATED, created.getId(), created.getId(), created.getVersion());
+        patientNameIndex.put(created.getId(), created.getLastName(), created.getFirstName(), created.getBirthDate());
+        omsNumberFilter.add(created.getOmsNumber());
+        log.info("Пациент создан с ID: {}", created.getId());
+        return created;
     }
 
-    public PatientDTO updatePatient(Long id, PatientDTO patientDTO) {
+    @Transactional
+    public PatientDTO updatePatient(Long id, PatientDTO patientDTO, Long expectedVersion) {
         log.debug("Обновление данных пациента с ID: {}", id);
         Patient patient = patientRepository.findById(id)
                 .orElseThrow(() -> {
                     log.warn("Пациент с ID {} не найден для обновления", id);
                     return new ResourceNotFoundException("Пациент не найден");
                 });
-        if (patientDTO.getBirthDate().isAfter(LocalDate.now())) {
-            log.error("Неверная дата рождения при обновлении: {}", patientDTO.getBirthDate());
-            throw new IllegalArgumentException("Дата рождения не может быть в будущем");
+        if (expectedVersion != null && !expectedVersion.equals(patient.getVersion())) {
+            log.warn("Карточка пациента с ID {} изменена: ожидалась версия {}, текущая {}", id, expectedVersion, patient.getVersion());
+            throw new PreconditionFailedException("Карточка пациента изменена другим запросом");
+        }
+        patientValidator.validateBirthDate(patientDTO);
+        if (patientDTO.getOmsNumber() != null && !patientDTO.getOmsNumber().equals(patient.getOmsNumber())) {
+            checkOmsNumberIsFree(patientDTO.getOmsNumber());
         }
 
+        diseaseStats.genderChanged(id, patient.getGender(), patientDTO.getGender());
         patient.setLastName(patientDTO.getLastName());
         patient.setFirstName(patientDTO.getFirstName());
         patient.setMiddleName(patientDTO.getMiddleName());
@@ -65,10 +158,85 @@ public class PatientService implements producer.kafka.patient_card.service.Servi
         patient.setBirthDate(patientDTO.getBirthDate());
         patient.setOmsNumber(patientDTO.getOmsNumber());
         log.info("Пациент с ID {} обновлен", patient.getId());
-        return mapToDTO(patientRepository.save(patient));
+        // flush сразу, чтобы в ответ и в событие попала уже увеличенная версия
+        PatientDTO updated = mapToDTO(patientRepository.saveAndFlush(patient));
+        outboxWriter.record(ChangeType.PATIENT_UPDATED, id, id, updated.getVersion());
+        patientNameIndex.put(id, updated.getLastName(), updated.getFirstName(), updated.getBirthDate());
+        omsNumberFilter.add(updated.getOmsNumber());
+        patientCardCache.invalidate(id);
+        return updated;
+    }
+
+    /**
+     * Частичное обновление без загрузки сущности: один UPDATE только переданных столбцов.
+     * Если ни одно значение не меняется, запись не выполняется и версия остаётся прежней.
+     * Возвращает версию карточки после изменения.
+     */
+    @Transactional
+    public long patchPatient(Long id, FieldPatch patch, Long expectedVersion) {
+        log.debug("Частичное обновление пациента с ID {}: {}", id, patch.changes().keySet());
+        if (patch.contains("birthDate") && patch.<LocalDate>get("birthDate").isAfter(LocalDate.now())) {
+            throw new IllegalArgumentException("Дата рождения не может быть в будущем");
+        }
+        if (patch.contains("omsNumber")) {
+            String omsNumber = patch.get("omsNumber");
+            if (omsNumber.isEmpty()) {
+                throw new IllegalArgumentException("OMS номер не может быть пустым");
+            }
+            if (omsNumberFilter.mightContain(omsNumber) && patientRepository.existsByOmsNumberAndIdNot(omsNumber, id)) {
+                log.warn("Пациент с номером ОМС {} уже существует", omsNumber);
+                throw new DuplicateResourceException("Пациент с таким OMS номером уже существует");
+            }
+        }
+        // Смена пола переносит заболевания пациента в статистике, для этого нужен прежний пол
+        String oldGender = null;
+        if (patch.contains("gender")) {
+            oldGender = (String) patientRepository.findFieldsById(id, List.of("gender"))
+                    .orElseThrow(() -> new ResourceNotFoundException("Пациент не найден"))
+                    .get("gender");
+        }
+        int updated = patch.isEmpty() ? 0 : patientRepository.patchById(id, patch.changes(), expectedVersion);
+        if (updated == 0) {
+            // Строки нет, версия не та или менять нечего — различаем одним чтением версии
+            long current = patientRepository.findVersionById(id)
+                    .orElseThrow(() -> new ResourceNotFoundException("Пациент не найден"));
+            if (expectedVersion != null && expectedVersion != current) {
+                log.warn("Карточка пациента с ID {} изменена: ожидалась версия {}, текущая {}", id, expectedVersion, current);
+                throw new PreconditionFailedException("Карточка пациента изменена другим запросом");
+            }
+            log.debug("Пациент с ID {} не изменился, запись пропущена", id);
+            return current;
+        }
+
+        long version;
+        if (patch.containsAny("lastName", "firstName", "birthDate")) {
+            Map<String, Object> name = patientRepository.findFieldsById(id, List.of("lastName", "firstName", "birthDate", "version"))
+                    .orElseThrow(() -> new ResourceNotFoundException("Пациент не найден"));
+            patientNameIndex.put(id, (String) name.get("lastName"), (String) name.get("firstName"), (LocalDate) name.get("birthDate"));
+            version = (Long) name.get("version");
+        } else {
+            version = expectedVersion != null ? expectedVersion + 1 : patientRepository.findVersionById(id).orElseThrow();
+        }
+        if (patch.contains("gender")) {
+            diseaseStats.genderChanged(id, oldGender, patch.get("gender"));
+        }
+        if (patch.contains("omsNumber")) {
+            omsNumberFilter.add(patch.get("omsNumber"));
+        }
+        outboxWriter.record(ChangeType.PATIENT_UPDATED, id, id, version);
+        patientCardCache.invalidate(id);
+        log.info("Пациент с ID {} частично обновлен: {}", id, patch.changes().keySet());
+        return version;
+    }
+
+    private void checkOmsNumberIsFree(String omsNumber) {
+        if (omsNumberFilter.mightContain(omsNumber) && patientRepository.existsByOmsNumber(omsNumber)) {
+            log.warn("Пациент с номером ОМС {} уже существует", omsNumber);
+            throw new DuplicateResourceException("Пациент с таким OMS номером уже существует");
+        }
     }
 
-    private PatientDTO mapToDTO(Patient patient) {
+    static PatientDTO mapToDTO(Patient patient) {
         return PatientDTO.builder()
                 .id(patient.getId())
                 .lastName(patient.getLastName())
@@ -77,21 +245,92 @@ public class PatientService implements producer.kafka.patient_card.service.Servi
                 .gender(patient.getGender())
                 .birthDate(patient.getBirthDate())
                 .omsNumber(patient.getOmsNumber())
+                .version(patient.getVersion())
                 .disease(patient.getDisease() != null ? mapToListDTO(patient.getDisease()): new ArrayList<>())
                 .build();
     }
 
+    @Transactional
     public void deletePatient(Long id) {
         log.debug("Удаление пациента с ID: {}", id);
         if (!patientRepository.existsById(id)) {
             log.warn("Попытка удалить пациента, который не найден с ID: {}", id);
             throw new ResourceNotFoundException("Пациент не найден");
         }
+        diseaseStats.patientDeleted(id);
         patientRepository.deleteById(id);
+        diseaseArchiveRepository.deleteByPatientId(id);
+        outboxWriter.record(ChangeType.PATIENT_DELETED, id, id, null);
+        patientNameIndex.remove(id);
+        patientCardCache.invalidate(id);
         log.info("Пациент с ID {} удален", id);
 
     }
 
+    @Transactional(readOnly = true)
+    public PatientPageDTO findPatients(PatientFilter filter, String cursor, int limit) {
+        log.debug("Получение страницы пациентов: limit {}, курсор {}", limit, cursor);
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        if (filter.getBirthDateFrom() != null && filter.getBirthDateTo() != null
+                && filter.getBirthDateFrom().isAfter(filter.getBirthDateTo())) {
+            throw new IllegalArgumentException("Начало диапазона дат рождения позже его конца");
+        }
+        PatientCursor after = cursor != null && !cursor.isEmpty() ? PatientCursor.decode(cursor) : null;
+        List<PatientListItemDTO> items = patientRepository.findPage(filter, after, limit + 1);
+        String nextCursor = null;
+        if (items.size() > limit) {
+            items = items.subList(0, limit);
+            nextCursor = PatientCursor.after(items.get(limit - 1)).encode();
+        }
+        return PatientPageDTO.builder()
+                .items(items)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    /**
+     * Поиск для подсказок: начало "фамилии имени", к которому можно добавить дату рождения
+     * (2001-02-03 или 03.02.2001), например "иванова ан 03.02.2001".
+     */
+    public List<PatientSearchHit> searchPatients(String query, int limit) {
+        if (limit < 1 || limit > MAX_SEARCH_LIMIT) {
+            throw new IllegalArgumentException("Количество подсказок должно быть от 1 до " + MAX_SEARCH_LIMIT);
+        }
+        StringBuilder prefix = new StringBuilder();
+        LocalDate birthDate = null;
+        for (String token : query == null ? new String[0] : query.trim().split("\\s+")) {
+            LocalDate date = parseDate(token);
+            if (date != null) {
+                birthDate = date;
+            } else if (!token.isEmpty()) {
+                prefix.append(prefix.length() > 0 ? " " : "").append(token);
+            }
+        }
+        if (prefix.length() == 0) {
+            throw new IllegalArgumentException("Введите начало фамилии");
+        }
+        if (!patientNameIndex.isReady()) {
+            log.debug("Индекс имён ещё строится, поиск '{}' выполняется в БД", prefix);
+            String like = PatientNameIndex.normalize(prefix.toString())
+                    .replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+            return patientRepository.searchByNamePrefix(like, birthDate, Limit.of(limit));
+        }
+        return patientNameIndex.search(prefix.toString(), birthDate, limit);
+    }
+
+    private static LocalDate parseDate(String token) {
+        if (token.length() != 10 || !Character.isDigit(token.charAt(0))) {
+            return null;
+        }
+        try {
+            return token.charAt(4) == '-' ? LocalDate.parse(token) : LocalDate.parse(token, RU_DATE);
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
     private Patient mapToEntity(PatientDTO dto) {
         Patient patient = new Patient();
         patient.setLastName(dto.getLastName());
@@ -104,9 +343,10 @@ public class PatientService implements producer.kafka.patient_card.service.Servi
         return patient;
     }
 
-    private List<DiseaseDTO> mapToListDTO(List<Disease> diseases) {
+    static List<DiseaseDTO> mapToListDTO(List<Disease> diseases) {
         return diseases.stream()
                 .map(disease -> DiseaseDTO.builder()
+                        .id(disease.getId())
                         .icdCode(disease.getIcdCode())
                         .startDate(disease.getStartDate())
                         .endDate(disease.getEndDate())
@@ -0,0 +1,34 @@
+package producer.kafka.patient_card.service;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import producer.kafka.patient_card.dto.PatientDTO;
+
+import java.time.LocalDate;
+
+@Component
+@Slf4j
+public class PatientValidator {
+
+    public void validateBirthDate(PatientDTO patientDTO) {
+        if (patientDTO.getBirthDate() == null) {
+            log.error("Дата рождения не указана");
+            throw new IllegalArgumentException("Дата рождения не может быть пустой");
+        }
+        if (patientDTO.getBirthDate().isAfter(LocalDate.now())) {
+            log.error("Неверная дата рождения: {}", patientDTO.getBirthDate());
+            throw new IllegalArgumentException("Дата рождения не может быть в будущем");
+        }
+    }
+
+    public void validateOmsNumber(PatientDTO patientDTO) {
+        if (patientDTO.getOmsNumber() == null || patientDTO.getOmsNumber().isEmpty()) {
+            log.error("OMS номер не может быть пустым");
+            throw new IllegalArgumentException("OMS номер не может быть пустым");
+        }
+    }
+
+    public void validate(PatientDTO patientDTO) {
+        validateBirthDate(patientDTO);
+        validateOmsNumber(patientDTO);
+    }
+}
@@ -1,14 +1,30 @@
 package producer.kafka.patient_card.service;
 
+import producer.kafka.patient_card.dto.FieldPatch;
+import producer.kafka.patient_card.dto.PatientCard;
 import producer.kafka.patient_card.dto.PatientDTO;
+import producer.kafka.patient_card.dto.PatientFilter;
+import producer.kafka.patient_card.dto.PatientPageDTO;
+import producer.kafka.patient_card.dto.PatientSearchHit;
+import producer.kafka.patient_card.dto.PatientView;
+
+import java.util.List;
+import java.util.Map;
 
 
 @org.springframework.stereotype.Service
 public interface Service {
     PatientDTO getPatient(Long id);
+    PatientCard getPatientCard(Long id);
+    Map<String, Object> getPatientView(Long id, PatientView view);
+    PatientCard getPatientCardByOms(String omsNumber);
+    long getPatientVersion(Long id);
     PatientDTO createPatient(PatientDTO patientDTO);
-    PatientDTO updatePatient(Long id, PatientDTO patientDTO);
+    PatientDTO updatePatient(Long id, PatientDTO patientDTO, Long expectedVersion);
+    long patchPatient(Long id, FieldPatch patch, Long expectedVersion);
     void deletePatient(Long id);
+    PatientPageDTO findPatients(PatientFilter filter, String cursor, int limit);
+    List<PatientSearchHit> searchPatients(String query, int limit);
 
 
 }
@@ -0,0 +1,14 @@
+package producer.kafka.patient_card.stats;
+
+import java.time.LocalDate;
+
+// То, что от заболевания нужно статистике: по чему группировать и открыт ли эпизод
+public record DiseaseCase(String icdCode, String gender, LocalDate startDate, LocalDate endDate) {
+    public boolean active() {
+        return endDate == null;
+    }
+
+    public DiseaseCase withGender(String gender) {
+        return new DiseaseCase(icdCode, gender, startDate, endDate);
+    }
+}
@@ -0,0 +1,383 @@
+package producer.kafka.patient_card.stats;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import producer.kafka.patient_card.cache.IcdCatalog;
+import producer.kafka.patient_card.dto.DiseaseStatsDTO;
+import producer.kafka.patient_card.dto.DiseaseStatsRow;
+import producer.kafka.patient_card.exception.ServiceUnavailableException;
+import producer.kafka.patient_card.model.DiseaseStatsEntry;
+import producer.kafka.patient_card.repository.DiseaseArchiveRepository;
+import producer.kafka.patient_card.repository.DiseaseRepository;
+import producer.kafka.patient_card.repository.DiseaseStatsRepository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Статистика заболеваний по коду МКБ-10, полу и дню начала, которую сервисы обновляют после коммита
+ * вместо GROUP BY по disease_sone. В памяти: число открытых эпизодов по коду и полу и число новых
+ * по дням за последние days-in-memory дней, на LongAdder. Накопленные изменения периодически
+ * добавляются к таблице disease_stats, из неё же счётчики поднимаются при старте.
+ * Перестроение пересчитывает таблицу по рабочим и архивным заболеваниям; изменения, пришедшие
+ * во время пересчёта, копятся в журнале и накатываются на новое состояние. Изменение,
+ * закоммиченное в момент старта пересчёта, может учесться дважды — это исправит следующий пересчёт.
+ */
+@Component
+@Slf4j
+public class DiseaseStats implements MeterBinder {
+    public static final String UNKNOWN_GENDER = "unknown";
+    private static final Comparator<DiseaseStatsRow> ROW_ORDER = Comparator
+            .comparing(DiseaseStatsRow::getIcdCode).thenComparing(DiseaseStatsRow::getGender);
+    private final DiseaseStatsRepository statsRepository;
+    private final DiseaseRepository diseaseRepository;
+    private final DiseaseArchiveRepository diseaseArchiveRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int daysInMemory;
+    private final int flushBatchSize;
+    // Запись счётчиков берёт разделяемую блокировку, подмена состояния — исключительную
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    // Сброс в таблицу и перестроение не выполняются одновременно
+    private final ReentrantLock maintenance = new ReentrantLock();
+    private volatile State state = new State();
+    private volatile Queue<Delta> journal = new ConcurrentLinkedQueue<>();
+    private volatile boolean ready;
+    private Counter flushed;
+    private Counter flushFailures;
+
+    public DiseaseStats(DiseaseStatsRepository statsRepository,
+                        DiseaseRepository diseaseRepository,
+                        DiseaseArchiveRepository diseaseArchiveRepository,
+                        PlatformTransactionManager transactionManager,
+                        @Value("${patient-card.stats.days-in-memory:400}") int daysInMemory,
+                        @Value("${patient-card.stats.flush-batch-size:500}") int flushBatchSize) {
+        this.statsRepository = statsRepository;
+        this.diseaseRepository = diseaseRepository;
+        this.diseaseArchiveRepository = diseaseArchiveRepository;
+        this.transactionTemplate = transactionManager != null ? new TransactionTemplate(transactionManager) : null;
+        this.daysInMemory = daysInMemory;
+        this.flushBatchSize = flushBatchSize;
+    }
+
+    public void added(DiseaseCase diseaseCase) {
+        afterCommit(() -> apply(diseaseCase, 1));
+    }
+
+    public void removed(DiseaseCase diseaseCase) {
+        afterCommit(() -> apply(diseaseCase, -1));
+    }
+
+    public void changed(DiseaseCase before, DiseaseCase after) {
+        if (!sameCell(before, after) || before.active() != after.active()) {
+            removed(before);
+            added(after);
+        }
+    }
+
+    // Вызывается до удаления: заболевания пациента ещё читаются, рабочие и архивные
+    public void patientDeleted(Long patientId) {
+        diseaseRepository.findCasesByPatientId(patientId).forEach(this::removed);
+        diseaseArchiveRepository.findCasesByPatientId(patientId).forEach(this::removed);
+    }
+
+    public void genderChanged(Long patientId, String oldGender, String newGender) {
+        if (gender(oldGender).equals(gender(newGender))) {
+            return;
+        }
+        List<DiseaseCase> cases = new ArrayList<>(diseaseRepository.findCasesByPatientId(patientId));
+        cases.addAll(diseaseArchiveRepository.findCasesByPatientId(patientId));
+        for (DiseaseCase diseaseCase : cases) {
+            removed(diseaseCase.withGender(oldGender));
+            added(diseaseCase.withGender(newGender));
+        }
+    }
+
+    /**
+     * Новые случаи по дням периода и открытые эпизоды по каждому коду и полу. Стоимость зависит
+     * от числа кодов и дней в периоде, но не от размера таблиц заболеваний.
+     */
+    public DiseaseStatsDTO query(LocalDate from, LocalDate to, String icdPrefix, String gender) {
+        if (!ready) {
+            throw new ServiceUnavailableException("Статистика заболеваний ещё загружается");
+        }
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusDays(29);
+        if (start.isAfter(end)) {
+            throw new IllegalArgumentException("Начало периода позже его конца");
+        }
+        if (start.isBefore(windowStart())) {
+            throw new IllegalArgumentException("Статистика по дням хранится за последние " + daysInMemory + " дней");
+        }
+        String prefix = icdPrefix == null ? "" : IcdCatalog.normalize(icdPrefix);
+        String genderFilter = gender == null || gender.isBlank() ? null : gender(gender);
+        List<DiseaseStatsRow> rows = new ArrayList<>();
+        state.series.forEach((key, series) -> {
+            if (!key.icdCode().startsWith(prefix) || (genderFilter != null && !genderFilter.equals(key.gender()))) {
+                return;
+            }
+            Map<LocalDate, Long> byDay = new LinkedHashMap<>();
+            long newCases = 0;
+            for (var day : series.days.subMap(start, true, end, true).entrySet()) {
+                long count = day.getValue().sum();
+                if (count != 0) {
+                    byDay.put(day.getKey(), count);
+                    newCases += count;
+                }
+            }
+            long active = series.active.sum();
+            if (active != 0 || newCases != 0) {
+                rows.add(new DiseaseStatsRow(key.icdCode(), key.gender(), active, newCases, byDay));
+            }
+        });
+        rows.sort(ROW_ORDER);
+        return new DiseaseStatsDTO(start, end, rows);
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        reload(statsRepository.count() == 0 && diseaseRepository.count() > 0);
+    }
+
+    @Async
+    public void requestRebuild() {
+        rebuild();
+    }
+
+    @Scheduled(cron = "${patient-card.stats.rebuild-cron:0 0 4 * * SUN}")
+    public void rebuild() {
+        reload(true);
+    }
+
+    @Scheduled(fixedDelayString = "${patient-card.stats.flush-interval-ms:5000}")
+    public void flush() {
+        if (!ready || !maintenance.tryLock()) {
+            return;
+        }
+        try {
+            State current = state;
+            current.trimBefore(windowStart());
+            List<Map.Entry<CellKey, long[]>> drained = new ArrayList<>();
+            for (CellKey key : current.pending.keySet()) {
+                long[] counts = current.pending.remove(key);
+                if (counts != null && (counts[0] != 0 || counts[1] != 0)) {
+                    drained.add(Map.entry(key, counts));
+                }
+            }
+            for (int from = 0; from < drained.size(); from += flushBatchSize) {
+                List<Map.Entry<CellKey, long[]>> chunk = drained.subList(from, Math.min(from + flushBatchSize, drained.size()));
+                try {
+                    transactionTemplate.executeWithoutResult(status -> chunk.forEach(entry -> write(entry.getKey(), entry.getValue())));
+                } catch (RuntimeException ex) {
+                    // Несохранённое возвращается в очередь, повтор на следующем цикле
+                    drained.subList(from, drained.size()).forEach(entry -> current.addPending(entry.getKey(), entry.getValue()));
+                    if (flushFailures != null) {
+                        flushFailures.increment();
+                    }
+                    log.warn("Не удалось сохранить статистику заболеваний, повтор на следующем цикле: {}", ex.getMessage());
+                    return;
+                }
+                if (flushed != null) {
+                    flushed.increment(chunk.size());
+                }
+            }
+        } finally {
+            maintenance.unlock();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        flushed = Counter.builder("patient.stats.flushed")
+                .description("Строки disease_stats, обновлённые сбросом счётчиков")
+                .register(registry);
+        flushFailures = Counter.builder("patient.stats.flush.failures")
+                .description("Неудачные сбросы счётчиков статистики в таблицу")
+                .register(registry);
+        Gauge.builder("patient.stats.pending", this, stats -> stats.state.pending.size())
+                .description("Ячейки статистики с изменениями, ещё не сохранёнными в таблицу")
+                .register(registry);
+        Gauge.builder("patient.stats.series", this, stats -> stats.state.series.size())
+                .description("Сочетания кода МКБ-10 и пола в статистике")
+                .register(registry);
+    }
+
+    void reload(boolean recompute) {
+        maintenance.lock();
+        try {
+            long started = System.nanoTime();
+            swapLock.writeLock().lock();
+            try {
+                if (journal == null) {
+                    journal = new ConcurrentLinkedQueue<>();
+                }
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+            if (recompute) {
+                transactionTemplate.executeWithoutResult(status -> {
+                    statsRepository.deleteAllInBatch();
+                    statsRepository.rebuildFromDiseases();
+                });
+            }
+            LocalDate windowStart = windowStart();
+            State fresh = new State();
+            transactionTemplate.executeWithoutResult(status -> {
+                for (DiseaseStatsEntry total : statsRepository.sumByCodeAndGender()) {
+                    fresh.series(new SeriesKey(total.getIcdCode(), total.getGender())).active.add(total.getActiveCases());
+                }
+                for (DiseaseStatsEntry day : statsRepository.findByStartDateGreaterThanEqual(windowStart)) {
+                    fresh.series(new SeriesKey(day.getIcdCode(), day.getGender())).days
+                            .computeIfAbsent(day.getStartDate(), d -> new LongAdder()).add(day.getNewCases());
+                }
+            });
+            int replayed;
+            swapLock.writeLock().lock();
+            try {
+                replayed = journal.size();
+                journal.forEach(delta -> fresh.apply(delta, windowStart));
+                state = fresh;
+                journal = null;
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+            ready = true;
+            log.info("Статистика заболеваний {}: {} сочетаний кода и пола, {} изменений из журнала за {} мс",
+                    recompute ? "пересчитана" : "загружена", fresh.series.size(), replayed,
+                    (System.nanoTime() - started) / 1_000_000);
+        } catch (RuntimeException ex) {
+            log.error("Не удалось {} статистику заболеваний: {}", recompute ? "пересчитать" : "загрузить", ex.getMessage());
+            throw ex;
+        } finally {
+            maintenance.unlock();
+        }
+    }
+
+    private void apply(DiseaseCase diseaseCase, int sign) {
+        Delta delta = new Delta(new CellKey(diseaseCase.icdCode(), gender(diseaseCase.gender()), diseaseCase.startDate()),
+                sign, diseaseCase.active() ? sign : 0);
+        swapLock.readLock().lock();
+        try {
+            state.apply(delta, windowStart());
+            Queue<Delta> currentJournal = journal;
+            if (currentJournal != null) {
+                currentJournal.add(delta);
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private void write(CellKey key, long[] counts) {
+        if (statsRepository.addCounts(key.icdCode(), key.gender(), key.startDate(), counts[0], counts[1]) == 0) {
+            statsRepository.save(new DiseaseStatsEntry(key.icdCode(), key.gender(), key.startDate(), counts[0], counts[1]));
+        }
+    }
+
+    private LocalDate windowStart() {
+        return LocalDate.now().minusDays(daysInMemory - 1L);
+    }
+
+    // Так же пол приводится в пересчёте: COALESCE(NULLIF(TRIM(gender), ''), 'unknown')
+    static String gender(String gender) {
+        return gender == null || gender.isBlank() ? UNKNOWN_GENDER : gender.trim();
+    }
+
+    private static boolean sameCell(DiseaseCase before, DiseaseCase after) {
+        return Objects.equals(before.icdCode(), after.icdCode()) && Objects.equals(before.startDate(), after.startDate())
+                && gender(before.gender()).equals(gender(after.gender()));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private record SeriesKey(String icdCode, String gender) {
+    }
+
+    private record CellKey(String icdCode, String gender, LocalDate startDate) {
+    }
+
+    private record Delta(CellKey key, long newCases, long activeCases) {
+    }
+
+    private static final class Series {
+        final LongAdder active = new LongAdder();
+        final ConcurrentSkipListMap<LocalDate, LongAdder> days = new ConcurrentSkipListMap<>();
+    }
+
+    private static final class State {
+        final ConcurrentHashMap<SeriesKey, Series> series = new ConcurrentHashMap<>();
+        // Изменения, ещё не добавленные к disease_stats: {новые, открытые}
+        final ConcurrentHashMap<CellKey, long[]> pending = new ConcurrentHashMap<>();
+
+        Series series(SeriesKey key) {
+            return series.computeIfAbsent(key, k -> new Series());
+        }
+
+        void apply(Delta delta, LocalDate windowStart) {
+            CellKey key = delta.key();
+            Series target = series(new SeriesKey(key.icdCode(), key.gender()));
+            if (delta.activeCases() != 0) {
+                target.active.add(delta.activeCases());
+            }
+            if (!key.startDate().isBefore(windowStart)) {
+                target.days.computeIfAbsent(key.startDate(), d -> new LongAdder()).add(delta.newCases());
+            }
+            addPending(key, new long[]{delta.newCases(), delta.activeCases()});
+        }
+
+        // merge выполняется под блокировкой ячейки карты, поэтому сложение не теряется при сбросе
+        void addPending(CellKey key, long[] counts) {
+            pending.merge(key, counts, (current, added) -> {
+                current[0] += added[0];
+                current[1] += added[1];
+                return current;
+            });
+        }
+
+        void trimBefore(LocalDate windowStart) {
+            for (Series each : series.values()) {
+                each.days.headMap(windowStart).clear();
+            }
+        }
+    }
+}
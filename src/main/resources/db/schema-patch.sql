@@ -0,0 +1,13 @@
+-- Выполняется после ddl-auto: update. Hibernate не меняет уже созданные объекты,
+-- поэтому правки существующей схемы собраны здесь и должны быть идемпотентными.
+
+-- Пул идентификаторов должен совпадать с allocationSize в @SequenceGenerator. Выполняется уже после
+-- старта Hibernate, поэтому до следующего перезапуска действует шаг из базы
+-- (hibernate.id.sequence.increment_size_mismatch_strategy: FIX в application.yml)
+ALTER SEQUENCE IF EXISTS all_schem.patient_sequence INCREMENT BY 50;
+ALTER SEQUENCE IF EXISTS all_schem.disease_sequence INCREMENT BY 50;
+
+-- Колонка version добавляется ddl-auto как nullable, у старых карточек она пустая
+UPDATE all_schem.patient_card_some SET version = 0 WHERE version IS NULL;
+ALTER TABLE all_schem.patient_card_some ALTER COLUMN version SET DEFAULT 0;
+ALTER TABLE all_schem.patient_card_some ALTER COLUMN version SET NOT NULL;
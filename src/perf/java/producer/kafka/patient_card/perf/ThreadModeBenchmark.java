@@ -0,0 +1,122 @@
+package producer.kafka.patient_card.perf;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Сравнение режимов обработки запросов: один и тот же замкнутый цикл нагрузки подаётся на
+ * каждый адрес по очереди, например на два экземпляра приложения, запущенных с
+ * VIRTUAL_THREADS=false и VIRTUAL_THREADS=true на одной базе.
+ *
+ * ./gradlew loadBenchmark -PbaseUrls=http://localhost:8080,http://localhost:8081 -Pconcurrency=400
+ */
+public class ThreadModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        List<String> baseUrls = Arrays.asList(System.getProperty("baseUrls", "http://localhost:8080").split(","));
+        int concurrency = Integer.getInteger("concurrency", 200);
+        Duration warmup = Duration.parse(System.getProperty("warmup", "PT10S"));
+        Duration duration = Duration.parse(System.getProperty("duration", "PT30S"));
+        long maxPatientId = Long.getLong("maxPatientId", 1000);
+
+        List<Result> results = new ArrayList<>();
+        for (String baseUrl : baseUrls) {
+            run(baseUrl, concurrency, warmup, maxPatientId);
+            results.add(run(baseUrl, concurrency, duration, maxPatientId));
+        }
+        System.out.printf(Locale.ROOT, "%-32s %12s %10s %10s %10s %8s%n", "target", "req/s", "p50 ms", "p99 ms", "max ms", "errors");
+        for (Result result : results) {
+            System.out.printf(Locale.ROOT, "%-32s %12.1f %10.2f %10.2f %10.2f %8d%n", result.baseUrl, result.throughput(),
+                    result.percentile(0.50), result.percentile(0.99), result.percentile(1.0), result.errors);
+        }
+    }
+
+    private static Result run(String baseUrl, int concurrency, Duration duration, long maxPatientId) throws Exception {
+        // потоки клиента — демоны и гасятся в finally: иначе после прогона JVM не завершается
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(8, runnable -> {
+            Thread thread = new Thread(runnable, "benchmark-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        try {
+            return run(baseUrl, concurrency, duration, maxPatientId, clientExecutor, workers);
+        } finally {
+            workers.shutdownNow();
+            clientExecutor.shutdownNow();
+        }
+    }
+
+    private static Result run(String baseUrl, int concurrency, Duration duration, long maxPatientId,
+                              ExecutorService clientExecutor, ExecutorService workers) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(clientExecutor)
+                .build();
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Future<long[]>> futures = new ArrayList<>();
+        long[] errors = new long[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            int worker = i;
+            futures.add(workers.submit(() -> {
+                long[] latencies = new long[1024];
+                int count = 0;
+                while (System.nanoTime() < deadline) {
+                    long patientId = ThreadLocalRandom.current().nextLong(1, maxPatientId + 1);
+                    String path = ThreadLocalRandom.current().nextInt(10) < 7
+                            ? "/patient/" + patientId
+                            : "/diseases/" + patientId + "/getAllById";
+                    HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                            .timeout(Duration.ofSeconds(30))
+                            .GET()
+                            .build();
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() >= 500) {
+                            errors[worker]++;
+                        }
+                    } catch (Exception ex) {
+                        errors[worker]++;
+                    }
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = System.nanoTime() - start;
+                }
+                return Arrays.copyOf(latencies, count);
+            }));
+        }
+        List<long[]> perWorker = new ArrayList<>();
+        for (Future<long[]> future : futures) {
+            perWorker.add(future.get());
+        }
+        long[] all = perWorker.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        return new Result(baseUrl, all, Arrays.stream(errors).sum(), duration);
+    }
+
+    private record Result(String baseUrl, long[] sortedLatencies, long errors, Duration duration) {
+        double throughput() {
+            return sortedLatencies.length / (duration.toMillis() / 1000.0);
+        }
+
+        double percentile(double p) {
+            if (sortedLatencies.length == 0) {
+                return Double.NaN;
+            }
+            int index = (int) Math.min(sortedLatencies.length - 1, Math.ceil(p * sortedLatencies.length) - 1);
+            return sortedLatencies[Math.max(index, 0)] / 1_000_000.0;
+        }
+    }
+}
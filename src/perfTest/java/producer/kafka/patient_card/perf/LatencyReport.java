@@ -0,0 +1,144 @@
+package producer.kafka.patient_card.perf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Итог прогона: по каждому виду запроса и по смеси в целом (all) — число запросов, ошибки,
+ * пропускная способность и перцентили задержки в миллисекундах. Сохраняется в JSON и служит
+ * базовой линией для следующих прогонов; рядом пишутся полные распределения HdrHistogram (.hgrm).
+ */
+public record LatencyReport(int rate, long durationSeconds, Map<String, OperationStats> operations) {
+    public static final String ALL = "all";
+    private static final ObjectMapper JSON = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    public static LatencyReport of(int rate, Duration duration, Map<String, OpenLoopLoadGenerator.Result> results) {
+        Map<String, OperationStats> operations = new LinkedHashMap<>();
+        double seconds = duration.toMillis() / 1000.0;
+        Histogram all = null;
+        long allFailed = 0;
+        long allDropped = 0;
+        for (Map.Entry<String, OpenLoopLoadGenerator.Result> entry : results.entrySet()) {
+            OpenLoopLoadGenerator.Result result = entry.getValue();
+            operations.put(entry.getKey(), stats(result.latencies(), result.errors(), result.dropped(), seconds));
+            if (all == null) {
+                all = new Histogram(result.latencies().getHighestTrackableValue(),
+                        result.latencies().getNumberOfSignificantValueDigits());
+            }
+            all.add(result.latencies());
+            allFailed += result.errors();
+            allDropped += result.dropped();
+        }
+        if (all != null) {
+            operations.put(ALL, stats(all, allFailed, allDropped, seconds));
+        }
+        return new LatencyReport(rate, duration.toSeconds(), operations);
+    }
+
+    private static OperationStats stats(Histogram latencies, long failed, long dropped, double seconds) {
+        return new OperationStats(
+                latencies.getTotalCount() + dropped,
+                failed + dropped,
+                round((latencies.getTotalCount() - failed) / seconds),
+                millis(latencies.getValueAtPercentile(50)),
+                millis(latencies.getValueAtPercentile(99)),
+                millis(latencies.getValueAtPercentile(99.9)),
+                millis(latencies.getMaxValue()));
+    }
+
+    public static LatencyReport read(Path file) throws IOException {
+        return JSON.readValue(file.toFile(), LatencyReport.class);
+    }
+
+    public void write(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        JSON.writeValue(file.toFile(), this);
+    }
+
+    public static void writeHistograms(Path directory, Map<String, OpenLoopLoadGenerator.Result> results) throws IOException {
+        Files.createDirectories(directory);
+        for (Map.Entry<String, OpenLoopLoadGenerator.Result> entry : results.entrySet()) {
+            try (PrintStream out = new PrintStream(
+                    Files.newOutputStream(directory.resolve(entry.getKey() + ".hgrm")), true, StandardCharsets.UTF_8)) {
+                // значения записаны в микросекундах, распределение выводится в миллисекундах
+                entry.getValue().latencies().outputPercentileDistribution(out, 1000.0);
+            }
+        }
+    }
+
+    public String table() {
+        StringBuilder table = new StringBuilder(String.format(Locale.ROOT, "%-16s %9s %8s %9s %9s %9s %9s %9s%n",
+                "operation", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        operations.forEach((name, stats) -> table.append(String.format(Locale.ROOT,
+                "%-16s %9d %8d %9.1f %9.2f %9.2f %9.2f %9.2f%n", name, stats.requests(), stats.errors(),
+                stats.throughput(), stats.p50Millis(), stats.p99Millis(), stats.p999Millis(), stats.maxMillis())));
+        return table.toString();
+    }
+
+    /**
+     * Отличия от базовой линии, которые считаются регрессией: перцентиль хуже больше чем на
+     * tolerance (p999 — на двойной tolerance) с запасом slackMillis на шум коротких запросов,
+     * пропускная способность ниже на tolerance, доля ошибок выше maxErrorRate.
+     * Перцентиль p сравнивается, только если за ним стоит хотя бы 10 запросов (requests >= 10 / (1 - p)):
+     * по нескольким сотням запросов p99 — это по сути максимум, и сравнение ловило бы шум.
+     */
+    public List<String> regressionsAgainst(LatencyReport baseline, double tolerance, double slackMillis,
+                                           double maxErrorRate) {
+        List<String> regressions = new ArrayList<>();
+        operations.forEach((name, stats) -> {
+            if (stats.requests() > 0 && (double) stats.errors() / stats.requests() > maxErrorRate) {
+                regressions.add(String.format(Locale.ROOT, "%s: ошибок %d из %d", name, stats.errors(), stats.requests()));
+            }
+            OperationStats base = baseline.operations().get(name);
+            if (base == null) {
+                return;
+            }
+            if (stats.requests() >= 20) {
+                compare(regressions, name, "p50", stats.p50Millis(), base.p50Millis() * (1 + tolerance) + slackMillis);
+            }
+            if (stats.requests() >= 1_000) {
+                compare(regressions, name, "p99", stats.p99Millis(), base.p99Millis() * (1 + tolerance) + slackMillis);
+            }
+            if (stats.requests() >= 10_000) {
+                compare(regressions, name, "p999", stats.p999Millis(), base.p999Millis() * (1 + 2 * tolerance) + slackMillis);
+            }
+            if (stats.throughput() < base.throughput() * (1 - tolerance)) {
+                regressions.add(String.format(Locale.ROOT, "%s: %.1f req/s, базовая линия %.1f",
+                        name, stats.throughput(), base.throughput()));
+            }
+        });
+        return regressions;
+    }
+
+    private static void compare(List<String> regressions, String name, String percentile, double actual, double limit) {
+        if (actual > limit) {
+            regressions.add(String.format(Locale.ROOT, "%s: %s %.2f мс, допустимо до %.2f мс",
+                    name, percentile, actual, limit));
+        }
+    }
+
+    private static double millis(long micros) {
+        return round(micros / 1000.0);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    public record OperationStats(long requests, long errors, double throughput,
+                                 double p50Millis, double p99Millis, double p999Millis, double maxMillis) {
+    }
+}
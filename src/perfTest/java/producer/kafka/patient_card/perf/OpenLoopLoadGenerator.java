@@ -0,0 +1,130 @@
+package producer.kafka.patient_card.perf;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Нагрузка с фиксированной частотой поступления (открытая модель): запрос i уходит в момент
+ * start + i / rate независимо от того, ответили ли предыдущие. Задержка считается от
+ * запланированного момента, а не от фактической отправки, — если генератор или сервис
+ * отстали, ожидание попадает в гистограмму (без coordinated omission).
+ */
+public class OpenLoopLoadGenerator {
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final HttpClient client;
+    private final List<Operation> operations;
+    private final int totalWeight;
+    private final int maxInFlight;
+
+    public OpenLoopLoadGenerator(List<Operation> operations, int maxInFlight) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        this.operations = operations;
+        this.totalWeight = operations.stream().mapToInt(Operation::weight).sum();
+        this.maxInFlight = maxInFlight;
+    }
+
+    public Map<String, Result> run(int rate, Duration duration) {
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (Operation operation : operations) {
+            results.put(operation.name(), new Result());
+        }
+        AtomicInteger inFlight = new AtomicInteger();
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        double periodNanos = 1_000_000_000.0 / rate;
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        for (long i = 0; ; i++) {
+            long intended = start + (long) (i * periodNanos);
+            if (intended - end >= 0) {
+                break;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Operation operation = pick();
+            Result result = results.get(operation.name());
+            if (inFlight.get() >= maxInFlight) {
+                // Сервис не успевает: запрос не отправляем, но считаем ошибкой
+                result.dropped.increment();
+                continue;
+            }
+            inFlight.incrementAndGet();
+            pending.add(client.sendAsync(operation.request().get(), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> {
+                        inFlight.decrementAndGet();
+                        long latencyMicros = (System.nanoTime() - intended) / 1000;
+                        result.latencies.recordValue(Math.min(latencyMicros, HIGHEST_TRACKABLE_MICROS));
+                        if (failure != null || response.statusCode() >= 400) {
+                            result.errors.increment();
+                        }
+                    }));
+            if (pending.size() >= 10_000) {
+                pending.removeIf(CompletableFuture::isDone);
+            }
+        }
+        for (CompletableFuture<?> future : pending) {
+            try {
+                future.get(30, TimeUnit.SECONDS);
+            } catch (Exception ignored) {
+                // ошибка уже учтена в whenComplete
+            }
+        }
+        return results;
+    }
+
+    private Operation pick() {
+        int point = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Operation operation : operations) {
+            point -= operation.weight();
+            if (point < 0) {
+                return operation;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    /** Вид запроса смеси: доля weight от суммы весов, request строит очередной запрос. */
+    public record Operation(String name, int weight, Supplier<HttpRequest> request) {
+    }
+
+    public static class Result {
+        final Histogram latencies = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+        final LongAdder errors = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+
+        public Histogram latencies() {
+            return latencies;
+        }
+
+        /** Ответы с ошибкой (4xx, 5xx, сбой соединения). */
+        public long errors() {
+            return errors.sum();
+        }
+
+        /** Запросы, не отправленные из-за предела одновременных. */
+        public long dropped() {
+            return dropped.sum();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package producer.kafka.patient_card.perf;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Нагрузочный прогон: приложение целиком (Tomcat, кэши, аудит, outbox) на встроенной H2,
+ * смешанная нагрузка чтения и записи с фиксированной частотой. Отчёт — build/reports/perf;
+ * регрессия против базовой линии src/perfTest/baseline.json роняет сборку.
+ * Запускается только задачей ./gradlew perfTest, см. build.gradle.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("perf")
+@Import(PerfDataGenerator.class)
+class PatientCardPerfTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private PerfDataGenerator data;
+
+    @Test
+    void testMixedWorkloadStaysWithinBaseline() throws Exception {
+        int rate = Integer.getInteger("perf.rate", 50);
+        Duration warmup = Duration.parse(System.getProperty("perf.warmup", "PT15S"));
+        Duration duration = Duration.parse(System.getProperty("perf.duration", "PT60S"));
+        double tolerance = Double.parseDouble(System.getProperty("perf.tolerance", "0.3"));
+        Path baselineFile = Path.of(System.getProperty("perf.baseline", "src/perfTest/baseline.json"));
+        Path reportDir = Path.of(System.getProperty("perf.reportDir", "build/reports/perf"));
+
+        OpenLoopLoadGenerator generator = new OpenLoopLoadGenerator(workload(), 2000);
+        generator.run(rate, warmup);
+        Map<String, OpenLoopLoadGenerator.Result> results = generator.run(rate, duration);
+
+        LatencyReport report = LatencyReport.of(rate, duration, results);
+        report.write(reportDir.resolve("perf-report.json"));
+        LatencyReport.writeHistograms(reportDir, results);
+        System.out.printf(Locale.ROOT, "Пациентов %d, заболеваний %d, %d req/s, %d с%n%s",
+                data.patients(), data.diseases(), rate, duration.toSeconds(), report.table());
+
+        if (Boolean.getBoolean("perf.updateBaseline") || !Files.exists(baselineFile)) {
+            report.write(baselineFile);
+            System.out.println("Базовая линия записана в " + baselineFile);
+            return;
+        }
+        LatencyReport baseline = LatencyReport.read(baselineFile);
+        assertThat(baseline.rate())
+                .as("Базовая линия снята при другой частоте запросов, обновите её с -PperfUpdateBaseline=true")
+                .isEqualTo(rate);
+        assertThat(report.regressionsAgainst(baseline, tolerance, 2.0, 0.01))
+                .as("Регрессии относительно " + baselineFile)
+                .isEmpty();
+    }
+
+    // 70% чтений: карточка, история заболеваний, поиск по фамилии; 30% изменений
+    private List<OpenLoopLoadGenerator.Operation> workload() {
+        String base = "http://localhost:" + port;
+        return List.of(
+                new OpenLoopLoadGenerator.Operation("getPatient", 45,
+                        () -> get(base + "/patient/" + patientId())),
+                new OpenLoopLoadGenerator.Operation("getDiseases", 15,
+                        () -> get(base + "/diseases/" + patientId() + "/getAllById")),
+                new OpenLoopLoadGenerator.Operation("searchPatients", 10,
+                        () -> get(base + "/patient/search?q=" + URLEncoder.encode(surnamePrefix(), StandardCharsets.UTF_8))),
+                new OpenLoopLoadGenerator.Operation("patchPatient", 15,
+                        () -> send(base + "/patient/" + patientId(), "PATCH",
+                                "{\"middleName\":\"Отчество " + ThreadLocalRandom.current().nextInt(1000) + "\"}")),
+                new OpenLoopLoadGenerator.Operation("createDisease", 15,
+                        () -> send(base + "/diseases/" + patientId(), "POST",
+                                "{\"icdCode\":\"" + icdCode() + "\",\"startDate\":\"" + LocalDate.now().minusDays(1)
+                                        + "\",\"prescription\":\"Назначение\"}")));
+    }
+
+    private long patientId() {
+        return ThreadLocalRandom.current().nextLong(1, data.patients() + 1);
+    }
+
+    private String icdCode() {
+        List<String> codes = data.icdCodes();
+        return codes.get(ThreadLocalRandom.current().nextInt(codes.size()));
+    }
+
+    private static String surnamePrefix() {
+        String[] names = PerfDataGenerator.LAST_NAMES;
+        return names[ThreadLocalRandom.current().nextInt(names.length)].substring(0, 3).toLowerCase(Locale.ROOT);
+    }
+
+    private static HttpRequest get(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).timeout(TIMEOUT).GET().build();
+    }
+
+    private static HttpRequest send(String url, String method, String json) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(TIMEOUT)
+                .header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+}
@@ -0,0 +1,137 @@
+package producer.kafka.patient_card.perf;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Заполняет встроенную БД на ApplicationStartedEvent — после создания схемы, но до
+ * ApplicationReadyEvent, на котором индекс имён, фильтр ОМС и статистика заболеваний
+ * читают таблицы. У большинства пациентов до нескольких десятков заболеваний, у 3% хронических —
+ * от 100 до 500. Генератор детерминирован: одинаковый seed даёт одинаковые данные.
+ */
+@Slf4j
+public class PerfDataGenerator {
+    static final String[] LAST_NAMES = {"Иванов", "Смирнов", "Кузнецов", "Попов", "Васильев", "Петров",
+            "Соколов", "Михайлов", "Новиков", "Фёдоров", "Морозов", "Волков", "Алексеев", "Лебедев", "Семёнов"};
+    private static final String[] FIRST_NAMES = {"Александр", "Дмитрий", "Максим", "Сергей", "Андрей",
+            "Алексей", "Артём", "Илья", "Кирилл", "Михаил"};
+    private static final int BATCH = 1000;
+    private static final int MAX_DISEASES = 500;
+
+    private final JdbcTemplate jdbc;
+    private final int patients;
+    private final long seed;
+    private final List<String> icdCodes;
+    private long diseases;
+
+    public PerfDataGenerator(JdbcTemplate jdbc,
+                             @Value("${perf.patients:2000}") int patients,
+                             @Value("${perf.seed:42}") long seed) {
+        this.jdbc = jdbc;
+        this.patients = patients;
+        this.seed = seed;
+        this.icdCodes = loadIcdCodes();
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void seed() {
+        long started = System.nanoTime();
+        Random random = new Random(seed);
+        List<Object[]> patientRows = new ArrayList<>(BATCH);
+        List<Object[]> diseaseRows = new ArrayList<>(BATCH);
+        long diseaseId = 0;
+        for (long id = 1; id <= patients; id++) {
+            String lastName = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            boolean woman = random.nextBoolean();
+            patientRows.add(new Object[]{id, woman ? lastName + "а" : lastName,
+                    FIRST_NAMES[random.nextInt(FIRST_NAMES.length)], null, woman ? "woman" : "man",
+                    Date.valueOf(LocalDate.of(1940, 1, 1).plusDays(random.nextInt(365 * 80))),
+                    String.format("%016d", 7_000_000_000_000_000L + id)});
+            if (patientRows.size() == BATCH) {
+                insertPatients(patientRows);
+            }
+            int count = random.nextInt(100) < 3
+                    ? 100 + random.nextInt(MAX_DISEASES - 99)
+                    : (int) Math.min(99, -Math.log(1 - random.nextDouble()) * 8);
+            // история укладывается в 20 лет: у хронических пациентов эпизоды идут чаще
+            int maxGap = Math.min(30, 365 * 20 / Math.max(count, 1));
+            LocalDate start = LocalDate.of(2000, 1, 1).plusDays(random.nextInt(365 * 5));
+            for (int i = 0; i < count; i++) {
+                start = start.plusDays(1 + random.nextInt(maxGap));
+                LocalDate end = random.nextInt(10) < 8 ? start.plusDays(3 + random.nextInt(20)) : null;
+                diseaseRows.add(new Object[]{++diseaseId, icdCodes.get(random.nextInt(icdCodes.size())),
+                        Date.valueOf(start), end == null ? null : Date.valueOf(end),
+                        "Назначение №" + diseaseId, id});
+                if (diseaseRows.size() == BATCH) {
+                    // заболевания ссылаются на пациентов, поэтому пациенты пачки вставляются раньше
+                    insertPatients(patientRows);
+                    insertDiseases(diseaseRows);
+                }
+            }
+        }
+        insertPatients(patientRows);
+        insertDiseases(diseaseRows);
+        diseases = diseaseId;
+        // Пул идентификаторов Hibernate (allocationSize 50) должен начинаться за сгенерированными строками
+        jdbc.execute("ALTER SEQUENCE all_schem.patient_sequence RESTART WITH " + (patients + 51));
+        jdbc.execute("ALTER SEQUENCE all_schem.disease_sequence RESTART WITH " + (diseaseId + 51));
+        log.info("Сгенерировано пациентов: {}, заболеваний: {} за {} мс", patients, diseaseId,
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    public int patients() {
+        return patients;
+    }
+
+    public long diseases() {
+        return diseases;
+    }
+
+    public List<String> icdCodes() {
+        return icdCodes;
+    }
+
+    private void insertPatients(List<Object[]> rows) {
+        jdbc.batchUpdate("INSERT INTO all_schem.patient_card_some "
+                + "(id, last_name, first_name, middle_name, gender, birth_date, oms_number, version) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, 0)", rows);
+        rows.clear();
+    }
+
+    private void insertDiseases(List<Object[]> rows) {
+        jdbc.batchUpdate("INSERT INTO all_schem.disease_sone "
+                + "(id, icd_code, start_date, end_date, prescription, patient_id) VALUES (?, ?, ?, ?, ?, ?)", rows);
+        rows.clear();
+    }
+
+    private static List<String> loadIcdCodes() {
+        List<String> codes = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ClassPathResource("icd/icd10.tsv").getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank() && !line.startsWith("#")) {
+                    codes.add(line.substring(0, line.indexOf('\t')).strip());
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Не удалось прочитать справочник МКБ-10", ex);
+        }
+        return codes;
+    }
+}
@@ -0,0 +1,123 @@
+package producer.kafka.patient_card;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import producer.kafka.patient_card.admission.AdaptiveLimiter;
+import producer.kafka.patient_card.admission.AdmissionControlInterceptor;
+import producer.kafka.patient_card.exception.ServiceUnavailableException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionControlTest {
+    private static final int CLIENTS = 48;
+    private static final int DB_CONNECTIONS = 4;
+    private static final long QUERY_MILLIS = 10;
+
+    @Test
+    void testLimitBacksOffOnSlowResponsesAndGrowsWhenUsed() {
+        long target = TimeUnit.MILLISECONDS.toNanos(50);
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 2, 12, target, 0.5);
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.tryAcquire()).isTrue();
+        }
+        assertThat(limiter.tryAcquire()).isFalse();
+
+        limiter.release(target * 2);
+        limiter.release(target * 2);
+        // Второй медленный ответ в том же окне лимит уже не трогает
+        assertThat(limiter.limit()).isEqualTo(5);
+        assertThat(limiter.inflight()).isEqualTo(8);
+        assertThat(limiter.tryAcquire()).isFalse();
+
+        // Пока занята хотя бы половина лимита, быстрые ответы его наращивают — но не выше максимума
+        for (int i = 0; i < 500; i++) {
+            limiter.release(target / 2);
+            while (limiter.tryAcquire()) {
+                assertThat(limiter.inflight()).isLessThanOrEqualTo(limiter.limit());
+            }
+        }
+        assertThat(limiter.limit()).isEqualTo(12);
+        assertThat(limiter.inflight()).isEqualTo(12);
+    }
+
+    // Модель перегрузки: 48 клиентов без пауз против пула из 4 соединений, запрос держит соединение 10 мс.
+    // Без допуска все ждут в очереди к пулу; с допуском лишние сразу получают 503, а задержка
+    // пропущенных остаётся около целевой
+    @Test
+    void testP99StaysBoundedUnderOverload() throws Exception {
+        Result unlimited = overload(null);
+        AdmissionControlInterceptor interceptor = new AdmissionControlInterceptor(
+                16, 2, 64, Duration.ofMillis(40), 4, 1, 16, Duration.ofMillis(100), 0.8, Duration.ofSeconds(1));
+        overload(interceptor);
+        Result limited = overload(interceptor);
+
+        assertThat(limited.rejected()).isPositive();
+        assertThat(limited.p99Millis()).isLessThan(100);
+        assertThat(limited.p99Millis() * 2).isLessThan(unlimited.p99Millis());
+        assertThat(unlimited.rejected()).isZero();
+    }
+
+    private static Result overload(AdmissionControlInterceptor interceptor) throws Exception {
+        Semaphore pool = new Semaphore(DB_CONNECTIONS, true);
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger rejected = new AtomicInteger();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1500);
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        for (int c = 0; c < CLIENTS; c++) {
+            clients.execute(() -> {
+                while (System.nanoTime() < deadline) {
+                    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/patient/1");
+                    MockHttpServletResponse response = new MockHttpServletResponse();
+                    long started = System.nanoTime();
+                    try {
+                        if (interceptor != null) {
+                            interceptor.preHandle(request, response, null);
+                        }
+                    } catch (ServiceUnavailableException ex) {
+                        assertThat(ex.getRetryAfter()).isEqualTo(Duration.ofSeconds(1));
+                        rejected.incrementAndGet();
+                        sleep(1);
+                        continue;
+                    }
+                    pool.acquireUninterruptibly();
+                    try {
+                        sleep(QUERY_MILLIS);
+                    } finally {
+                        pool.release();
+                    }
+                    if (interceptor != null) {
+                        interceptor.afterCompletion(request, response, null, null);
+                    }
+                    latencies.add(System.nanoTime() - started);
+                }
+            });
+        }
+        clients.shutdown();
+        assertThat(clients.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        long p99 = sorted.get((int) Math.ceil(sorted.size() * 0.99) - 1);
+        return new Result(TimeUnit.NANOSECONDS.toMillis(p99), rejected.get());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record Result(long p99Millis, int rejected) {
+    }
+}
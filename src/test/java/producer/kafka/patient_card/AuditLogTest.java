@@ -0,0 +1,193 @@
+package producer.kafka.patient_card;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import producer.kafka.patient_card.audit.AuditLog;
+import producer.kafka.patient_card.audit.AuditLogReader;
+import producer.kafka.patient_card.audit.AuditRecord;
+import producer.kafka.patient_card.exception.ServiceUnavailableException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AuditLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testEventsFromManyThreadsAreReplayedAcrossSegments() throws Exception {
+        // Маленький буфер и сегменты: писатели упираются в заполненное кольцо, журнал ротируется
+        AuditLog auditLog = new AuditLog(directory, 256, DataSize.ofKilobytes(8), Duration.ofMillis(50),
+                Duration.ofSeconds(30));
+        auditLog.start();
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            String actor = "doctor-" + t;
+            writers.execute(() -> {
+                for (long id = 0; id < 2000; id++) {
+                    auditLog.record(actor, "10.0.0.1", "patient", "getPatient", id, id % 100 != 0);
+                }
+            });
+        }
+        writers.shutdown();
+        assertThat(writers.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        auditLog.stop();
+
+        Map<String, Long> nextId = new HashMap<>();
+        List<AuditRecord> records = new ArrayList<>();
+        AuditLogReader.replay(directory, record -> {
+            // События одного потока идут в журнале в порядке их записи
+            assertThat(record.targetId()).isEqualTo(nextId.getOrDefault(record.actor(), 0L));
+            nextId.put(record.actor(), record.targetId() + 1);
+            records.add(record);
+        });
+        assertThat(records).hasSize(8000);
+        assertThat(records).filteredOn(record -> !record.success()).hasSize(80);
+        assertThat(segmentCount()).isGreaterThan(10);
+        assertThat(AuditLogReader.query(directory, null,
+                AuditLogReader.filter(null, null, "doctor-2", "patient", 1500L), 10, false))
+                .singleElement()
+                .satisfies(record -> {
+                    assertThat(record.address()).isEqualTo("10.0.0.1");
+                    assertThat(record.action()).isEqualTo("getPatient");
+                });
+    }
+
+    @Test
+    void testRestartAppendsAfterTornRecord() throws Exception {
+        AuditLog auditLog = new AuditLog(directory, 64, DataSize.ofKilobytes(64), Duration.ofSeconds(1), Duration.ofSeconds(30));
+        auditLog.start();
+        for (long id = 1; id <= 10; id++) {
+            auditLog.record("doctor", "10.0.0.1", "disease", "updateDisease", id, true);
+        }
+        auditLog.stop();
+
+        // Сбой посреди записи: длина уже есть, тело и сумма — нет
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        List<AuditRecord> before = new ArrayList<>();
+        AuditLogReader.replay(directory, before::add);
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(segment));
+        int end = 0;
+        for (int length = content.getInt(0); length > 0; length = content.getInt(end)) {
+            end += 8 + length;
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, 40), end);
+        }
+
+        auditLog = new AuditLog(directory, 64, DataSize.ofKilobytes(64), Duration.ofSeconds(1), Duration.ofSeconds(30));
+        auditLog.start();
+        auditLog.record("doctor", "10.0.0.1", "disease", "deleteDisease", 11, true);
+        auditLog.stop();
+
+        List<AuditRecord> after = new ArrayList<>();
+        AuditLogReader.replay(directory, after::add);
+        assertThat(before).hasSize(10);
+        assertThat(after).hasSize(11);
+        assertThat(after.get(10).action()).isEqualTo("deleteDisease");
+        assertThat(segmentCount()).isEqualTo(2);
+    }
+
+    // Путь запроса — только публикация в кольцо; запись на диск идёт в фоне
+    @Test
+    void testRecordCostsWellUnderAMicrosecond() throws Exception {
+        AuditLog auditLog = new AuditLog(directory, 1 << 19, DataSize.ofMegabytes(32), Duration.ofSeconds(1),
+                Duration.ofSeconds(30));
+        auditLog.start();
+        for (long id = 0; id < 100_000; id++) {
+            auditLog.record("doctor", "10.0.0.1", "patient", "getPatient", id, true);
+        }
+        int calls = 300_000;
+        long started = System.nanoTime();
+        for (long id = 0; id < calls; id++) {
+            auditLog.record("doctor", "10.0.0.1", "patient", "getPatient", id, true);
+        }
+        long nanosPerCall = (System.nanoTime() - started) / calls;
+        auditLog.stop();
+
+        assertThat(nanosPerCall).isLessThan(1000);
+        List<AuditRecord> records = new ArrayList<>();
+        AuditLogReader.replay(directory, records::add);
+        assertThat(records).hasSize(100_000 + calls);
+    }
+
+    @Test
+    void testQueryStopsAtLimitNewestFirstAndSkipsOldSegments() throws Exception {
+        AuditLog auditLog = new AuditLog(directory, 256, DataSize.ofKilobytes(8), Duration.ofMillis(50),
+                Duration.ofSeconds(30));
+        auditLog.start();
+        for (long id = 0; id < 2000; id++) {
+            auditLog.record("doctor", "10.0.0.1", "patient", "getPatient", id, true);
+        }
+        auditLog.stop();
+        Predicate<AuditRecord> all = AuditLogReader.filter(null, null, null, null, null);
+
+        assertThat(AuditLogReader.query(directory, null, all, 3, false))
+                .extracting(AuditRecord::targetId).containsExactly(0L, 1L, 2L);
+        assertThat(AuditLogReader.query(directory, null, all, 3, true))
+                .extracting(AuditRecord::targetId).containsExactly(1999L, 1998L, 1997L);
+
+        // Сегменты, закрытые час назад, не читаются, хотя их записи и подошли бы под фильтр
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.sorted().toList();
+        }
+        FileTime hourAgo = FileTime.from(Instant.now().minus(Duration.ofHours(1)));
+        for (Path segment : segments.subList(0, segments.size() - 1)) {
+            Files.setLastModifiedTime(segment, hourAgo);
+        }
+        Instant from = Instant.now().minus(Duration.ofMinutes(1));
+        int inLast = AuditLogReader.query(directory, from, all, 10_000, false).size();
+        assertThat(inLast).isPositive().isLessThan(2000);
+        assertThat(AuditLogReader.query(directory, from, all, 10_000, true))
+                .hasSize(inLast)
+                .first().extracting(AuditRecord::targetId).isEqualTo(1999L);
+    }
+
+    // Поток записи не успевает: новое обращение ждёт не дольше publish-timeout и получает 503
+    // до выполнения, а событие уже выполненного обращения не превращается в ошибку
+    @Test
+    void testFullBufferRejectsBeforeWorkAndNeverAfter() {
+        AuditLog auditLog = new AuditLog(directory, 2, DataSize.ofKilobytes(64), Duration.ofSeconds(1),
+                Duration.ofMillis(100));
+        auditLog.checkAvailable();
+        auditLog.record("doctor", "10.0.0.1", "patient", "getPatient", 1, true);
+        auditLog.record("doctor", "10.0.0.1", "patient", "getPatient", 2, true);
+
+        long started = System.nanoTime();
+        assertThatThrownBy(auditLog::checkAvailable).isInstanceOf(ServiceUnavailableException.class);
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isGreaterThanOrEqualTo(Duration.ofMillis(100));
+
+        auditLog.record("doctor", "10.0.0.1", "disease", "createDisease", 3, true);
+        assertThat(auditLog.health().getDetails()).containsEntry("rejected", 1L);
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package producer.kafka.patient_card;
+import org.junit.jupiter.api.Test;
+import producer.kafka.patient_card.cache.BloomFilter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BloomFilterTest {
+
+    @Test
+    void testAddedNumbersAreAlwaysFound() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (long i = 0; i < 10_000; i++) {
+            filter.add(omsNumber(i));
+        }
+        for (long i = 0; i < 10_000; i++) {
+            assertThat(filter.mightContain(omsNumber(i))).isTrue();
+        }
+    }
+
+    @Test
+    void testFalsePositiveRateStaysNearConfigured() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (long i = 0; i < 10_000; i++) {
+            filter.add(omsNumber(i));
+        }
+        int falsePositives = 0;
+        for (long i = 10_000; i < 110_000; i++) {
+            if (filter.mightContain(omsNumber(i))) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives / 100_000.0).isLessThan(0.02);
+    }
+
+    private static String omsNumber(long i) {
+        return String.format("%016d", 1234567800000000L + i);
+    }
+}
@@ -0,0 +1,127 @@
+package producer.kafka.patient_card;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import producer.kafka.patient_card.cache.PatientCardCache;
+import producer.kafka.patient_card.service.DiseaseArchiveService;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:archive;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;INIT=CREATE SCHEMA IF NOT EXISTS all_schem",
+        "patient-card.archive.closed-for=P3Y",
+        "patient-card.archive.chunk-size=2",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "producer.kafka.patient_card.DiseaseArchiveServiceTest$BeforeArchiveCopy"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(DiseaseArchiveService.class)
+class DiseaseArchiveServiceTest {
+    private static final LocalDate LONG_AGO = LocalDate.now().minusYears(5);
+
+    @Autowired
+    private DiseaseArchiveService archiveService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @MockBean
+    private PatientCardCache patientCardCache;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM all_schem.disease_archive");
+        jdbcTemplate.update("DELETE FROM all_schem.disease_sone");
+        jdbcTemplate.update("DELETE FROM all_schem.patient_card_some");
+        jdbcTemplate.update("INSERT INTO all_schem.patient_card_some "
+                + "(id, last_name, first_name, gender, birth_date, oms_number, version) "
+                + "VALUES (1, 'Иванов', 'Иван', 'man', DATE '1980-01-01', '1234567891234567', 0)");
+    }
+
+    @Test
+    void testMovesOnlyLongClosedEpisodes() {
+        disease(1, LONG_AGO, LONG_AGO.plusDays(10));
+        disease(2, LONG_AGO, LONG_AGO.plusDays(20));
+        disease(3, LONG_AGO.plusDays(30), LONG_AGO.plusDays(40));
+        disease(4, LocalDate.now().minusMonths(2), LocalDate.now().minusMonths(1));
+        disease(5, LONG_AGO, null);
+
+        archiveService.archiveClosedEpisodes();
+
+        assertThat(ids("disease_archive")).containsExactly(1L, 2L, 3L);
+        assertThat(ids("disease_sone")).containsExactly(4L, 5L);
+        // Три порции по chunk-size = 2, последняя неполная: версия карточки поднимается в каждой
+        assertThat(jdbcTemplate.queryForObject("SELECT version FROM all_schem.patient_card_some WHERE id = 1",
+                Long.class)).isEqualTo(2);
+        verify(patientCardCache, times(2)).invalidate(1L);
+    }
+
+    // Эпизод открывают заново между выборкой порции и её удалением. Без блокировки правка успевала
+    // зафиксироваться и пропадала вместе со строкой; теперь она ждёт конца порции и видит, что строки
+    // уже нет, — в сервисе это 404, а не молча потерянное изменение
+    @Test
+    void testEditDuringArchivingIsNotLost() throws Exception {
+        disease(1, LONG_AGO, LONG_AGO.plusDays(10));
+        disease(2, LONG_AGO, LONG_AGO.plusDays(20));
+        CompletableFuture<Integer> reopen = new CompletableFuture<>();
+        BeforeArchiveCopy.hook = () -> {
+            BeforeArchiveCopy.hook = null;
+            CompletableFuture.runAsync(() -> reopen.complete(
+                    jdbcTemplate.update("UPDATE all_schem.disease_sone SET end_date = NULL WHERE id = 1")));
+            // даём правке время зафиксироваться, если строка не заблокирована
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        archiveService.archiveClosedEpisodes();
+
+        assertThat(reopen.get(10, TimeUnit.SECONDS)).isZero();
+        assertThat(ids("disease_archive")).containsExactly(1L, 2L);
+        assertThat(jdbcTemplate.queryForObject("SELECT end_date FROM all_schem.disease_archive WHERE id = 1",
+                Date.class)).isNotNull();
+    }
+
+    private void disease(long id, LocalDate start, LocalDate end) {
+        jdbcTemplate.update("INSERT INTO all_schem.disease_sone "
+                        + "(id, icd_code, start_date, end_date, prescription, patient_id) VALUES (?, 'J06.9', ?, ?, 'x', 1)",
+                id, Date.valueOf(start), end == null ? null : Date.valueOf(end));
+    }
+
+    private List<Long> ids(String table) {
+        return jdbcTemplate.queryForList("SELECT id FROM all_schem." + table + " ORDER BY id", Long.class);
+    }
+
+    // Вызывается Hibernate перед каждым запросом: порция уже выбрана, копирование ещё не началось
+    public static class BeforeArchiveCopy implements StatementInspector {
+        static volatile Runnable hook;
+
+        @Override
+        public String inspect(String sql) {
+            Runnable current = hook;
+            if (current != null && sql.startsWith("insert into all_schem.disease_archive")) {
+                current.run();
+            }
+            return sql;
+        }
+    }
+}
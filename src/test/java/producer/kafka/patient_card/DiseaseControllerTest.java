@@ -5,9 +5,17 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.request.ServletWebRequest;
 import producer.kafka.patient_card.controller.DiseaseController;
 import producer.kafka.patient_card.dto.DiseaseDTO;
+import producer.kafka.patient_card.dto.DiseaseStatus;
+import producer.kafka.patient_card.exception.GlobalExceptionHandler;
+import producer.kafka.patient_card.exception.PreconditionFailedException;
 import producer.kafka.patient_card.exception.ResourceNotFoundException;
 import producer.kafka.patient_card.service.DiseaseService;
 import java.time.LocalDate;
@@ -16,7 +24,11 @@ import java.util.List;
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.hamcrest.Matchers.containsString;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(MockitoExtension.class)
 class DiseaseControllerTest {
@@ -51,9 +63,11 @@ class DiseaseControllerTest {
     @Test
     void testGetAllDiseases() {
         List<DiseaseDTO> diseases = Arrays.asList(disease1,disease2);
-        when(diseaseService.getAllDiseases(1L)).thenReturn(diseases);
-        ResponseEntity<List<DiseaseDTO>> response = diseaseController.getAllDisease(1L);
+        when(diseaseService.getAllDiseases(1L, DiseaseStatus.ALL, false, 0, null))
+                .thenReturn(new SliceImpl<>(diseases));
+        ResponseEntity<List<DiseaseDTO>> response = diseaseController.getAllDisease(1L, DiseaseStatus.ALL, false, 0, null, request());
         assertEquals(200, response.getStatusCodeValue());
+        assertEquals("false", response.getHeaders().getFirst("X-Has-Next"));
         assertEquals(2, response.getBody().size());
         assertThat(response.getBody()).containsExactly(disease1, disease2);
     }
@@ -61,22 +75,46 @@ class DiseaseControllerTest {
 
     @Test
     void testGetAllDiseasesNotFound() {
-        when(diseaseService.getAllDiseases(999L)).thenThrow(new ResourceNotFoundException("Пациент не найден"));
-        assertThrows(ResourceNotFoundException.class, () -> diseaseController.getAllDisease(999L));
+        when(diseaseService.getAllDiseases(999L, DiseaseStatus.ALL, false, 0, null))
+                .thenThrow(new ResourceNotFoundException("Пациент не найден"));
+        assertThrows(ResourceNotFoundException.class, () -> diseaseController.getAllDisease(999L, DiseaseStatus.ALL, false, 0, null, request()));
+    }
+
+    @Test
+    void testUnknownStatusIsBadRequest() throws Exception {
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(diseaseController)
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+        mockMvc.perform(get("/diseases/1/getAllById").param("status", "CLOSD"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value(containsString("status")))
+                .andExpect(jsonPath("$.message").value(containsString("OPEN")));
+        verifyNoInteractions(diseaseService);
     }
 
     @Test
     void testGetDiseases() {
         when(diseaseService.getDiseaseById(1L)).thenReturn(disease1);
-        ResponseEntity<DiseaseDTO> response = diseaseController.getDisease(1L);
+        ResponseEntity<DiseaseDTO> response = diseaseController.getDisease(1L, request());
         assertEquals(200, response.getStatusCodeValue());
         assertThat(response.getBody()).isEqualTo(disease1);
     }
 
+    @Test
+    void testGetDiseaseNotModified() {
+        when(diseaseService.getDiseaseVersion(1L)).thenReturn(3L);
+        MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/diseases/1");
+        servletRequest.addHeader("If-None-Match", "\"d1-3\"");
+        ResponseEntity<DiseaseDTO> response = diseaseController.getDisease(1L, new ServletWebRequest(servletRequest));
+        assertEquals(304, response.getStatusCodeValue());
+        assertEquals("\"d1-3\"", response.getHeaders().getETag());
+        verify(diseaseService, never()).getDiseaseById(1L);
+    }
+
     @Test
     void testGetDiseaseNotFound() {
         when(diseaseService.getDiseaseById(999L)).thenThrow(new ResourceNotFoundException("Заболевание не найдено"));
-        assertThrows(ResourceNotFoundException.class, () -> diseaseController.getDisease(999L));
+        assertThrows(ResourceNotFoundException.class, () -> diseaseController.getDisease(999L, request()));
     }
 
     @Test
@@ -89,6 +127,18 @@ class DiseaseControllerTest {
         assertThat(response.getBody()).isEqualTo(newDisease);
     }
 
+    @Test
+    void testCreatedDiseasesBatch() {
+        List<DiseaseDTO> batch = Arrays.asList(disease1, disease2);
+        List<DiseaseDTO> created = Arrays.asList(
+                new DiseaseDTO(10L, "ICD-10", disease1.getStartDate(), null, "Prescription 1"),
+                new DiseaseDTO(11L, "ICD-11", disease2.getStartDate(), null, "Prescription 2"));
+        when(diseaseService.createDiseases(1L, batch)).thenReturn(created);
+        ResponseEntity<List<DiseaseDTO>> response = diseaseController.createDiseases(1L, batch);
+        assertEquals(201, response.getStatusCodeValue());
+        assertThat(response.getBody()).extracting(DiseaseDTO::getId).containsExactly(10L, 11L);
+    }
+
     @Test
     void testCreateDiseasePatientNotFound() {
         DiseaseDTO newDisease = new DiseaseDTO("ICD-12", LocalDate.now(),null, "Prescription 3");
@@ -101,20 +151,28 @@ class DiseaseControllerTest {
     void testUpdateDiseaseSuccess() {
         DiseaseDTO updateDisease = new DiseaseDTO("ICD-10-Updated", LocalDate.now(), null, "Updated Prescription");
         validateDiseaseDate(updateDisease);
-        when(diseaseService.updateDisease(1L, updateDisease)).thenReturn(updateDisease);
-        DiseaseDTO response = diseaseController.updateDisease(1L,updateDisease);
+        when(diseaseService.updateDisease(1L, updateDisease, null)).thenReturn(updateDisease);
+        DiseaseDTO response = diseaseController.updateDisease(1L, null, updateDisease);
         assertEquals(updateDisease, response);
         assertThat(response.getIcdCode()).isEqualTo("ICD-10-Updated");
         assertThat(response.getPrescription()).isEqualTo("Updated Prescription");
     }
 
+    @Test
+    void testUpdateDiseasePassesIfMatchVersion() {
+        DiseaseDTO updateDisease = new DiseaseDTO("ICD-10-Updated", LocalDate.now(), null, "Updated Prescription");
+        when(diseaseService.updateDisease(1L, updateDisease, 7L)).thenReturn(updateDisease);
+        assertEquals(updateDisease, diseaseController.updateDisease(1L, "\"d1-7\"", updateDisease));
+        assertThrows(PreconditionFailedException.class, () -> diseaseController.updateDisease(1L, "\"d2-7\"", updateDisease));
+    }
+
     @Test
     void testUpdateDiseaseNotFound() {
         DiseaseDTO updateDisease = new DiseaseDTO("ICD-10-Updated", LocalDate.now(), null, "Updated Prescription");
         validateDiseaseDate(updateDisease);
-        when(diseaseService.updateDisease(999L, updateDisease))
+        when(diseaseService.updateDisease(999L, updateDisease, null))
                 .thenThrow(new ResourceNotFoundException("Заболевание с ID 999 не найдено"));
-        assertThrows(ResourceNotFoundException.class ,() -> diseaseController.updateDisease(999L,updateDisease));
+        assertThrows(ResourceNotFoundException.class ,() -> diseaseController.updateDisease(999L, null, updateDisease));
     }
 
     @Test
@@ -133,4 +191,7 @@ class DiseaseControllerTest {
         verify(diseaseService, times(1)).deleteDisease(999L);
     }
 
-}
\ No newline at end of file
+    private static ServletWebRequest request() {
+        return new ServletWebRequest(new MockHttpServletRequest());
+    }
+}
@@ -0,0 +1,93 @@
+package producer.kafka.patient_card;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import producer.kafka.patient_card.dto.DiseaseDTO;
+import producer.kafka.patient_card.dto.DiseaseStatus;
+import producer.kafka.patient_card.repository.DiseaseArchiveRepository;
+import producer.kafka.patient_card.repository.DiseaseRepository;
+import producer.kafka.patient_card.repository.PatientRepository;
+import producer.kafka.patient_card.service.DiseaseServiceImpl;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DiseaseServiceImplTest {
+    @Mock
+    private DiseaseRepository diseaseRepository;
+    @Mock
+    private DiseaseArchiveRepository diseaseArchiveRepository;
+    @Mock
+    private PatientRepository patientRepository;
+    private DiseaseServiceImpl diseaseService;
+
+    @BeforeEach
+    void setUp() {
+        diseaseService = new DiseaseServiceImpl(diseaseRepository, diseaseArchiveRepository, patientRepository, null, null, null, null);
+    }
+
+    @Test
+    void testFullHistoryMergesArchiveInOrder() {
+        when(diseaseRepository.findDtoByPatientId(eq(1L), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(disease(3L, 2023), disease(1L, 2019))));
+        when(diseaseArchiveRepository.findDtoByPatientId(eq(1L), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(disease(2L, 2018))));
+
+        Slice<DiseaseDTO> first = diseaseService.getAllDiseases(1L, DiseaseStatus.ALL, true, 0, 2);
+        Slice<DiseaseDTO> second = diseaseService.getAllDiseases(1L, DiseaseStatus.ALL, true, 1, 2);
+
+        assertThat(first.getContent()).extracting(DiseaseDTO::getId).containsExactly(3L, 1L);
+        assertThat(first.hasNext()).isTrue();
+        assertThat(second.getContent()).extracting(DiseaseDTO::getId).containsExactly(2L);
+        assertThat(second.hasNext()).isFalse();
+    }
+
+    @Test
+    void testHotReadsDoNotTouchArchive() {
+        when(diseaseRepository.findOpenDtoByPatientId(eq(1L), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(disease(3L, 2023))));
+
+        diseaseService.getAllDiseases(1L, DiseaseStatus.OPEN, true, 0, 10);
+        when(diseaseRepository.findById(2L)).thenReturn(Optional.empty());
+        when(diseaseArchiveRepository.findDtoById(2L)).thenReturn(Optional.of(disease(2L, 2018)));
+
+        assertThat(diseaseService.getDiseaseById(2L).getId()).isEqualTo(2L);
+        verify(diseaseArchiveRepository, never()).findDtoByPatientId(any(), any());
+    }
+
+    @Test
+    void testArchivePagingDepthIsCapped() {
+        assertThatThrownBy(() -> diseaseService.getAllDiseases(1L, DiseaseStatus.ALL, true, 10, 1000))
+                .isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(diseaseRepository, diseaseArchiveRepository);
+    }
+
+    @Test
+    void testWithoutSizeReturnsWholeHistory() {
+        when(diseaseRepository.findDtoByPatientId(eq(1L), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(disease(3L, 2023), disease(1L, 2019))));
+
+        Slice<DiseaseDTO> all = diseaseService.getAllDiseases(1L, DiseaseStatus.ALL, false, 0, null);
+
+        assertThat(all.getContent()).extracting(DiseaseDTO::getId).containsExactly(3L, 1L);
+        assertThat(all.hasNext()).isFalse();
+        verify(diseaseRepository).findDtoByPatientId(eq(1L), argThat(Pageable::isUnpaged));
+    }
+
+    private static DiseaseDTO disease(Long id, int year) {
+        return new DiseaseDTO(id, "A0" + id, LocalDate.of(year, 1, 1), LocalDate.of(year, 2, 1), "x");
+    }
+}
@@ -0,0 +1,82 @@
+package producer.kafka.patient_card;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import producer.kafka.patient_card.dto.DiseaseStatsDTO;
+import producer.kafka.patient_card.dto.DiseaseStatsRow;
+import producer.kafka.patient_card.model.DiseaseStatsEntry;
+import producer.kafka.patient_card.repository.DiseaseArchiveRepository;
+import producer.kafka.patient_card.repository.DiseaseRepository;
+import producer.kafka.patient_card.repository.DiseaseStatsRepository;
+import producer.kafka.patient_card.stats.DiseaseCase;
+import producer.kafka.patient_card.stats.DiseaseStats;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DiseaseStatsTest {
+    private static final LocalDate TODAY = LocalDate.now();
+    @Mock
+    private DiseaseStatsRepository statsRepository;
+    @Mock
+    private DiseaseRepository diseaseRepository;
+    @Mock
+    private DiseaseArchiveRepository diseaseArchiveRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    private DiseaseStats stats;
+
+    @BeforeEach
+    void setUp() {
+        stats = new DiseaseStats(statsRepository, diseaseRepository, diseaseArchiveRepository, transactionManager, 400, 500);
+        when(statsRepository.count()).thenReturn(2L);
+        when(statsRepository.sumByCodeAndGender()).thenReturn(List.of(
+                new DiseaseStatsEntry("J06.9", "man", TODAY.minusYears(5), 10, 3)));
+        when(statsRepository.findByStartDateGreaterThanEqual(any())).thenReturn(List.of(
+                new DiseaseStatsEntry("J06.9", "man", TODAY.minusDays(1), 2, 1)));
+    }
+
+    @Test
+    void testChangesBeforeLoadAreReplayedAndFlushed() {
+        stats.added(new DiseaseCase("J06.9", "man", TODAY, null));
+        stats.warmUp();
+        stats.added(new DiseaseCase("A01", null, TODAY, TODAY));
+        stats.changed(new DiseaseCase("J06.9", "man", TODAY, null), new DiseaseCase("J06.9", "man", TODAY, TODAY));
+
+        DiseaseStatsDTO result = stats.query(null, null, null, null);
+
+        assertThat(result.getRows()).extracting(DiseaseStatsRow::getIcdCode, DiseaseStatsRow::getGender,
+                        DiseaseStatsRow::getActiveCases, DiseaseStatsRow::getNewCases)
+                .containsExactly(tuple("A01", "unknown", 0L, 1L), tuple("J06.9", "man", 3L, 3L));
+        assertThat(result.getRows().get(1).getNewCasesByDay())
+                .containsExactly(entry(TODAY.minusDays(1), 2L), entry(TODAY, 1L));
+
+        stats.flush();
+        verify(statsRepository).addCounts("J06.9", "man", TODAY, 1, 0);
+        verify(statsRepository).addCounts("A01", "unknown", TODAY, 1, 0);
+        verify(statsRepository, times(2)).save(any(DiseaseStatsEntry.class));
+        stats.flush();
+        verify(statsRepository, times(2)).addCounts(any(), any(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void testQueryFiltersByCodePrefixAndGender() {
+        stats.warmUp();
+        stats.added(new DiseaseCase("J06.9", "female", TODAY, null));
+
+        assertThat(stats.query(null, null, "j06", "female").getRows())
+                .extracting(DiseaseStatsRow::getGender).containsExactly("female");
+        assertThat(stats.query(TODAY, TODAY, "A", null).getRows()).isEmpty();
+        assertThat(stats.query(null, null, "J", null).getRows()).hasSize(2);
+    }
+}
@@ -0,0 +1,199 @@
+package producer.kafka.patient_card;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import producer.kafka.patient_card.cache.IcdCatalog;
+import producer.kafka.patient_card.cache.PatientCardCache;
+import producer.kafka.patient_card.dto.DiseaseDTO;
+import producer.kafka.patient_card.exception.ResourceNotFoundException;
+import producer.kafka.patient_card.exception.ServiceUnavailableException;
+import producer.kafka.patient_card.model.Disease;
+import producer.kafka.patient_card.model.Patient;
+import producer.kafka.patient_card.outbox.OutboxWriter;
+import producer.kafka.patient_card.repository.DiseaseArchiveRepository;
+import producer.kafka.patient_card.repository.DiseaseRepository;
+import producer.kafka.patient_card.repository.PatientRepository;
+import producer.kafka.patient_card.service.DiseaseServiceImpl;
+import producer.kafka.patient_card.service.GroupCommitDiseaseService;
+import producer.kafka.patient_card.stats.DiseaseStats;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class GroupCommitDiseaseServiceTest {
+    @Mock
+    private DiseaseRepository diseaseRepository;
+    @Mock
+    private DiseaseArchiveRepository diseaseArchiveRepository;
+    @Mock
+    private PatientRepository patientRepository;
+    @Mock
+    private PatientCardCache patientCardCache;
+    @Mock
+    private OutboxWriter outboxWriter;
+    @Mock
+    private DiseaseStats diseaseStats;
+    private final AtomicLong ids = new AtomicLong();
+    private DiseaseServiceImpl diseaseService;
+    private GroupCommitDiseaseService groupCommit;
+
+    @BeforeEach
+    void setUp() {
+        Patient patient = Patient.builder().id(1L).lastName("Brown").gender("man").version(0L).build();
+        when(patientRepository.incrementVersionById(1L)).thenReturn(Optional.of(1L));
+        when(patientRepository.getReferenceById(1L)).thenReturn(patient);
+        when(patientRepository.findById(1L)).thenReturn(Optional.of(patient));
+        when(diseaseRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Disease> diseases = invocation.getArgument(0);
+            diseases.forEach(disease -> disease.setId(ids.incrementAndGet()));
+            return diseases;
+        });
+        when(diseaseRepository.save(any(Disease.class))).thenAnswer(invocation -> {
+            Disease disease = invocation.getArgument(0);
+            disease.setId(ids.incrementAndGet());
+            return disease;
+        });
+        diseaseService = new DiseaseServiceImpl(diseaseRepository, diseaseArchiveRepository,
+                patientRepository, patientCardCache, outboxWriter,
+                new IcdCatalog(new ClassPathResource("icd/icd10.tsv"), true, "category", 0), diseaseStats);
+        groupCommit = new GroupCommitDiseaseService(diseaseService, 50, 100, 1000, Duration.ofSeconds(5));
+        groupCommit.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        groupCommit.stop();
+    }
+
+    @Test
+    void testConcurrentCreatesShareOneTransactionAndKeepOwnErrors() throws Exception {
+        List<Future<DiseaseDTO>> results = submit(10, i -> switch (i) {
+            case 8 -> groupCommit.createDisease(1L, disease("Z99.99", "x"));
+            case 9 -> groupCommit.createDisease(2L, disease("J06.9", "x"));
+            default -> groupCommit.createDisease(1L, disease("J06.9", "course " + i));
+        });
+
+        List<String> prescriptions = new ArrayList<>();
+        for (Future<DiseaseDTO> result : results.subList(0, 8)) {
+            DiseaseDTO created = result.get(5, TimeUnit.SECONDS);
+            assertThat(created.getId()).isNotNull();
+            prescriptions.add(created.getPrescription());
+        }
+        assertThat(prescriptions).containsExactlyInAnyOrder(
+                "course 0", "course 1", "course 2", "course 3", "course 4", "course 5", "course 6", "course 7");
+        assertThat(cause(results.get(8))).isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Неизвестный код МКБ-10: Z99.99");
+        assertThat(cause(results.get(9))).isInstanceOf(ResourceNotFoundException.class);
+        // Все заявки пришли внутри одного окна: одна вставка и одно повышение версии пациента
+        verify(diseaseRepository, times(1)).saveAll(anyList());
+        verify(patientRepository, times(1)).incrementVersionById(1L);
+        verify(outboxWriter, times(8)).record(any(), eq(1L), anyLong(), eq(1L));
+    }
+
+    @Test
+    void testFailedBatchIsRetriedRequestByRequest() throws Exception {
+        when(diseaseRepository.saveAll(anyList())).thenThrow(new DataIntegrityViolationException("deadlock detected"));
+
+        List<Future<DiseaseDTO>> results = submit(3, i -> groupCommit.createDisease(1L, disease("J06.9", "course " + i)));
+
+        for (Future<DiseaseDTO> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS).getId()).isNotNull();
+        }
+        verify(diseaseRepository, times(3)).save(any(Disease.class));
+    }
+
+    @Test
+    void testWriterFailureFailsQueuedRequestsAndRejectsNewOnes() throws Exception {
+        when(diseaseRepository.saveAll(anyList())).thenThrow(new OutOfMemoryError("Java heap space"));
+
+        List<Future<DiseaseDTO>> results = submit(3, i -> groupCommit.createDisease(1L, disease("J06.9", "course " + i)));
+
+        for (Future<DiseaseDTO> result : results) {
+            assertThat(cause(result)).isInstanceOf(ServiceUnavailableException.class);
+        }
+        assertThrows(ServiceUnavailableException.class, () -> groupCommit.createDisease(1L, disease("J06.9", "late")));
+    }
+
+    @Test
+    void testCallerStopsWaitingAndQueuedRequestIsNotWritten() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(diseaseRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            List<Disease> diseases = invocation.getArgument(0);
+            diseases.forEach(disease -> disease.setId(ids.incrementAndGet()));
+            return diseases;
+        });
+        GroupCommitDiseaseService slow = new GroupCommitDiseaseService(diseaseService, 0, 1, 10, Duration.ofMillis(200));
+        slow.start();
+        try {
+            Future<DiseaseDTO> first = submit(1, i -> slow.createDisease(1L, disease("J06.9", "first"))).get(0);
+            writing.await(5, TimeUnit.SECONDS);
+
+            ServiceUnavailableException ex = assertThrows(ServiceUnavailableException.class,
+                    () -> slow.createDisease(1L, disease("J06.9", "second")));
+            assertThat(ex.getRetryAfter()).isEqualTo(Duration.ofMillis(200));
+            // Первую поток записи уже взял: снять её нельзя, и 503 приходит без Retry-After
+            assertThat(cause(first)).isInstanceOfSatisfying(ServiceUnavailableException.class,
+                    unavailable -> assertThat(unavailable.getRetryAfter()).isNull());
+        } finally {
+            release.countDown();
+            slow.stop();
+        }
+        // Вторая заявка снята с очереди до записи: в базу ушла только первая
+        verify(diseaseRepository, times(1)).saveAll(anyList());
+    }
+
+    private static List<Future<DiseaseDTO>> submit(int count, Call call) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(count);
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+        List<Future<DiseaseDTO>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int n = i;
+            results.add(executor.submit(() -> {
+                started.countDown();
+                return call.create(n);
+            }));
+        }
+        started.await();
+        executor.shutdown();
+        return results;
+    }
+
+    private static Throwable cause(Future<DiseaseDTO> result) {
+        return assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS)).getCause();
+    }
+
+    private static DiseaseDTO disease(String icdCode, String prescription) {
+        return new DiseaseDTO(icdCode, LocalDate.of(2020, 1, 1), null, prescription);
+    }
+
+    private interface Call {
+        DiseaseDTO create(int i);
+    }
+}
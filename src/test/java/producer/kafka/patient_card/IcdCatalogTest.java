@@ -0,0 +1,41 @@
+package producer.kafka.patient_card;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import producer.kafka.patient_card.cache.IcdCatalog;
+import producer.kafka.patient_card.dto.IcdCodeDTO;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IcdCatalogTest {
+    private final IcdCatalog catalog = new IcdCatalog(new ClassPathResource("icd/icd10.tsv"), true, "category", 0);
+
+    @Test
+    void testValidationAcceptsKnownCodesAndSubcategories() {
+        assertThat(catalog.isKnown("J06.9")).isTrue();
+        assertThat(catalog.isKnown("J06.8")).isTrue();
+        assertThat(catalog.isKnown(IcdCatalog.normalize(" а01 "))).isTrue();
+        assertThat(catalog.isKnown("A123")).isFalse();
+        assertThat(catalog.isKnown("Q99")).isFalse();
+        assertThat(catalog.isKnown("J06.")).isFalse();
+        assertThat(new IcdCatalog(new ClassPathResource("icd/icd10.tsv"), true, "exact", 0).isKnown("J06.8")).isFalse();
+    }
+
+    @Test
+    void testValidationRequiresFullCatalog() {
+        assertThatThrownBy(() -> new IcdCatalog(new ClassPathResource("icd/icd10.tsv"), true, "category", 2000))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("patient-card.icd.validate");
+        IcdCatalog lenient = new IcdCatalog(new ClassPathResource("icd/icd10.tsv"), false, "category", 2000);
+        assertThat(lenient.isKnown("Q99")).isTrue();
+    }
+
+    @Test
+    void testSuggestByCodeAndTitle() {
+        assertThat(catalog.suggest("j06", 10)).extracting(IcdCodeDTO::getCode).containsExactly("J06", "J06.9");
+        assertThat(catalog.suggest("J", 3)).extracting(IcdCodeDTO::getCode).containsExactly("J00", "J01", "J02");
+        assertThat(catalog.suggest("грип", 10)).extracting(IcdCodeDTO::getCode).containsExactly("J10", "J11");
+        assertThat(catalog.suggest("острый брон", 10)).extracting(IcdCodeDTO::getCode).containsExactly("J20", "J20.9", "J40");
+        assertThat(catalog.suggest("ёлка", 10)).isEmpty();
+    }
+}
@@ -0,0 +1,103 @@
+package producer.kafka.patient_card;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import producer.kafka.patient_card.model.OutboxEvent;
+import producer.kafka.patient_card.outbox.ChangeEvent;
+import producer.kafka.patient_card.outbox.ChangeEventPublisher;
+import producer.kafka.patient_card.outbox.ChangeType;
+import producer.kafka.patient_card.outbox.InMemoryChangeEventPublisher;
+import producer.kafka.patient_card.outbox.OutboxRelay;
+import producer.kafka.patient_card.repository.OutboxEventRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxRelayTest {
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    private InMemoryChangeEventPublisher publisher;
+    private OutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        publisher = new InMemoryChangeEventPublisher(100);
+        relay = new OutboxRelay(outboxEventRepository, publisher, transactionManager, 2, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void testRelayDrainsFullBatchesAndDeletesPublished() {
+        when(outboxEventRepository.findBatchForPublishing(any(Instant.class), any(Limit.class)))
+                .thenReturn(List.of(event(1L, ChangeType.PATIENT_CREATED), event(2L, ChangeType.DISEASE_CREATED)))
+                .thenReturn(List.of(event(3L, ChangeType.PATIENT_UPDATED)));
+
+        relay.relay();
+
+        assertThat(publisher.recent()).extracting(ChangeEvent::eventId).containsExactly(1L, 2L, 3L);
+        assertThat(publisher.recent().get(2).version()).isEqualTo(3L);
+        verify(outboxEventRepository, times(2)).findBatchForPublishing(any(Instant.class), any(Limit.class));
+        verify(outboxEventRepository, times(2)).claim(anyList(), any(Instant.class));
+        verify(outboxEventRepository).deleteAllByIdInBatch(List.of(1L, 2L));
+        verify(outboxEventRepository).deleteAllByIdInBatch(List.of(3L));
+    }
+
+    // Публикация ждёт подтверждений брокера, поэтому идёт между транзакциями захвата и удаления
+    @Test
+    void testPublishesOutsideTransaction() {
+        ChangeEventPublisher slowPublisher = mock(ChangeEventPublisher.class);
+        relay = new OutboxRelay(outboxEventRepository, slowPublisher, transactionManager, 2, Duration.ofMinutes(1));
+        when(outboxEventRepository.findBatchForPublishing(any(Instant.class), any(Limit.class)))
+                .thenReturn(List.of(event(1L, ChangeType.PATIENT_CREATED)));
+
+        relay.relay();
+
+        InOrder order = inOrder(outboxEventRepository, transactionManager, slowPublisher);
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(outboxEventRepository).claim(eq(List.of(1L)), any(Instant.class));
+        order.verify(transactionManager).commit(any());
+        order.verify(slowPublisher).publish(anyList());
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(outboxEventRepository).deleteAllByIdInBatch(List.of(1L));
+        order.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void testFailedPublishKeepsEvents() {
+        relay = new OutboxRelay(outboxEventRepository, events -> {
+            throw new IllegalStateException("broker down");
+        }, transactionManager, 2, Duration.ofMinutes(1));
+        when(outboxEventRepository.findBatchForPublishing(any(Instant.class), any(Limit.class)))
+                .thenReturn(List.of(event(1L, ChangeType.PATIENT_DELETED)));
+
+        relay.relay();
+
+        verify(outboxEventRepository, never()).deleteAllByIdInBatch(anyList());
+        verify(outboxEventRepository).release(List.of(1L));
+    }
+
+    private static OutboxEvent event(Long id, ChangeType type) {
+        return OutboxEvent.builder()
+                .id(id)
+                .type(type)
+                .patientId(7L)
+                .entityId(id)
+                .version(id)
+                .createdAt(Instant.now())
+                .build();
+    }
+}
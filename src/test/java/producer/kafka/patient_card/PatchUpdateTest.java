@@ -0,0 +1,212 @@
+package producer.kafka.patient_card;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import producer.kafka.patient_card.cache.IcdCatalog;
+import producer.kafka.patient_card.cache.OmsNumberFilter;
+import producer.kafka.patient_card.cache.PatientCardCache;
+import producer.kafka.patient_card.cache.PatientNameIndex;
+import producer.kafka.patient_card.dto.DiseaseDTO;
+import producer.kafka.patient_card.dto.FieldPatch;
+import producer.kafka.patient_card.exception.PreconditionFailedException;
+import producer.kafka.patient_card.exception.ResourceNotFoundException;
+import producer.kafka.patient_card.model.Patient;
+import producer.kafka.patient_card.outbox.ChangeType;
+import producer.kafka.patient_card.outbox.OutboxWriter;
+import producer.kafka.patient_card.repository.PatientRepository;
+import producer.kafka.patient_card.service.DiseaseServiceImpl;
+import producer.kafka.patient_card.service.PatientService;
+import producer.kafka.patient_card.service.PatientValidator;
+import producer.kafka.patient_card.stats.DiseaseCase;
+import producer.kafka.patient_card.stats.DiseaseStats;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:patch;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;INIT=CREATE SCHEMA IF NOT EXISTS all_schem"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({PatientService.class, PatientValidator.class, DiseaseServiceImpl.class, IcdCatalog.class})
+class PatchUpdateTest {
+    @Autowired
+    private PatientService patientService;
+    @Autowired
+    private DiseaseServiceImpl diseaseService;
+    @Autowired
+    private PatientRepository patientRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @MockBean
+    private PatientCardCache patientCardCache;
+    @MockBean
+    private OmsNumberFilter omsNumberFilter;
+    @MockBean
+    private PatientNameIndex patientNameIndex;
+    @MockBean
+    private OutboxWriter outboxWriter;
+    @MockBean
+    private DiseaseStats diseaseStats;
+    private SessionFactory sessionFactory;
+    private Statistics statistics;
+    private Long patientId;
+    private Long otherId;
+
+    @BeforeEach
+    void setUp() {
+        sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        sessionFactory.getCache().evictAllRegions();
+        statistics = sessionFactory.getStatistics();
+        patientId = patientRepository.save(patient("Brown", "1234567891234567")).getId();
+        otherId = patientRepository.save(patient("Green", "7654321987654321")).getId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        patientRepository.deleteAllById(java.util.List.of(patientId, otherId));
+    }
+
+    @Test
+    void testPatchWritesOnlySuppliedColumnsInOneStatement() {
+        long version = patientService.getPatientVersion(patientId);
+        patientService.getPatientVersion(otherId);
+
+        statistics.clear();
+        long patched = patientService.patchPatient(patientId, FieldPatch.forPatient(body("middleName", "Ivanovich")), version);
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(patched).isEqualTo(version + 1);
+        // Из кэша второго уровня ушла только изменённая запись
+        assertThat(sessionFactory.getCache().containsEntity(Patient.class, patientId)).isFalse();
+        assertThat(sessionFactory.getCache().containsEntity(Patient.class, otherId)).isTrue();
+        Patient stored = patientRepository.findById(patientId).orElseThrow();
+        assertThat(stored.getMiddleName()).isEqualTo("Ivanovich");
+        assertThat(stored.getLastName()).isEqualTo("Brown");
+        assertThat(stored.getVersion()).isEqualTo(patched);
+        verify(outboxWriter).record(ChangeType.PATIENT_UPDATED, patientId, patientId, patched);
+
+        assertThat(patientService.patchPatient(patientId, FieldPatch.forPatient(body("middleName", null)), null))
+                .isEqualTo(patched + 1);
+        assertThat(patientRepository.findById(patientId).orElseThrow().getMiddleName()).isNull();
+    }
+
+    @Test
+    void testPatchWithoutChangesSkipsWrite() {
+        long version = patientService.getPatientVersion(patientId);
+
+        long patched = patientService.patchPatient(patientId, FieldPatch.forPatient(body("lastName", "Brown")), version);
+
+        assertThat(patched).isEqualTo(version);
+        assertThat(patientService.getPatientVersion(patientId)).isEqualTo(version);
+        verify(outboxWriter, never()).record(any(), any(), any(), any());
+        assertThatThrownBy(() -> patientService.patchPatient(patientId, FieldPatch.forPatient(body("lastName", "Black")), version + 5))
+                .isInstanceOf(PreconditionFailedException.class);
+        assertThatThrownBy(() -> patientService.patchPatient(-1L, FieldPatch.forPatient(body("lastName", "Black")), null))
+                .isInstanceOf(ResourceNotFoundException.class);
+        assertThatThrownBy(() -> FieldPatch.forPatient(body("lastName", null)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FieldPatch.forPatient(body("version", "7")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testDiseasePatchClosesEpisode() {
+        Long diseaseId = diseaseService.createDisease(patientId,
+                new DiseaseDTO("J06.9", LocalDate.of(2020, 1, 1), null, "x")).getId();
+        long version = diseaseService.getDiseaseHistoryVersion(patientId);
+
+        long patched = diseaseService.patchDisease(diseaseId,
+                FieldPatch.forDisease(body("endDate", "2020-01-10")), version);
+        long unchanged = diseaseService.patchDisease(diseaseId,
+                FieldPatch.forDisease(body("endDate", "2020-01-10", "prescription", "x")), null);
+
+        assertThat(patched).isEqualTo(version + 1);
+        assertThat(unchanged).isEqualTo(patched);
+        DiseaseDTO stored = diseaseService.getDiseaseById(diseaseId);
+        assertThat(stored.getEndDate()).isEqualTo(LocalDate.of(2020, 1, 10));
+        assertThat(stored.getPrescription()).isEqualTo("x");
+        verify(diseaseStats).changed(any(DiseaseCase.class),
+                eq(new DiseaseCase("J06.9", "man", LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 10))));
+        verify(outboxWriter).record(eq(ChangeType.DISEASE_UPDATED), eq(patientId), eq(diseaseId), anyLong());
+        assertThatThrownBy(() -> diseaseService.patchDisease(-1L, FieldPatch.forDisease(body("prescription", "y")), null))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    // Два запроса с одним If-Match: второй проверяет версию под блокировкой строки пациента,
+    // дожидается коммита первого и получает 412, а не затирает его изменение
+    @Test
+    void testConcurrentUpdatesWithSameIfMatchConflict() throws Exception {
+        Long diseaseId = diseaseService.createDisease(patientId,
+                new DiseaseDTO("J06.9", LocalDate.of(2020, 1, 1), null, "x")).getId();
+        long version = diseaseService.getDiseaseVersion(diseaseId);
+        CountDownLatch firstWrote = new CountDownLatch(1);
+
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() ->
+                new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                    diseaseService.updateDisease(diseaseId,
+                            new DiseaseDTO("J06.9", LocalDate.of(2020, 1, 1), null, "first"), version);
+                    firstWrote.countDown();
+                    // второй запрос успевает дойти до проверки, пока первый не зафиксирован
+                    sleep(300);
+                }));
+        assertThat(firstWrote.await(10, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Long> second = CompletableFuture.supplyAsync(() -> diseaseService.patchDisease(diseaseId,
+                FieldPatch.forDisease(body("prescription", "second")), version));
+
+        first.get(10, TimeUnit.SECONDS);
+        assertThatThrownBy(() -> second.get(10, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(PreconditionFailedException.class);
+        assertThat(diseaseService.getDiseaseById(diseaseId).getPrescription()).isEqualTo("first");
+        assertThat(diseaseService.getDiseaseVersion(diseaseId)).isEqualTo(version + 1);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Patient patient(String lastName, String omsNumber) {
+        return Patient.builder().lastName(lastName).firstName("Mark").gender("man")
+                .birthDate(LocalDate.of(1990, 1, 1)).omsNumber(omsNumber).build();
+    }
+
+    private static Map<String, Object> body(Object... namesAndValues) {
+        Map<String, Object> body = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            body.put((String) namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return body;
+    }
+}
@@ -0,0 +1,104 @@
+package producer.kafka.patient_card;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import producer.kafka.patient_card.cache.PatientCardCache;
+import producer.kafka.patient_card.dto.PatientCard;
+import producer.kafka.patient_card.dto.PatientDTO;
+import producer.kafka.patient_card.exception.ResourceNotFoundException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PatientCardCacheTest {
+    private PatientCardCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        cache = new PatientCardCache(new ObjectMapper().registerModule(new JavaTimeModule()), 1024 * 1024, Duration.ofMinutes(1));
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void testConcurrentMissesLoadOnce() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<PatientCard>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return cache.get(1L, this::slowLoad);
+            }));
+        }
+        start.countDown();
+        for (Future<PatientCard> result : results) {
+            assertThat(new String(result.get(5, TimeUnit.SECONDS).json())).contains("\"lastName\":\"Brown\"");
+        }
+        executor.shutdown();
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(cache.stats().getLoads()).isEqualTo(1);
+    }
+
+    @Test
+    void testInvalidateForcesReload() {
+        cache.get(1L, this::slowLoad);
+        cache.get(1L, this::slowLoad);
+        cache.invalidate(1L);
+        cache.get(1L, this::slowLoad);
+
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(cache.stats().getHits()).isEqualTo(1);
+    }
+
+    @Test
+    void testNotFoundIsNotCached() {
+        assertThrows(ResourceNotFoundException.class, () -> cache.get(2L, id -> {
+            throw new ResourceNotFoundException("Пациент не найден");
+        }));
+        cache.get(2L, this::slowLoad);
+
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    void testLoaderErrorReleasesWaitingReaders() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<PatientCard> failed = executor.submit(() -> cache.get(3L, id -> {
+            loading.countDown();
+            slowLoad(id);
+            throw new StackOverflowError();
+        }));
+        loading.await(5, TimeUnit.SECONDS);
+
+        assertThrows(StackOverflowError.class, () -> cache.get(3L, this::slowLoad));
+        assertThat(assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS)))
+                .hasCauseInstanceOf(StackOverflowError.class);
+        executor.shutdown();
+        assertThat(new String(cache.get(3L, this::slowLoad).json())).contains("\"lastName\":\"Brown\"");
+    }
+
+    private PatientDTO slowLoad(Long id) {
+        loads.incrementAndGet();
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return PatientDTO.builder().id(id).lastName("Brown").firstName("Mark").disease(List.of()).build();
+    }
+}
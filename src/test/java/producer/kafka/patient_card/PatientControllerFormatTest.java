@@ -0,0 +1,112 @@
+package producer.kafka.patient_card;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+import producer.kafka.patient_card.controller.PatientController;
+import producer.kafka.patient_card.dto.PatientCard;
+import producer.kafka.patient_card.dto.PatientDTO;
+import producer.kafka.patient_card.service.Service;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class PatientControllerFormatTest {
+    private static final String CARD = "{\"id\":1,\"lastName\":\"Иванов\",\"birthDate\":\"1990-01-01\",\"version\":3,"
+            + "\"disease\":[{\"id\":7,\"icdCode\":\"J06.9\",\"endDate\":null,\"prescription\":\"покой\"}]}";
+
+    @Mock
+    private Service service;
+    private PatientController patientController;
+
+    @BeforeEach
+    void setUp() {
+        patientController = new PatientController(service, null, null);
+        when(service.getPatientVersion(1L)).thenReturn(3L);
+        when(service.getPatientCard(1L)).thenReturn(new PatientCard(1L, 3L, CARD.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testCachedCardIsTranscodedForBinaryAccept() throws Exception {
+        ResponseEntity<?> cbor = patientController.getPatient(1L, null, null, null, request("application/cbor"));
+        ResponseEntity<?> smile = patientController.getPatient(1L, null, null, null,
+                request("application/json;q=0.5, application/x-jackson-smile"));
+
+        JsonNode expected = new ObjectMapper().readTree(CARD);
+        assertThat(cbor.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_CBOR);
+        assertThat(new ObjectMapper(new CBORFactory()).readTree((byte[]) cbor.getBody())).isEqualTo(expected);
+        assertThat(smile.getHeaders().getContentType().toString()).isEqualTo("application/x-jackson-smile");
+        assertThat(new ObjectMapper(new SmileFactory()).readTree((byte[]) smile.getBody())).isEqualTo(expected);
+        assertThat(cbor.getHeaders().getETag()).isEqualTo("\"p1-3-cbor\"");
+        assertThat(smile.getHeaders().getETag()).isEqualTo("\"p1-3-smile\"");
+    }
+
+    @Test
+    void testRevalidationAcceptsTagOfAnyFormat() {
+        ResponseEntity<?> cached = patientController.getPatient(1L, null, null, null,
+                request("application/cbor", "\"p1-2-cbor\", \"p1-3\""));
+        ResponseEntity<?> smile = patientController.getPatient(1L, null, null, null,
+                request("application/json", "W/\"p1-3-smile\""));
+        ResponseEntity<?> stale = patientController.getPatient(1L, null, null, null,
+                request("application/cbor", "\"p1-2-cbor\""));
+
+        assertThat(cached.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(cached.getHeaders().getETag()).isEqualTo("\"p1-3\"");
+        assertThat(cached.getHeaders().getVary()).containsExactly("Accept");
+        assertThat(smile.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(smile.getHeaders().getETag()).isEqualTo("\"p1-3-smile\"");
+        assertThat(stale.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(stale.getHeaders().getETag()).isEqualTo("\"p1-3-cbor\"");
+    }
+
+    @Test
+    void testIfMatchAcceptsBinaryFormatTag() {
+        PatientDTO dto = PatientDTO.builder().lastName("Иванов").build();
+        when(service.updatePatient(1L, dto, 3L)).thenReturn(PatientDTO.builder().id(1L).version(4L).build());
+
+        ResponseEntity<PatientDTO> updated = patientController.updatePatient(1L, "\"p1-3-cbor\"", dto);
+
+        assertThat(updated.getHeaders().getETag()).isEqualTo("\"p1-4\"");
+    }
+
+    @Test
+    void testJsonStaysDefault() {
+        for (String accept : new String[]{null, "*/*", "application/cbor;q=0.5, application/json", "text/html, */*;q=0.8"}) {
+            ResponseEntity<?> response = patientController.getPatient(1L, null, null, null, request(accept));
+
+            assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+            assertThat((byte[]) response.getBody()).isEqualTo(CARD.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static ServletWebRequest request(String accept) {
+        return request(accept, null);
+    }
+
+    private static ServletWebRequest request(String accept, String ifNoneMatch) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        if (accept != null) {
+            request.addHeader("Accept", accept);
+        }
+        if (ifNoneMatch != null) {
+            request.addHeader("If-None-Match", ifNoneMatch);
+        }
+        return new ServletWebRequest(request);
+    }
+}
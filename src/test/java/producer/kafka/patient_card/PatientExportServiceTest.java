@@ -0,0 +1,97 @@
+package producer.kafka.patient_card;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import producer.kafka.patient_card.dto.ExportProgressDTO;
+import producer.kafka.patient_card.dto.PatientExportRow;
+import producer.kafka.patient_card.repository.PatientRepository;
+import producer.kafka.patient_card.service.PatientExportService;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PatientExportServiceTest {
+    @Mock
+    private PatientRepository patientRepository;
+    private PatientExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        exportService = new PatientExportService(patientRepository, new ObjectMapper().registerModule(new JavaTimeModule()));
+    }
+
+    @Test
+    void testExportGroupsDiseasesByPatient() throws Exception {
+        when(patientRepository.streamAllForExport()).thenReturn(rows());
+        String exportId = exportService.startExport();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exportService.export(exportId, out, false);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).contains("\"id\":1").contains("\"A01\"").contains("\"B02\"");
+        assertThat(lines[1]).contains("\"id\":2").contains("\"disease\":[]");
+        ExportProgressDTO progress = exportService.getProgress(exportId);
+        assertThat(progress.getStatus()).isEqualTo("DONE");
+        assertThat(progress.getPatients()).isEqualTo(2);
+        assertThat(progress.getDiseases()).isEqualTo(2);
+        assertThat(progress.getBytes()).isEqualTo(out.size());
+    }
+
+    @Test
+    void testProgressIsSnapshotAndFailureIsRecorded() throws Exception {
+        Stream<PatientExportRow> broken = Stream.<PatientExportRow>generate(() -> {
+            throw new IllegalStateException("Соединение с БД разорвано");
+        }).limit(1);
+        when(patientRepository.streamAllForExport()).thenReturn(Stream.concat(rows(), broken));
+        String exportId = exportService.startExport();
+        ExportProgressDTO before = exportService.getProgress(exportId);
+
+        assertThrows(IllegalStateException.class, () -> exportService.export(exportId, new ByteArrayOutputStream(), false));
+
+        ExportProgressDTO after = exportService.getProgress(exportId);
+        assertThat(before.getStatus()).isEqualTo("PENDING");
+        assertThat(before.getPatients()).isZero();
+        assertThat(after.getStatus()).isEqualTo("FAILED");
+        assertThat(after.getPatients()).isEqualTo(1);
+        assertThat(after.getError()).isEqualTo("Соединение с БД разорвано");
+        assertThat(after.getFinishedAt()).isNotNull();
+    }
+
+    @Test
+    void testGzipExportIsReadable() throws Exception {
+        when(patientRepository.streamAllForExport()).thenReturn(rows());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exportService.export(exportService.startExport(), out, true);
+
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8).lines()).hasSize(2);
+        }
+    }
+
+    private static Stream<PatientExportRow> rows() {
+        LocalDate birthDate = LocalDate.of(1990, 1, 1);
+        return Stream.of(
+                new PatientExportRow(1L, "Brown", "Mark", null, "man", birthDate, "1234567891234567",
+                        10L, "A01", LocalDate.of(2020, 1, 1), null, "Грипп"),
+                new PatientExportRow(1L, "Brown", "Mark", null, "man", birthDate, "1234567891234567",
+                        11L, "B02", LocalDate.of(2021, 1, 1), null, "Ангина"),
+                new PatientExportRow(2L, "Jonny", "Jonny", null, "man", birthDate, "9485782649359747",
+                        null, null, null, null, null));
+    }
+}
@@ -0,0 +1,108 @@
+package producer.kafka.patient_card;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import producer.kafka.patient_card.cache.OmsNumberFilter;
+import producer.kafka.patient_card.cache.PatientNameIndex;
+import producer.kafka.patient_card.dto.PatientImportReport;
+import producer.kafka.patient_card.model.Patient;
+import producer.kafka.patient_card.outbox.OutboxWriter;
+import producer.kafka.patient_card.repository.PatientRepository;
+import producer.kafka.patient_card.service.PatientImportService;
+import producer.kafka.patient_card.service.PatientValidator;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PatientImportServiceTest {
+    @Mock
+    private PatientRepository patientRepository;
+    @Mock
+    private OutboxWriter outboxWriter;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    private PatientImportService importService;
+
+    @BeforeEach
+    void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        importService = new PatientImportService(patientRepository, new PatientValidator(),
+                new OmsNumberFilter(patientRepository, null, 1000, 0.01), outboxWriter,
+                new PatientNameIndex(patientRepository, null, 1000, 1000), transactionManager, objectMapper);
+    }
+
+    @Test
+    void testImportNdjsonReportsInvalidRows() throws Exception {
+        String body = """
+                {"lastName":"Brown","firstName":"Mark","gender":"man","birthDate":"1990-01-01","omsNumber":"1234567891234567"}
+                {"lastName":"Date","firstName":"Invalid","gender":"female","birthDate":"%s","omsNumber":"9876543210987654"}
+
+                {"lastName":"Jonny","firstName":"Jonny","gender":"man","birthDate":"1990-05-20"}
+                not a json
+                """.formatted(LocalDate.now().plusDays(1));
+
+        PatientImportReport report = importService.importNdjson(stream(body));
+
+        assertThat(report.getTotal()).isEqualTo(4);
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(report.getFailed()).isEqualTo(3);
+        assertThat(report.getErrors()).extracting("line").containsExactly(2L, 4L, 5L);
+        assertThat(report.getErrors().get(0).getMessage()).isEqualTo("Дата рождения не может быть в будущем");
+        assertThat(report.getErrors().get(1).getMessage()).isEqualTo("OMS номер не может быть пустым");
+        verify(patientRepository, times(1)).saveAll(anyList());
+    }
+
+    @Test
+    void testImportCsvWithQuotedValues() throws Exception {
+        String body = """
+                omsNumber,lastName,firstName,middleName,gender,birthDate
+                1234567891234567,"Brown, Jr",Mark,,man,1990-01-01
+                9485782649359747,Jonny,Jonny,,man,1990-13-20
+                """;
+
+        PatientImportReport report = importService.importCsv(stream(body));
+
+        assertThat(report.getTotal()).isEqualTo(2);
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(report.getErrors()).extracting("line").containsExactly(3L);
+        verify(patientRepository).saveAll(argThat(patients -> {
+            Patient patient = patients.iterator().next();
+            return patient.getLastName().equals("Brown, Jr") && patient.getMiddleName() == null;
+        }));
+    }
+
+    @Test
+    void testRejectedChunkIsRetriedRowByRow() throws Exception {
+        String body = """
+                {"lastName":"Brown","firstName":"Mark","gender":"man","birthDate":"1990-01-01","omsNumber":"1234567891234567"}
+                {"lastName":"Jonny","firstName":"Jonny","gender":"man","birthDate":"1990-05-20","omsNumber":"9485782649359747"}
+                """;
+        when(patientRepository.saveAll(anyList())).thenThrow(new DataIntegrityViolationException("duplicate key"));
+        when(patientRepository.save(argThat(patient -> patient != null && patient.getOmsNumber().equals("1234567891234567"))))
+                .thenThrow(new DataIntegrityViolationException("duplicate key"));
+
+        PatientImportReport report = importService.importNdjson(stream(body));
+
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(report.getFailed()).isEqualTo(1);
+        assertThat(report.getErrors().get(0).getOmsNumber()).isEqualTo("1234567891234567");
+        verify(patientRepository, times(2)).save(any(Patient.class));
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
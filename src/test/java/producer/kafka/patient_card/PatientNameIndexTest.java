@@ -0,0 +1,112 @@
+package producer.kafka.patient_card;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import producer.kafka.patient_card.cache.PatientNameIndex;
+import producer.kafka.patient_card.dto.PatientSearchHit;
+import producer.kafka.patient_card.repository.PatientRepository;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PatientNameIndexTest {
+    @Mock
+    private PatientRepository patientRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    private PatientNameIndex index;
+
+    @BeforeEach
+    void setUp() {
+        when(patientRepository.streamAllForNameIndex()).thenReturn(Stream.of(
+                hit(1L, "Иванов", "Пётр", 1990),
+                hit(2L, "Иванова", "Анна", 1985),
+                hit(3L, "Ёлкин", "Иван", 1970),
+                hit(4L, "Brown", "Mark", 1990)));
+        index = new PatientNameIndex(patientRepository, new TransactionTemplate(transactionManager), 3, 1000);
+        index.warmUp();
+    }
+
+    @Test
+    void testPrefixSearchIgnoresCaseAndYo() {
+        assertThat(index.search("иван", null, 10)).extracting(PatientSearchHit::getId).containsExactly(1L, 2L);
+        assertThat(index.search("ИВАНОВА  а", null, 10)).extracting(PatientSearchHit::getId).containsExactly(2L);
+        assertThat(index.search("елк", null, 10)).extracting(PatientSearchHit::getLastName).containsExactly("Ёлкин");
+        assertThat(index.search("bro", null, 10).get(0).getFirstName()).isEqualTo("Mark");
+        assertThat(index.search("иван", LocalDate.of(1985, 1, 1), 10)).extracting(PatientSearchHit::getId).containsExactly(2L);
+    }
+
+    @Test
+    void testChangesAreVisibleBeforeAndAfterCompaction() {
+        index.put(5L, "Иваненко", "Олег", LocalDate.of(2000, 1, 1));
+        index.put(1L, "Петров", "Пётр", LocalDate.of(1990, 1, 1));
+        index.remove(2L);
+
+        assertThat(index.search("иван", null, 10)).extracting(PatientSearchHit::getId).containsExactly(5L);
+        assertThat(index.search("пет", null, 10)).extracting(PatientSearchHit::getId).containsExactly(1L);
+
+        index.compactIfNeeded();
+        index.put(6L, "Иванов", "Андрей", null);
+        assertThat(index.search("иван", null, 1)).extracting(PatientSearchHit::getId).containsExactly(5L);
+        assertThat(index.search("иванов", null, 10)).extracting(PatientSearchHit::getId).containsExactly(6L);
+        assertThat(index.size()).isEqualTo(5);
+    }
+
+    // Уплотнение строит базу вне блокировки: записи, пришедшие во время сборки, не должны потеряться
+    @Test
+    void testWritesDuringCompactionAreKept() throws Exception {
+        when(patientRepository.streamAllForNameIndex()).thenReturn(LongStream.rangeClosed(1, 20_000)
+                .mapToObj(id -> hit(id, "Сидоров" + id, "Иван", 1980)));
+        index = new PatientNameIndex(patientRepository, new TransactionTemplate(transactionManager), 1, 100_000);
+        index.warmUp();
+        Map<Long, String> expected = new HashMap<>();
+        LongStream.rangeClosed(1, 20_000).forEach(id -> expected.put(id, "Сидоров" + id));
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread compactor = new Thread(() -> {
+            while (writing.get()) {
+                index.compactIfNeeded();
+            }
+        });
+        compactor.start();
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < 20_000; i++) {
+            long id = 1 + random.nextInt(25_000);
+            if (random.nextInt(3) == 0) {
+                index.remove(id);
+                expected.remove(id);
+            } else {
+                String lastName = "Петров" + i;
+                index.put(id, lastName, "Иван", null);
+                expected.put(id, lastName);
+            }
+        }
+        writing.set(false);
+        compactor.join();
+
+        assertThat(index.size()).isEqualTo(expected.size());
+        Map<Long, String> actual = new HashMap<>();
+        for (String prefix : List.of("сидоров", "петров")) {
+            index.search(prefix, null, 100_000).forEach(hit -> actual.put(hit.getId(), hit.getLastName()));
+        }
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    private static PatientSearchHit hit(Long id, String lastName, String firstName, int year) {
+        return new PatientSearchHit(id, lastName, firstName, LocalDate.of(year, 1, 1));
+    }
+}
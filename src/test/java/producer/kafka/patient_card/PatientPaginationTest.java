@@ -0,0 +1,212 @@
+package producer.kafka.patient_card;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import producer.kafka.patient_card.cache.OmsNumberFilter;
+import producer.kafka.patient_card.cache.PatientCardCache;
+import producer.kafka.patient_card.cache.PatientNameIndex;
+import producer.kafka.patient_card.dto.PatientCursor;
+import producer.kafka.patient_card.dto.PatientFilter;
+import producer.kafka.patient_card.dto.PatientListItemDTO;
+import producer.kafka.patient_card.dto.PatientPageDTO;
+import producer.kafka.patient_card.dto.PatientView;
+import producer.kafka.patient_card.model.Patient;
+import producer.kafka.patient_card.outbox.OutboxWriter;
+import producer.kafka.patient_card.repository.PatientRepository;
+import producer.kafka.patient_card.service.PatientService;
+import producer.kafka.patient_card.service.PatientValidator;
+import producer.kafka.patient_card.stats.DiseaseStats;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:pages;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;INIT=CREATE SCHEMA IF NOT EXISTS all_schem",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "producer.kafka.patient_card.PatientPaginationTest$ReadTransactions"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({PatientService.class, PatientValidator.class})
+class PatientPaginationTest {
+    private static final PatientFilter NO_FILTER = PatientFilter.builder().build();
+
+    @Autowired
+    private PatientService patientService;
+    @Autowired
+    private PatientRepository patientRepository;
+    @MockBean
+    private PatientCardCache patientCardCache;
+    @MockBean
+    private OmsNumberFilter omsNumberFilter;
+    @MockBean
+    private PatientNameIndex patientNameIndex;
+    @MockBean
+    private OutboxWriter outboxWriter;
+    @MockBean
+    private DiseaseStats diseaseStats;
+    private final List<Patient> patients = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // Пятеро полных тёзок: порядок между ними задаёт только id
+        for (int i = 0; i < 5; i++) {
+            save("Иванов", "Иван", "man", LocalDate.of(1980 + i, 1, 1));
+        }
+        save("Иванов", "Анна", "woman", LocalDate.of(1990, 5, 1));
+        save("Иванова", "Анна", "woman", LocalDate.of(2001, 2, 3));
+        save("Brown", "Mark", "man", LocalDate.of(1975, 7, 7));
+        save("Brown", "Alice", "woman", LocalDate.of(1999, 12, 31));
+    }
+
+    @AfterEach
+    void tearDown() {
+        patientRepository.deleteAll(patients);
+    }
+
+    @Test
+    void testCursorRoundTrip() {
+        PatientCursor cursor = new PatientCursor("Салтыков-Щедрин", "Михаил Евграфович", 42L);
+
+        String token = cursor.encode();
+
+        assertThat(token).matches("[A-Za-z0-9_-]+");
+        assertThat(PatientCursor.decode(token)).isEqualTo(cursor);
+    }
+
+    @Test
+    void testMalformedCursorIsRejected() {
+        for (String token : new String[]{"не base64", encode("Иванов\u001FИван"), encode("Иванов\u001FИван\u001Fдесять")}) {
+            assertThatThrownBy(() -> patientService.findPatients(NO_FILTER, token, 10))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessage("Некорректный курсор страницы");
+        }
+    }
+
+    @Test
+    void testAllPagesWithoutDuplicatesOrGapsWhenNamesTie() {
+        List<Long> expected = patients.stream()
+                .sorted(Comparator.comparing(Patient::getLastName).thenComparing(Patient::getFirstName)
+                        .thenComparing(Patient::getId))
+                .map(Patient::getId)
+                .toList();
+
+        for (int limit : new int[]{1, 2, 3, 4}) {
+            assertThat(walk(NO_FILTER, limit)).as("limit %d", limit).containsExactlyElementsOf(expected);
+        }
+    }
+
+    @Test
+    void testFiltersByGenderAndBirthDate() {
+        PatientFilter women = PatientFilter.builder().gender("woman").build();
+        PatientFilter bornInEighties = PatientFilter.builder().gender("man")
+                .birthDateFrom(LocalDate.of(1981, 1, 1)).birthDateTo(LocalDate.of(1989, 12, 31)).build();
+
+        assertThat(names(women, 2)).containsExactly("Brown Alice", "Иванов Анна", "Иванова Анна");
+        assertThat(walk(bornInEighties, 2)).containsExactlyElementsOf(patients.subList(1, 5).stream().map(Patient::getId).toList());
+        assertThatThrownBy(() -> patientService.findPatients(PatientFilter.builder()
+                .birthDateFrom(LocalDate.of(2000, 1, 1)).birthDateTo(LocalDate.of(1999, 1, 1)).build(), null, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testLastPageHasNoNextCursor() {
+        PatientPageDTO full = patientService.findPatients(NO_FILTER, null, patients.size());
+        PatientPageDTO first = patientService.findPatients(NO_FILTER, null, patients.size() - 1);
+        PatientPageDTO last = patientService.findPatients(NO_FILTER, first.getNextCursor(), patients.size() - 1);
+
+        assertThat(full.getItems()).hasSize(patients.size());
+        assertThat(full.getNextCursor()).isNull();
+        assertThat(first.getNextCursor()).isNotNull();
+        assertThat(last.getItems()).hasSize(1);
+        assertThat(last.getNextCursor()).isNull();
+    }
+
+    @Test
+    void testViewAndPageReadInsideOneReadOnlyServiceTransaction() {
+        ReadTransactions.reads.clear();
+        ReadTransactions.recording = true;
+        try {
+            patientService.getPatientView(patients.get(0).getId(), PatientView.parse("lastName", PatientView.DISEASE, 2));
+            patientService.findPatients(NO_FILTER, null, 2);
+        } finally {
+            ReadTransactions.recording = false;
+        }
+
+        String service = PatientService.class.getName();
+        assertThat(ReadTransactions.reads).containsExactly(
+                service + ".getPatientView (readOnly)",
+                service + ".getPatientView (readOnly)",
+                service + ".findPatients (readOnly)");
+    }
+
+    private List<Long> walk(PatientFilter filter, int limit) {
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            PatientPageDTO page = patientService.findPatients(filter, cursor, limit);
+            assertThat(page.getItems()).hasSizeLessThanOrEqualTo(limit);
+            page.getItems().forEach(item -> ids.add(item.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return ids;
+    }
+
+    private List<String> names(PatientFilter filter, int limit) {
+        List<String> names = new ArrayList<>();
+        String cursor = null;
+        do {
+            PatientPageDTO page = patientService.findPatients(filter, cursor, limit);
+            for (PatientListItemDTO item : page.getItems()) {
+                names.add(item.getLastName() + " " + item.getFirstName());
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return names;
+    }
+
+    private void save(String lastName, String firstName, String gender, LocalDate birthDate) {
+        String omsNumber = String.format("%016d", 1_000_000_000_000_000L + patients.size());
+        patients.add(patientRepository.save(Patient.builder().lastName(lastName).firstName(firstName).gender(gender)
+                .birthDate(birthDate).omsNumber(omsNumber).build()));
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Запоминает, в какой транзакции выполняется каждый SELECT
+    public static class ReadTransactions implements StatementInspector {
+        static final List<String> reads = new CopyOnWriteArrayList<>();
+        static volatile boolean recording;
+
+        @Override
+        public String inspect(String sql) {
+            if (recording && sql.stripLeading().regionMatches(true, 0, "select", 0, 6)) {
+                reads.add(TransactionSynchronizationManager.getCurrentTransactionName()
+                        + (TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? " (readOnly)" : ""));
+            }
+            return sql;
+        }
+    }
+}
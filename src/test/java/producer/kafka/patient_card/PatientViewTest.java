@@ -0,0 +1,30 @@
+package producer.kafka.patient_card;
+import org.junit.jupiter.api.Test;
+import producer.kafka.patient_card.dto.PatientView;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PatientViewTest {
+
+    @Test
+    void testFieldsKeepCardOrderAndDiseaseMeansExpand() {
+        PatientView view = PatientView.parse("omsNumber, lastName,disease", null, 5);
+
+        assertThat(view.fields()).containsExactly("lastName", "omsNumber");
+        assertThat(view.expandDisease()).isTrue();
+        assertThat(view.diseaseLimit()).isEqualTo(5);
+        assertThat(view.isFullCard()).isFalse();
+        assertThat(PatientView.parse(null, "disease", null).isFullCard()).isTrue();
+        assertThat(PatientView.parse("lastName", null, null).expandDisease()).isFalse();
+    }
+
+    @Test
+    void testUnknownNamesAndLimitWithoutExpandAreRejected() {
+        assertThat(assertThrows(IllegalArgumentException.class, () -> PatientView.parse("lastName,password", null, null))
+                .getMessage()).isEqualTo("Неизвестное поле пациента: password");
+        assertThrows(IllegalArgumentException.class, () -> PatientView.parse(null, "archive", null));
+        assertThrows(IllegalArgumentException.class, () -> PatientView.parse("lastName", null, 10));
+        assertThrows(IllegalArgumentException.class, () -> PatientView.parse(null, "disease", 0));
+    }
+}
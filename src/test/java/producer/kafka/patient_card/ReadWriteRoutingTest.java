@@ -0,0 +1,121 @@
+package producer.kafka.patient_card;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+import producer.kafka.patient_card.datasource.ReadWriteRoutingDataSource;
+import producer.kafka.patient_card.datasource.ReplicaSet;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Основная БД и реплики — отдельные базы H2 в памяти; каждая отвечает на запрос своим именем
+class ReadWriteRoutingTest {
+    private JdbcTemplate primary;
+    private JdbcTemplate firstReplica;
+    private ReplicaSet replicas;
+    private JdbcTemplate jdbc;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @BeforeEach
+    void setUp() {
+        Map<String, DataSource> replicaSources = new LinkedHashMap<>();
+        primary = database("primary");
+        firstReplica = database("replica-1");
+        replicaSources.put("replica-1", firstReplica.getDataSource());
+        replicaSources.put("replica-2", database("replica-2").getDataSource());
+        replicas = new ReplicaSet(replicaSources, "round-robin", Duration.ofSeconds(1), "SELECT lag FROM node");
+        replicas.checkHealth();
+
+        DataSource routing = new LazyConnectionDataSourceProxy(
+                new ReadWriteRoutingDataSource(primary.getDataSource(), replicas));
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(routing);
+        jdbc = new JdbcTemplate(routing);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReadWriteRoutingDataSource.endRequest();
+    }
+
+    @Test
+    void testReadOnlyTransactionsGoToHealthyReplicas() {
+        assertThat(readWriteNode()).isEqualTo("primary");
+        assertThat(node()).isEqualTo("primary");
+        assertThat(readOnlyNode()).isEqualTo("replica-1");
+        assertThat(readOnlyNode()).isEqualTo("replica-2");
+        assertThat(readOnlyNode()).isEqualTo("replica-1");
+
+        // Отставшая реплика исключается до следующей успешной проверки
+        firstReplica.update("UPDATE node SET lag = 5");
+        replicas.checkHealth();
+        assertThat(readOnlyNode()).isEqualTo("replica-2");
+        assertThat(readOnlyNode()).isEqualTo("replica-2");
+
+        firstReplica.update("UPDATE node SET lag = 0");
+        replicas.checkHealth();
+        assertThat(readOnlyNode() + readOnlyNode())
+                .contains("replica-1").contains("replica-2");
+    }
+
+    @Test
+    void testReadsAfterWriteStayOnPrimary() {
+        ReadWriteRoutingDataSource.beginRequest(false);
+        assertThat(readOnlyNode()).startsWith("replica");
+        readWrite.executeWithoutResult(status -> jdbc.update("UPDATE node SET lag = 0"));
+        assertThat(readOnlyNode()).isEqualTo("primary");
+        ReadWriteRoutingDataSource.endRequest();
+
+        // Клиент, недавно менявший данные, читает с основной БД весь запрос
+        ReadWriteRoutingDataSource.beginRequest(true);
+        assertThat(readOnlyNode()).isEqualTo("primary");
+        ReadWriteRoutingDataSource.endRequest();
+        assertThat(readOnlyNode()).startsWith("replica");
+    }
+
+    // Общий кэш наполняется только с основной БД, после загрузки чтения снова идут на реплики
+    @Test
+    void testOnPrimaryReadsFromPrimaryAndRestoresRouting() {
+        ReadWriteRoutingDataSource.beginRequest(false);
+        assertThat(ReadWriteRoutingDataSource.onPrimary(this::readOnlyNode)).isEqualTo("primary");
+        assertThat(ReadWriteRoutingDataSource.mayReadFromReplica()).isTrue();
+        assertThat(readOnlyNode()).startsWith("replica");
+        ReadWriteRoutingDataSource.endRequest();
+
+        assertThat(ReadWriteRoutingDataSource.onPrimary(this::readOnlyNode)).isEqualTo("primary");
+        assertThat(readOnlyNode()).startsWith("replica");
+    }
+
+    private String readOnlyNode() {
+        return readOnly.execute(status -> node());
+    }
+
+    private String readWriteNode() {
+        return readWrite.execute(status -> node());
+    }
+
+    private String node() {
+        return jdbc.queryForObject("SELECT name FROM node", String.class);
+    }
+
+    private static JdbcTemplate database(String name) {
+        JdbcTemplate jdbc = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:routing-" + name + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbc.execute("DROP TABLE IF EXISTS node");
+        jdbc.execute("CREATE TABLE node (name VARCHAR(32), lag DOUBLE PRECISION)");
+        jdbc.update("INSERT INTO node VALUES (?, 0)", name);
+        return jdbc;
+    }
+}
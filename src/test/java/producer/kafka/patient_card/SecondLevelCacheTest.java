@@ -0,0 +1,203 @@
+package producer.kafka.patient_card;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import producer.kafka.patient_card.cache.IcdCatalog;
+import producer.kafka.patient_card.cache.PatientCardCache;
+import producer.kafka.patient_card.datasource.ReadWriteRoutingDataSource;
+import producer.kafka.patient_card.datasource.ReplicaCacheModeJpaDialect;
+import producer.kafka.patient_card.dto.DiseaseDTO;
+import producer.kafka.patient_card.dto.DiseaseStatus;
+import producer.kafka.patient_card.model.Patient;
+import producer.kafka.patient_card.outbox.OutboxWriter;
+import producer.kafka.patient_card.repository.PatientRepository;
+import producer.kafka.patient_card.service.DiseaseServiceImpl;
+import producer.kafka.patient_card.stats.DiseaseStats;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Каждый вызов сервиса — своя транзакция, как в приложении: кэш второго уровня наполняется после коммита
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:l2cache;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;INIT=CREATE SCHEMA IF NOT EXISTS all_schem"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({DiseaseServiceImpl.class, IcdCatalog.class})
+class SecondLevelCacheTest {
+    @Autowired
+    private DiseaseServiceImpl diseaseService;
+    @Autowired
+    private PatientRepository patientRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @MockBean
+    private PatientCardCache patientCardCache;
+    @MockBean
+    private OutboxWriter outboxWriter;
+    @MockBean
+    private DiseaseStats diseaseStats;
+    private Statistics statistics;
+    private Long patientId;
+    private Long diseaseId;
+
+    @BeforeEach
+    void setUp() {
+        SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        sessionFactory.getCache().evictAllRegions();
+        statistics = sessionFactory.getStatistics();
+        patientId = patientRepository.save(Patient.builder().lastName("Brown").firstName("Mark").gender("man")
+                .birthDate(LocalDate.of(1990, 1, 1)).omsNumber("1234567891234567").build()).getId();
+        diseaseId = diseaseService.createDisease(patientId, disease("J06.9", null)).getId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        patientRepository.deleteById(patientId);
+    }
+
+    @Test
+    void testRepeatedReadsIssueNoSql() {
+        diseaseService.getDiseaseById(diseaseId);
+        diseaseService.getDiseaseVersion(diseaseId);
+        loadDiseaseCollection();
+
+        statistics.clear();
+        DiseaseDTO disease = diseaseService.getDiseaseById(diseaseId);
+        long version = diseaseService.getDiseaseVersion(diseaseId);
+        var history = diseaseService.getAllDiseases(patientId, DiseaseStatus.OPEN, false, 0, 20);
+
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getSecondLevelCacheHitCount()).isPositive();
+        assertThat(disease.getIcdCode()).isEqualTo("J06.9");
+        assertThat(version).isEqualTo(diseaseService.getDiseaseHistoryVersion(patientId));
+        assertThat(history.getContent()).extracting(DiseaseDTO::getId).containsExactly(diseaseId);
+    }
+
+    @Test
+    void testWritesThroughServiceInvalidateCachedEntries() {
+        loadDiseaseCollection();
+        diseaseService.getDiseaseById(diseaseId);
+        long versionBefore = diseaseService.getDiseaseHistoryVersion(patientId);
+
+        diseaseService.updateDisease(diseaseId, disease("J06.9", LocalDate.now()), null);
+        Long secondId = diseaseService.createDisease(patientId, disease("A01", null)).getId();
+
+        assertThat(diseaseService.getDiseaseById(diseaseId).getEndDate()).isEqualTo(LocalDate.now());
+        assertThat(diseaseService.getDiseaseHistoryVersion(patientId)).isEqualTo(versionBefore + 2);
+        assertThat(diseaseService.getAllDiseases(patientId, DiseaseStatus.ALL, false, 0, 20).getContent())
+                .extracting(DiseaseDTO::getId).containsExactlyInAnyOrder(diseaseId, secondId);
+        statistics.clear();
+        assertThat(diseaseService.getDiseaseById(diseaseId).getEndDate()).isEqualTo(LocalDate.now());
+        assertThat(diseaseService.getDiseaseHistoryVersion(patientId)).isEqualTo(versionBefore + 2);
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+
+        diseaseService.deleteDisease(secondId);
+        loadDiseaseCollection();
+        assertThat(diseaseService.getAllDiseases(patientId, DiseaseStatus.ALL, false, 0, 20).getContent())
+                .extracting(DiseaseDTO::getId).containsExactly(diseaseId);
+        assertThat(diseaseService.getDiseaseHistoryVersion(patientId)).isEqualTo(versionBefore + 3);
+    }
+
+    // Пациент уже лежит в сессии (findById, disease.getPatient()) — записи всё равно встают в очередь
+    // на блокировке строки, а не падают на проверке версии
+    @Test
+    void testConcurrentWritersForSamePatientAllSucceed() throws Exception {
+        long versionBefore = diseaseService.getDiseaseHistoryVersion(patientId);
+        int threads = 8;
+        int writesPerThread = 5;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < writesPerThread; i++) {
+                        if (i % 2 == 0) {
+                            diseaseService.createDisease(patientId, disease("A01", null));
+                        } else {
+                            diseaseService.updateDisease(diseaseId, disease("J06.9", null), null);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(diseaseService.getDiseaseHistoryVersion(patientId))
+                .isEqualTo(versionBefore + (long) threads * writesPerThread);
+    }
+
+    // Другой экземпляр сервиса поднял версию, а локальный кэш второго уровня об этом не знает
+    @Test
+    void testStaleCachedPatientDoesNotFailWrites() {
+        loadDiseaseCollection();
+        long cachedVersion = diseaseService.getDiseaseHistoryVersion(patientId);
+        jdbcTemplate.update("UPDATE all_schem.patient_card_some SET version = version + 10 WHERE id = ?", patientId);
+
+        diseaseService.createDisease(patientId, disease("A01", null));
+
+        assertThat(jdbcTemplate.queryForObject("SELECT version FROM all_schem.patient_card_some WHERE id = ?",
+                Long.class, patientId)).isEqualTo(cachedVersion + 11);
+    }
+
+    // Чтение readOnly могло уйти на отстающую реплику: прочитанное в общий кэш не попадает
+    @Test
+    void testReplicaReadsDoNotPopulateCache() {
+        JpaTransactionManager replicaAware = new JpaTransactionManager(entityManagerFactory);
+        replicaAware.setJpaDialect(new ReplicaCacheModeJpaDialect());
+        TransactionTemplate readOnly = new TransactionTemplate(replicaAware);
+        readOnly.setReadOnly(true);
+        Cache cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        cache.evictAllRegions();
+
+        readOnly.executeWithoutResult(status -> patientRepository.findById(patientId).orElseThrow());
+        assertThat(cache.containsEntity(Patient.class, patientId)).isFalse();
+
+        ReadWriteRoutingDataSource.onPrimary(() -> readOnly.execute(status ->
+                patientRepository.findById(patientId).orElseThrow()));
+        assertThat(cache.containsEntity(Patient.class, patientId)).isTrue();
+    }
+
+    // Коллекция попадает в кэш, когда её целиком читает карточка пациента
+    private void loadDiseaseCollection() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                patientRepository.findById(patientId).orElseThrow().getDisease().size());
+    }
+
+    private static DiseaseDTO disease(String icdCode, LocalDate endDate) {
+        return new DiseaseDTO(icdCode, LocalDate.of(2020, 1, 1), endDate, "x");
+    }
+}
@@ -0,0 +1,55 @@
+package producer.kafka.patient_card;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import producer.kafka.patient_card.model.Patient;
+import producer.kafka.patient_card.repository.PatientRepository;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// База, созданная до перехода на пулы идентификаторов: последовательности с шагом 1 уже есть,
+// ddl-auto: update их не трогает, а schema-patch.sql меняет шаг только после старта Hibernate
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:sequences;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;"
+                + "INIT=CREATE SCHEMA IF NOT EXISTS all_schem\\\\;"
+                + "CREATE SEQUENCE IF NOT EXISTS all_schem.patient_sequence START WITH 1 INCREMENT BY 1\\\\;"
+                + "CREATE SEQUENCE IF NOT EXISTS all_schem.disease_sequence START WITH 1 INCREMENT BY 1\\\\;"
+                + "SET SCHEMA all_schem",
+        "spring.jpa.hibernate.ddl-auto=update"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SequenceIncrementTest {
+    @Autowired
+    private PatientRepository patientRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testStartsOnOldSequencesAndKeepsIdsUnique() {
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT increment FROM information_schema.sequences WHERE sequence_name = 'patient_sequence'",
+                Long.class)).isEqualTo(50);
+
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 120; i++) {
+            ids.add(patientRepository.save(Patient.builder()
+                    .lastName("Иванов").firstName("Иван").gender("man")
+                    .birthDate(LocalDate.of(1990, 1, 1))
+                    .omsNumber(String.format("%016d", i))
+                    .build()).getId());
+        }
+        assertThat(ids).hasSize(120);
+        assertThat(patientRepository.count()).isEqualTo(120);
+    }
+}